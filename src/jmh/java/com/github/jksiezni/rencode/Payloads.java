@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Sample payloads shared by the benchmarks.
+ *
+ * Every payload is built from a fixed seed, so runs are comparable.
+ */
+final class Payloads {
+
+	private Payloads() {
+	}
+
+	/**
+	 * A small RPC-like message, encoded with the fixed-length dict token.
+	 */
+	static Map<Object, Object> smallDict() {
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("id", 12345);
+		map.put("method", "get_torrent_status");
+		map.put("ok", Boolean.TRUE);
+		map.put("ratio", 1.5d);
+		map.put("peers", -7);
+		map.put(1, "one");
+		return map;
+	}
+
+	/**
+	 * A dict large enough to be written as CHR_DICT ... CHR_TERM.
+	 */
+	static Map<Object, Object> largeDict() {
+		final Random random = new Random(42);
+		final Map<Object, Object> map = new HashMap<>();
+		for (int i = 0; i < 8 * DICT_FIXED_COUNT; ++i) {
+			map.put("key" + i, random.nextInt());
+		}
+		return map;
+	}
+
+	/**
+	 * A list large enough to be written as CHR_LIST ... CHR_TERM.
+	 */
+	static List<Object> largeList() {
+		final List<Object> list = new ArrayList<>();
+		for (int i = 0; i < 1000; ++i) {
+			list.add(smallDict());
+		}
+		return list;
+	}
+
+	/**
+	 * Strings above STR_FIXED_COUNT, written with a decimal length prefix.
+	 */
+	static List<Object> longStrings() {
+		final List<Object> list = new ArrayList<>();
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 16; ++i) {
+			while (sb.length() < (i + 1) * 4 * STR_FIXED_COUNT) {
+				sb.append("rencode-").append(sb.length()).append(' ');
+			}
+			list.add(sb.toString());
+		}
+		return list;
+	}
+
+	/**
+	 * Integers spread over every integer token width.
+	 */
+	static List<Object> mixedInts() {
+		final Random random = new Random(42);
+		final List<Object> list = new ArrayList<>();
+		for (int i = 0; i < 1000; ++i) {
+			switch (i % 5) {
+			case 0:
+				list.add(random.nextInt(INT_POS_FIXED_COUNT));
+				break;
+			case 1:
+				list.add((byte) random.nextInt());
+				break;
+			case 2:
+				list.add((short) random.nextInt());
+				break;
+			case 3:
+				list.add(random.nextInt());
+				break;
+			default:
+				list.add(random.nextLong());
+				break;
+			}
+		}
+		return list;
+	}
+
+	static byte[] encode(Object value) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.writeObject(value);
+		out.flush();
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding benchmarks for {@link RencodeInputStream}.
+ *
+ * Each invocation creates a new stream over pre-encoded bytes, which is
+ * how the decoder is used per request.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RencodeInputStreamBenchmark {
+
+	private byte[] smallDict;
+	private byte[] largeDict;
+	private byte[] largeList;
+	private byte[] longStrings;
+	private byte[] mixedInts;
+
+	@Setup
+	public void setUp() throws IOException {
+		smallDict = Payloads.encode(Payloads.smallDict());
+		largeDict = Payloads.encode(Payloads.largeDict());
+		largeList = Payloads.encode(Payloads.largeList());
+		longStrings = Payloads.encode(Payloads.longStrings());
+		mixedInts = Payloads.encode(Payloads.mixedInts());
+	}
+
+	private static RencodeInputStream decoder(byte[] bytes) {
+		return new RencodeInputStream(new ByteArrayInputStream(bytes), true);
+	}
+
+	@Benchmark
+	public Object readObjectSmallDict() throws IOException {
+		return decoder(smallDict).readObject();
+	}
+
+	@Benchmark
+	public Map<Object, Object> readMapSmallDict() throws IOException {
+		return decoder(smallDict).readMap();
+	}
+
+	@Benchmark
+	public Map<Object, Object> readMapLargeDict() throws IOException {
+		return decoder(largeDict).readMap();
+	}
+
+	@Benchmark
+	public List<Object> readListLargeList() throws IOException {
+		return decoder(largeList).readList();
+	}
+
+	@Benchmark
+	public List<Object> readListLongStrings() throws IOException {
+		return decoder(longStrings).readList();
+	}
+
+	@Benchmark
+	public List<Object> readListMixedInts() throws IOException {
+		return decoder(mixedInts).readList();
+	}
+
+	@Benchmark
+	public Object readObjectSmallDictBuffer() throws IOException {
+		return new RencodeBufferDecoder(ByteBuffer.wrap(smallDict), true).readObject();
+	}
+
+	@Benchmark
+	public Object readObjectLargeListBuffer() throws IOException {
+		return new RencodeBufferDecoder(ByteBuffer.wrap(largeList), true).readObject();
+	}
+
+	@Benchmark
+	public Object decodeSmallDictCodec() throws IOException {
+		return RencodeCodec.STRINGS.decode(smallDict);
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding benchmarks for {@link RencodeOutputStream}.
+ *
+ * Throughput mode gives operations per second, SampleTime mode gives
+ * latency percentiles (p0.99 in the report).
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RencodeOutputStreamBenchmark {
+
+	private Map<Object, Object> smallDict;
+	private Map<Object, Object> largeDict;
+	private List<Object> largeList;
+	private List<Object> longStrings;
+	private List<Object> mixedInts;
+
+	private ByteArrayOutputStream bytes;
+	private RencodeOutputStream out;
+	private RencodeOutputStream bufferedOut;
+
+	@Setup
+	public void setUp() {
+		smallDict = Payloads.smallDict();
+		largeDict = Payloads.largeDict();
+		largeList = Payloads.largeList();
+		longStrings = Payloads.longStrings();
+		mixedInts = Payloads.mixedInts();
+		bytes = new ByteArrayOutputStream(1 << 16);
+		out = new RencodeOutputStream(bytes);
+		bufferedOut = new RencodeOutputStream(bytes, true);
+	}
+
+	@Benchmark
+	public int writeObjectSmallDict() throws IOException {
+		bytes.reset();
+		out.writeObject(smallDict);
+		return bytes.size();
+	}
+
+	@Benchmark
+	public int writeMapLargeDict() throws IOException {
+		bytes.reset();
+		out.writeMap(largeDict);
+		return bytes.size();
+	}
+
+	@Benchmark
+	public int writeCollectionLargeList() throws IOException {
+		bytes.reset();
+		out.writeCollection(largeList);
+		return bytes.size();
+	}
+
+	@Benchmark
+	public int writeCollectionLongStrings() throws IOException {
+		bytes.reset();
+		out.writeCollection(longStrings);
+		return bytes.size();
+	}
+
+	@Benchmark
+	public int writeCollectionMixedInts() throws IOException {
+		bytes.reset();
+		out.writeCollection(mixedInts);
+		return bytes.size();
+	}
+
+	@Benchmark
+	public int writeCollectionMixedIntsBuffered() throws IOException {
+		bytes.reset();
+		bufferedOut.writeCollection(mixedInts);
+		bufferedOut.flush();
+		return bytes.size();
+	}
+
+	@Benchmark
+	public byte[] encodeLargeDictToByteArrayOutputStream() throws IOException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final RencodeOutputStream encoder = new RencodeOutputStream(buffer, true);
+		encoder.writeMap(largeDict);
+		encoder.flush();
+		return buffer.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] encodeLargeDictCodec() throws IOException {
+		return RencodeCodec.BYTES.encode(largeDict);
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Parsing shared by the decoders for CHR_INT and the big number extensions.
+ */
+final class BigNumbers {
+
+	private BigNumbers() {
+	}
+
+	/**
+	 * Parses the ASCII payload of CHR_INT: an integer becomes a
+	 * {@link BigInteger}, a number with a fraction or exponent a
+	 * {@link BigDecimal}.
+	 */
+	static Number parseDecimal(byte[] ascii, int length) throws IOException {
+		boolean decimal = false;
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; ++i) {
+			final int c = ascii[i];
+			if (c == '.' || c == 'e' || c == 'E') {
+				decimal = true;
+			} else if ((c < '0' || c > '9') && c != '-' && c != '+') {
+				throw new IOException("Invalid character in number: " + (c & 0xFF));
+			}
+			chars[i] = (char) c;
+		}
+		try {
+			return decimal ? new BigDecimal(chars) : new BigInteger(new String(chars));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid number: " + new String(chars), e);
+		}
+	}
+
+	/**
+	 * @param bytes big-endian two's-complement bytes, as written for
+	 *          CHR_EXT_BIGINT
+	 */
+	static BigInteger fromTwosComplement(byte[] bytes) throws IOException {
+		if (bytes.length == 0) {
+			throw new IOException("Empty big integer");
+		}
+		return new BigInteger(bytes);
+	}
+
+	static BigDecimal toBigDecimal(BigInteger unscaled, long scale) throws IOException {
+		if (scale != (int) scale) {
+			throw new IOException("BigDecimal scale out of range: " + scale);
+		}
+		return new BigDecimal(unscaled, (int) scale);
+	}
+}
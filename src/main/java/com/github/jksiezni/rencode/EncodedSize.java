@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Computes the exact number of bytes {@link RencodeOutputStream#writeObject(Object)}
+ * writes for a value, without encoding it.
+ * <p>
+ * The UTF-8 lengths of all strings are recorded in the order they are met, so
+ * an encoder walking the same value afterwards does not compute them again,
+ * see {@link RencodeOutputStream#RencodeOutputStream(byte[], int[])}.
+ * Values written by a custom {@link RencodeEncoder} are sized by encoding them
+ * into a counting stream; the recorded lengths are then dropped, as the
+ * strings such an encoder writes are not known in advance.
+ */
+final class EncodedSize {
+
+	private final boolean rawBigNumbers;
+	private final RencodeEncoders encoders;
+
+	// null once a custom encoder was met
+	private int[] utf8Lengths = new int[16];
+	private int strings;
+
+	EncodedSize(boolean rawBigNumbers, RencodeEncoders encoders) {
+		this.rawBigNumbers = rawBigNumbers;
+		this.encoders = encoders;
+	}
+
+	/**
+	 * @return the UTF-8 lengths of the strings sized so far, in order, or
+	 *         <code>null</code> if a value was written by a custom encoder
+	 */
+	int[] utf8Lengths() {
+		return utf8Lengths;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if no encoder writes the value, or a
+	 *           custom encoder fails
+	 */
+	long of(Object value) {
+		if (value == null) {
+			return 1;
+		} else if (encoders.isCustom(value.getClass())) {
+			return ofCustom(value);
+		} else if (value instanceof Boolean) {
+			return 1;
+		} else if (value instanceof Character) {
+			return ofShort((Character) value);
+		} else if (value instanceof String) {
+			return ofUTF((String) value);
+		} else if (value instanceof byte[]) {
+			return ofString(((byte[]) value).length);
+		} else if (value instanceof Number) {
+			return ofNumber((Number) value);
+		} else if (value instanceof Collection<?>) {
+			final Collection<?> list = (Collection<?>) value;
+			long size = list.size() < LIST_FIXED_COUNT ? 1 : 2;
+			for (Object elem : list) {
+				size += of(elem);
+			}
+			return size;
+		} else if (value instanceof Map<?, ?>) {
+			final Map<?, ?> map = (Map<?, ?>) value;
+			long size = map.size() < DICT_FIXED_COUNT ? 1 : 2;
+			for (Entry<?, ?> elem : map.entrySet()) {
+				size += of(elem.getKey()) + of(elem.getValue());
+			}
+			return size;
+		} else if (value instanceof CharSequence) {
+			return ofUTF((CharSequence) value);
+		} else if (value instanceof ByteBuffer) {
+			return ofString(((ByteBuffer) value).remaining());
+		} else if (value instanceof RawRencode) {
+			return ((RawRencode) value).length();
+		} else if (value instanceof Enum<?>) {
+			return ofUTF(((Enum<?>) value).name());
+		} else if (value instanceof int[]) {
+			final int[] array = (int[]) value;
+			long size = array.length < LIST_FIXED_COUNT ? 1 : 2;
+			for (int elem : array) {
+				size += ofLong(elem);
+			}
+			return size;
+		} else if (value instanceof long[]) {
+			final long[] array = (long[]) value;
+			long size = array.length < LIST_FIXED_COUNT ? 1 : 2;
+			for (long elem : array) {
+				size += ofLong(elem);
+			}
+			return size;
+		} else if (value instanceof double[]) {
+			final int length = ((double[]) value).length;
+			return (length < LIST_FIXED_COUNT ? 1 : 2) + 9L * length;
+		} else if (value.getClass().isArray()) {
+			final int length = Array.getLength(value);
+			long size = length < LIST_FIXED_COUNT ? 1 : 2;
+			for (int i = 0; i < length; ++i) {
+				size += of(Array.get(value, i));
+			}
+			return size;
+		}
+		throw new IllegalArgumentException("No rencode encoder for " + value.getClass().getName());
+	}
+
+	private long ofCustom(Object value) {
+		utf8Lengths = null;
+		final long[] count = new long[1];
+		final RencodeOutputStream out = new RencodeOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				++count[0];
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				count[0] += len;
+			}
+		});
+		out.setEncoders(encoders);
+		out.setRawBigNumbers(rawBigNumbers);
+		try {
+			out.writeObject(value);
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to size " + value.getClass().getName(), e);
+		}
+		return count[0];
+	}
+
+	private long ofNumber(Number value) {
+		if (value instanceof Float) {
+			return 5;
+		} else if (value instanceof Double) {
+			return 9;
+		} else if (value instanceof BigInteger) {
+			final BigInteger v = (BigInteger) value;
+			return rawBigNumbers ? 2 + v.bitLength() / 8 + 1 : 2 + v.toString().length();
+		} else if (value instanceof BigDecimal) {
+			final BigDecimal v = (BigDecimal) value;
+			if (rawBigNumbers) {
+				return 2 + ofLong(v.scale()) + v.unscaledValue().bitLength() / 8 + 1;
+			}
+			return 2 + v.toString().length() + (v.scale() == 0 ? 1 : 0);
+		}
+		return ofLong(value.longValue());
+	}
+
+	/**
+	 * Follows writeShort(), which writeChar() delegates to: unlike
+	 * {@link #ofLong(long)}, chars from 0x8000 up take 3 bytes, as they are
+	 * written with their bits as a short.
+	 */
+	static int ofShort(int v) {
+		if (-INT_NEG_FIXED_COUNT <= v && v < INT_POS_FIXED_COUNT) {
+			return 1;
+		} else if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
+			return 2;
+		}
+		return 3;
+	}
+
+	/**
+	 * Follows the narrowing of writeLong(), writeInt(), writeShort() and
+	 * writeByte().
+	 */
+	static int ofLong(long v) {
+		if (-INT_NEG_FIXED_COUNT <= v && v < INT_POS_FIXED_COUNT) {
+			return 1;
+		} else if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
+			return 2;
+		} else if (Short.MIN_VALUE <= v && v <= Short.MAX_VALUE) {
+			return 3;
+		} else if (Integer.MIN_VALUE <= v && v <= Integer.MAX_VALUE) {
+			return 5;
+		}
+		return 9;
+	}
+
+	private long ofUTF(CharSequence s) {
+		final int length = RencodeOutputStream.utf8Length(s);
+		if (utf8Lengths != null) {
+			if (strings == utf8Lengths.length) {
+				utf8Lengths = Arrays.copyOf(utf8Lengths, 2 * strings);
+			}
+			utf8Lengths[strings++] = length;
+		}
+		return ofString(length);
+	}
+
+	static long ofString(int length) {
+		if (length < STR_FIXED_COUNT) {
+			return 1 + length;
+		}
+		int digits = 1;
+		for (int n = length; n >= 10; n /= 10) {
+			++digits;
+		}
+		return digits + 1L + length;
+	}
+}
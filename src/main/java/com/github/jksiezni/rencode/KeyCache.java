@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static com.github.jksiezni.rencode.Rencode.UTF_8;
+
+/**
+ * A bounded cache mapping UTF-8 encoded dict keys to canonical {@link String}
+ * instances.
+ * <p>
+ * Lookups hash the raw bytes and compare them with the cached bytes, so no
+ * String is created for a hit. The cache is a direct-mapped table: each key
+ * can occupy exactly one slot, chosen by its hash. When two keys compete for
+ * a slot, the newer one either replaces the older one (the default) or is
+ * left uncached, see {@link #KeyCache(int, int, boolean)}.
+ * <p>
+ * Instances are not thread-safe; use one cache per stream or per thread.
+ *
+ * @see RencodeInputStream#setKeyCache(KeyCache)
+ */
+public class KeyCache {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_MAX_KEY_LENGTH = 64;
+
+	private final byte[][] keys;
+	private final String[] values;
+	private final int[] hashes;
+	private final int mask;
+	private final int maxKeyLength;
+	private final boolean evict;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public KeyCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public KeyCache(int capacity) {
+		this(capacity, DEFAULT_MAX_KEY_LENGTH, true);
+	}
+
+	/**
+	 * @param capacity number of slots, rounded up to a power of two
+	 * @param maxKeyLength keys longer than this many bytes are never cached
+	 * @param evict if <code>true</code>, a new key replaces the key occupying
+	 *          its slot; otherwise the slot keeps its first key
+	 */
+	public KeyCache(int capacity, int maxKeyLength, boolean evict) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity out of range: " + capacity);
+		}
+		final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.keys = new byte[size][];
+		this.values = new String[size];
+		this.hashes = new int[size];
+		this.mask = size - 1;
+		this.maxKeyLength = maxKeyLength;
+		this.evict = evict;
+	}
+
+	/**
+	 * @return the canonical String for the given UTF-8 bytes
+	 */
+	public String get(byte[] bytes, int off, int len) {
+		if (len > maxKeyLength) {
+			++misses;
+			return new String(bytes, off, len, UTF_8);
+		}
+		int hash = 1;
+		for (int i = off; i < off + len; ++i) {
+			hash = 31 * hash + bytes[i];
+		}
+		final int slot = (hash ^ (hash >>> 16)) & mask;
+		final byte[] key = keys[slot];
+		if (key != null && hashes[slot] == hash && equals(key, bytes, off, len)) {
+			++hits;
+			return values[slot];
+		}
+		++misses;
+		final String value = new String(bytes, off, len, UTF_8);
+		if (key == null || evict) {
+			if (key != null) {
+				++evictions;
+			}
+			final byte[] copy = new byte[len];
+			System.arraycopy(bytes, off, copy, 0, len);
+			keys[slot] = copy;
+			values[slot] = value;
+			hashes[slot] = hash;
+		}
+		return value;
+	}
+
+	private static boolean equals(byte[] key, byte[] bytes, int off, int len) {
+		if (key.length != len) {
+			return false;
+		}
+		for (int i = 0; i < len; ++i) {
+			if (key[i] != bytes[off + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int capacity() {
+		return keys.length;
+	}
+
+	public int getMaxKeyLength() {
+		return maxKeyLength;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of cached keys replaced by a colliding key
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public void resetCounters() {
+		hits = misses = evictions = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "KeyCache[capacity=" + capacity() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
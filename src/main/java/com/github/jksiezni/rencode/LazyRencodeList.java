@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * A read-only {@link java.util.List} view of a rencoded list that decodes
+ * elements only when they are accessed.
+ * <p>
+ * The first access walks the list once, skipping its elements by their tokens
+ * and length prefixes, and records where each element starts. After that,
+ * {@link #get(int)} decodes just the requested element. Nested lists and
+ * dicts are returned as {@link LazyRencodeList} and {@link LazyRencodeMap}
+ * views of the same buffer.
+ * <p>
+ * The same rules as for {@link LazyRencodeMap} apply.
+ */
+public class LazyRencodeList extends AbstractList<Object> implements RandomAccess {
+
+	private final ByteBuffer buffer;
+	private final int start;
+	private final boolean decodeAsString;
+
+	private int[] offsets;
+	private Object[] values;
+
+	public LazyRencodeList(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes), false);
+	}
+
+	/**
+	 * @param buffer the list starts at the buffer's position
+	 * @param decodeAsString if <code>true</code>, string elements are decoded as
+	 *          {@link String}, otherwise as <code>byte[]</code>
+	 */
+	public LazyRencodeList(ByteBuffer buffer, boolean decodeAsString) {
+		this(buffer.duplicate(), buffer.position(), decodeAsString);
+		final int token = buffer.get(start) & 0xFF;
+		if (Tokens.kind(token) != Tokens.Kind.LIST) {
+			throw new IllegalArgumentException("Not a list: token " + token);
+		}
+	}
+
+	LazyRencodeList(ByteBuffer buffer, int start, boolean decodeAsString) {
+		this.buffer = buffer;
+		this.start = start;
+		this.decodeAsString = decodeAsString;
+	}
+
+	private void index() {
+		if (offsets != null) {
+			return;
+		}
+		final RencodeBufferDecoder decoder = LazyRencodeMap.decoder(buffer, start, decodeAsString);
+		try {
+			final int token = decoder.next();
+			final boolean terminated = token == CHR_LIST;
+			final int count = terminated ? 2 * LIST_FIXED_COUNT : token - LIST_FIXED_START;
+			int[] o = new int[count];
+			int size = 0;
+			while (terminated ? decoder.peek() != CHR_TERM : size < count) {
+				if (size == o.length) {
+					o = Arrays.copyOf(o, 2 * size);
+				}
+				o[size++] = decoder.position();
+				decoder.skipValue();
+			}
+			offsets = size == o.length ? o : Arrays.copyOf(o, size);
+			values = new Object[size];
+			Arrays.fill(values, LazyRencodeMap.UNDECODED);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to index a list at offset " + start, e);
+		}
+	}
+
+	@Override
+	public int size() {
+		index();
+		return offsets.length;
+	}
+
+	@Override
+	public Object get(int index) {
+		index();
+		if (index < 0 || index >= offsets.length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offsets.length);
+		}
+		if (values[index] == LazyRencodeMap.UNDECODED) {
+			values[index] = LazyRencodeMap.decodeLazily(buffer, offsets[index], decodeAsString);
+		}
+		return values[index];
+	}
+}
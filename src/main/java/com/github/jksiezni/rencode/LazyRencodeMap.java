@@ -0,0 +1,230 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * A read-only {@link Map} view of a rencoded dict that decodes values only
+ * when they are accessed.
+ * <p>
+ * The first access walks the dict once, decoding only its keys and recording
+ * where each value starts; values are skipped using their tokens and length
+ * prefixes. After that, {@link #get(Object)} decodes just the requested value.
+ * Nested lists and dicts are returned as {@link LazyRencodeList} and
+ * {@link LazyRencodeMap} views of the same buffer.
+ * <p>
+ * The underlying bytes must not change while the view is in use. Decoding
+ * errors are reported as {@link IllegalStateException}s caused by the original
+ * {@link IOException}. Instances are not thread-safe.
+ */
+public class LazyRencodeMap extends AbstractMap<Object, Object> {
+
+	// lookups scan the keys linearly up to this size
+	private static final int LINEAR_SCAN_LIMIT = 8;
+
+	private final ByteBuffer buffer;
+	private final int start;
+	private final boolean decodeAsString;
+
+	private Object[] keys;
+	private int[] offsets;
+	private Object[] values;
+	private Map<Object, Integer> slots;
+
+	public LazyRencodeMap(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes), false);
+	}
+
+	/**
+	 * @param buffer the dict starts at the buffer's position
+	 * @param decodeAsString if <code>true</code>, string values are decoded as
+	 *          {@link String}, otherwise as <code>byte[]</code>
+	 */
+	public LazyRencodeMap(ByteBuffer buffer, boolean decodeAsString) {
+		this(buffer.duplicate(), buffer.position(), decodeAsString);
+		final int token = buffer.get(start) & 0xFF;
+		if (Tokens.kind(token) != Tokens.Kind.DICT) {
+			throw new IllegalArgumentException("Not a dict: token " + token);
+		}
+	}
+
+	LazyRencodeMap(ByteBuffer buffer, int start, boolean decodeAsString) {
+		this.buffer = buffer;
+		this.start = start;
+		this.decodeAsString = decodeAsString;
+	}
+
+	private void index() {
+		if (keys != null) {
+			return;
+		}
+		final RencodeBufferDecoder decoder = decoder(start);
+		try {
+			final int token = decoder.next();
+			final boolean terminated = token == CHR_DICT;
+			int count = terminated ? 2 * DICT_FIXED_COUNT : token - DICT_FIXED_START;
+			Object[] k = new Object[count];
+			int[] o = new int[count];
+			int size = 0;
+			for (int i = 0; terminated ? decoder.peek() != CHR_TERM : i < count; ++i) {
+				final Object key = decoder.readKey();
+				final int offset = decoder.position();
+				decoder.skipValue();
+				final int slot = find(k, size, key);
+				if (slot >= 0) {
+					// the last of duplicate keys wins, like in readMap()
+					o[slot] = offset;
+					continue;
+				}
+				if (size == k.length) {
+					k = Arrays.copyOf(k, 2 * size);
+					o = Arrays.copyOf(o, 2 * size);
+				}
+				k[size] = key;
+				o[size] = offset;
+				if (slots != null) {
+					slots.put(key, size);
+				} else if (size == LINEAR_SCAN_LIMIT) {
+					slots = new HashMap<>(4 * size);
+					for (int j = 0; j <= size; ++j) {
+						slots.put(k[j], j);
+					}
+				}
+				++size;
+			}
+			keys = size == k.length ? k : Arrays.copyOf(k, size);
+			offsets = size == o.length ? o : Arrays.copyOf(o, size);
+			values = new Object[size];
+			Arrays.fill(values, UNDECODED);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to index a dict at offset " + start, e);
+		}
+	}
+
+	private int slot(Object key) {
+		index();
+		return find(keys, keys.length, key);
+	}
+
+	/**
+	 * @return index of the key among the first <code>size</code> keys, or -1
+	 */
+	private int find(Object[] keys, int size, Object key) {
+		if (slots != null) {
+			final Integer slot = slots.get(key);
+			return slot != null ? slot : -1;
+		}
+		for (int i = 0; i < size; ++i) {
+			if (Objects.equals(keys[i], key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private Object value(int slot) {
+		if (values[slot] == UNDECODED) {
+			values[slot] = decodeLazily(buffer, offsets[slot], decodeAsString);
+		}
+		return values[slot];
+	}
+
+	private RencodeBufferDecoder decoder(int position) {
+		return decoder(buffer, position, decodeAsString);
+	}
+
+	@Override
+	public int size() {
+		index();
+		return keys.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slot(key) >= 0;
+	}
+
+	@Override
+	public Object get(Object key) {
+		final int slot = slot(key);
+		return slot >= 0 ? value(slot) : null;
+	}
+
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet() {
+		index();
+		return new AbstractSet<Map.Entry<Object, Object>>() {
+			@Override
+			public int size() {
+				return keys.length;
+			}
+
+			@Override
+			public Iterator<Map.Entry<Object, Object>> iterator() {
+				return new Iterator<Map.Entry<Object, Object>>() {
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return next < keys.length;
+					}
+
+					@Override
+					public Map.Entry<Object, Object> next() {
+						if (next >= keys.length) {
+							throw new NoSuchElementException();
+						}
+						final int slot = next++;
+						return new SimpleImmutableEntry<>(keys[slot], value(slot));
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	// marks values that have not been decoded yet
+	static final Object UNDECODED = new Object();
+
+	static RencodeBufferDecoder decoder(ByteBuffer buffer, int position, boolean decodeAsString) {
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(buffer, decodeAsString);
+		decoder.position(position);
+		return decoder;
+	}
+
+	/**
+	 * Decodes the value at the given offset, returning lists and dicts as lazy
+	 * views.
+	 */
+	static Object decodeLazily(ByteBuffer buffer, int position, boolean decodeAsString) {
+		final int token = buffer.get(position) & 0xFF;
+		if (Tokens.kind(token) == Tokens.Kind.LIST) {
+			return new LazyRencodeList(buffer, position, decodeAsString);
+		} else if (Tokens.kind(token) == Tokens.Kind.DICT) {
+			return new LazyRencodeMap(buffer, position, decodeAsString);
+		}
+		try {
+			return decoder(buffer, position, decodeAsString).readObject();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to decode a value at offset " + position, e);
+		}
+	}
+}
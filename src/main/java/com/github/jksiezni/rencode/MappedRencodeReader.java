@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a file holding a sequence of top-level rencoded values by memory
+ * mapping it.
+ * <p>
+ * The file is mapped in regions of at most {@link #DEFAULT_REGION_SIZE}
+ * bytes, so files larger than 2 GB are supported. Values spanning two
+ * regions are handled transparently. Decoding is done by
+ * {@link RencodeInputStream}, so the values are the same as when reading the
+ * file through a stream.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class MappedRencodeReader implements Iterator<Object>, Closeable {
+
+	public static final int DEFAULT_REGION_SIZE = 1 << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int regionSize;
+	private final MappedInputStream mapped;
+	private final RencodeInputStream in;
+
+	public MappedRencodeReader(File file) throws IOException {
+		this(file, false);
+	}
+
+	public MappedRencodeReader(File file, boolean decodeAsString) throws IOException {
+		this(file, decodeAsString, DEFAULT_REGION_SIZE);
+	}
+
+	MappedRencodeReader(File file, boolean decodeAsString, int regionSize) throws IOException {
+		if (regionSize <= 0) {
+			throw new IllegalArgumentException("regionSize must be positive: " + regionSize);
+		}
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.size = channel.size();
+		this.regionSize = regionSize;
+		this.mapped = new MappedInputStream();
+		this.in = new RencodeInputStream(mapped, decodeAsString);
+	}
+
+	/**
+	 * @return the file offset of the next value
+	 */
+	public long position() {
+		// the pushback buffer is always drained between top-level values
+		return mapped.position();
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			return in.available() > 0;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the value cannot be decoded; the cause
+	 *           holds the original {@link IOException}
+	 */
+	@Override
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return in.readObject();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to decode a value from " + file, e);
+		}
+	}
+
+	/**
+	 * Reads the next value, like {@link #next()} but with the original
+	 * exception.
+	 */
+	public Object readObject() throws IOException {
+		return in.readObject();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		mapped.region = null;
+		file.close();
+	}
+
+	/**
+	 * Reads the file region by region, mapping each one on first access.
+	 */
+	private class MappedInputStream extends InputStream {
+
+		private MappedByteBuffer region;
+		private long regionStart;
+
+		private boolean nextRegion() throws IOException {
+			final long start = region == null ? 0 : regionStart + region.capacity();
+			if (start >= size) {
+				return false;
+			}
+			region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+			regionStart = start;
+			return true;
+		}
+
+		long position() {
+			return region == null ? 0 : regionStart + region.position();
+		}
+
+		@Override
+		public int read() throws IOException {
+			if ((region == null || !region.hasRemaining()) && !nextRegion()) {
+				return -1;
+			}
+			return region.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if ((region == null || !region.hasRemaining()) && !nextRegion()) {
+				return -1;
+			}
+			final int n = Math.min(len, region.remaining());
+			region.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, size - position());
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Encodes large collections and decodes long sequences of top-level values on
+ * a {@link ForkJoinPool}.
+ * <p>
+ * Encoding splits the elements of a list or the entries of a map into chunks,
+ * encodes every chunk into its own buffer and writes the buffers in order, so
+ * the output is byte-identical to
+ * {@link RencodeOutputStream#writeCollection(Collection)} and
+ * {@link RencodeOutputStream#writeMap(Map)}. Only a bounded number of chunks
+ * is in flight at a time. Collections smaller than a chunk are written
+ * sequentially.
+ * <p>
+ * Decoding first finds the value boundaries with a sequential scan that skips
+ * values without decoding them, then decodes groups of values in parallel.
+ * <p>
+ * Elements must not be modified while they are being encoded. Instances are
+ * thread-safe.
+ */
+public class ParallelRencode {
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private static class DefaultPool {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	/**
+	 * Uses a shared pool with one thread per available processor.
+	 */
+	public ParallelRencode() {
+		this(DefaultPool.POOL, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param pool the pool encoding and decoding chunks
+	 * @param chunkSize number of elements, entries or top-level values per
+	 *          task
+	 */
+	public ParallelRencode(ForkJoinPool pool, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Writes the collection like
+	 * {@link RencodeOutputStream#writeCollection(Collection)}.
+	 */
+	public void writeCollection(RencodeOutputStream out, Collection<?> list) throws IOException {
+		if (list.size() <= chunkSize || list.size() < LIST_FIXED_COUNT) {
+			out.writeCollection(list);
+			return;
+		}
+		out.count(CHR_LIST);
+		out.write(CHR_LIST);
+		writeChunks(out, list.toArray(), false);
+		out.write(CHR_TERM);
+	}
+
+	/**
+	 * Writes the map like {@link RencodeOutputStream#writeMap(Map)}, with the
+	 * entries in the iteration order of the map.
+	 */
+	public void writeMap(RencodeOutputStream out, Map<?, ?> map) throws IOException {
+		if (map.size() <= chunkSize || map.size() < DICT_FIXED_COUNT) {
+			out.writeMap(map);
+			return;
+		}
+		out.count(CHR_DICT);
+		out.write(CHR_DICT);
+		writeChunks(out, map.entrySet().toArray(), true);
+		out.write(CHR_TERM);
+	}
+
+	private void writeChunks(final RencodeOutputStream out, final Object[] elements, final boolean entries) throws IOException {
+		final int window = 2 * pool.getParallelism();
+		final ArrayDeque<ForkJoinTask<ByteArrayOutputStream>> pending = new ArrayDeque<>(window);
+		try {
+			for (int start = 0; start < elements.length; start += chunkSize) {
+				final int from = start;
+				final int to = Math.min(elements.length, start + chunkSize);
+				pending.add(pool.submit(ForkJoinTask.adapt(new Callable<ByteArrayOutputStream>() {
+					@Override
+					public ByteArrayOutputStream call() throws IOException {
+						return encode(out, elements, from, to, entries);
+					}
+				})));
+				if (pending.size() >= window) {
+					get(pending.remove()).writeTo(out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				get(pending.remove()).writeTo(out);
+			}
+		} finally {
+			for (ForkJoinTask<?> task : pending) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Encodes a chunk with the encoders and settings of <code>target</code>.
+	 */
+	private static ByteArrayOutputStream encode(RencodeOutputStream target, Object[] elements, int from, int to,
+			boolean entries) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * (to - from));
+		final RencodeOutputStream out = new RencodeOutputStream(bytes, true);
+		out.setEncoders(target.getEncoders());
+		out.setRawBigNumbers(target.isRawBigNumbers());
+		for (int i = from; i < to; ++i) {
+			if (entries) {
+				final Entry<?, ?> entry = (Entry<?, ?>) elements[i];
+				out.writeObject(entry.getKey());
+				out.writeObject(entry.getValue());
+			} else {
+				out.writeObject(elements[i]);
+			}
+		}
+		out.flush();
+		return bytes;
+	}
+
+	/**
+	 * Decodes all top-level values between the position and the limit of the
+	 * buffer. The buffer itself is not modified.
+	 *
+	 * @return the values in the order they appear in the buffer
+	 */
+	public List<Object> readAll(ByteBuffer buffer, final boolean decodeAsString) throws IOException {
+		// sequential pass: find where every group of chunkSize values starts
+		final RencodeBufferDecoder scanner = new RencodeBufferDecoder(buffer);
+		final List<Integer> boundaries = new ArrayList<>();
+		int values = 0;
+		while (scanner.hasRemaining()) {
+			if (values++ % chunkSize == 0) {
+				boundaries.add(scanner.position());
+			}
+			scanner.skipValue();
+		}
+		boundaries.add(scanner.position());
+
+		final List<ForkJoinTask<List<Object>>> tasks = new ArrayList<>(boundaries.size() - 1);
+		try {
+			for (int i = 0; i < boundaries.size() - 1; ++i) {
+				final ByteBuffer chunk = buffer.duplicate();
+				chunk.limit(boundaries.get(i + 1)).position(boundaries.get(i));
+				tasks.add(pool.submit(ForkJoinTask.adapt(new Callable<List<Object>>() {
+					@Override
+					public List<Object> call() throws IOException {
+						final RencodeBufferDecoder decoder = new RencodeBufferDecoder(chunk, decodeAsString);
+						final List<Object> result = new ArrayList<>(chunkSize);
+						while (decoder.hasRemaining()) {
+							result.add(decoder.readObject());
+						}
+						return result;
+					}
+				})));
+			}
+			final List<Object> result = new ArrayList<>(values);
+			for (ForkJoinTask<List<Object>> task : tasks) {
+				result.addAll(get(task));
+			}
+			return result;
+		} finally {
+			for (ForkJoinTask<?> task : tasks) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	static <T> T get(ForkJoinTask<T> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a chunk", e);
+		} catch (ExecutionException e) {
+			// adapted callables wrap checked exceptions in a RuntimeException
+			for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+				if (t instanceof IOException) {
+					throw (IOException) t;
+				}
+			}
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
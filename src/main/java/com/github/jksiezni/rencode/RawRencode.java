@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A value that is already rencoded. {@link RencodeOutputStream#writeObject(Object)}
+ * copies its bytes verbatim, wherever it appears, e.g. as an element of a list
+ * or a value of a dict, so constant parts of a message are encoded only once.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ *
+ * @see RawRencodeCache
+ */
+public final class RawRencode {
+
+	private final byte[] encoded;
+
+	private RawRencode(byte[] encoded) {
+		this.encoded = encoded;
+	}
+
+	/**
+	 * Encodes the value once. Later changes to the value are not reflected.
+	 */
+	public static RawRencode of(Object value) throws IOException {
+		return new RawRencode(RencodeCodec.BYTES.encode(value));
+	}
+
+	/**
+	 * Copies bytes holding exactly one rencoded value, after checking that
+	 * they are well-formed.
+	 *
+	 * @throws IOException if the bytes are not exactly one complete value
+	 */
+	public static RawRencode copyOf(byte[] encoded) throws IOException {
+		return wrap(encoded.clone(), true);
+	}
+
+	/**
+	 * Uses the array without copying; it must not be modified afterwards.
+	 *
+	 * @param validate if <code>false</code>, the bytes are trusted to hold
+	 *          exactly one complete value, otherwise they are checked first
+	 * @throws IOException if validation is requested and fails
+	 */
+	public static RawRencode wrap(byte[] encoded, boolean validate) throws IOException {
+		if (validate) {
+			validate(encoded);
+		}
+		return new RawRencode(encoded);
+	}
+
+	private static void validate(byte[] encoded) throws IOException {
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(ByteBuffer.wrap(encoded));
+		decoder.skipValue();
+		if (decoder.hasRemaining()) {
+			throw new IOException((encoded.length - decoder.position()) + " trailing byte(s) after the value");
+		}
+	}
+
+	/**
+	 * @return the first byte of the encoded value
+	 */
+	int token() {
+		return encoded[0] & 0xFF;
+	}
+
+	public int length() {
+		return encoded.length;
+	}
+
+	/**
+	 * @return a copy of the encoded bytes
+	 */
+	public byte[] toByteArray() {
+		return encoded.clone();
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(encoded, 0, encoded.length);
+	}
+
+	/**
+	 * Decodes the value again.
+	 */
+	public Object decode(boolean decodeAsString) throws IOException {
+		return (decodeAsString ? RencodeCodec.STRINGS : RencodeCodec.BYTES).decode(encoded);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof RawRencode && Arrays.equals(encoded, ((RawRencode) obj).encoded);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(encoded);
+	}
+
+	@Override
+	public String toString() {
+		return "RawRencode[" + encoded.length + " bytes]";
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache mapping frequently written objects, such as message headers
+ * or static configuration dicts, to their {@link RawRencode} form.
+ * <p>
+ * Objects are looked up by identity, not by {@link Object#equals(Object)},
+ * so a lookup costs the same for a large dict as for a small one. A cached
+ * object must therefore not be modified, or the cache returns its old
+ * encoding. When the cache is full, the least recently used entry is evicted.
+ * <p>
+ * Instances are thread-safe. Values are encoded outside the lock, so two
+ * threads missing on the same object may both encode it.
+ */
+public class RawRencodeCache {
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final class IdentityKey {
+		final Object value;
+
+		IdentityKey(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).value == value;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(value);
+		}
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<IdentityKey, RawRencode> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public RawRencodeCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity maximum number of cached objects
+	 */
+	public RawRencodeCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<IdentityKey, RawRencode>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<IdentityKey, RawRencode> eldest) {
+				if (size() > RawRencodeCache.this.capacity) {
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return the encoded form of the object, encoding and caching it on a
+	 *         miss
+	 */
+	public RawRencode get(Object value) throws IOException {
+		if (value instanceof RawRencode) {
+			return (RawRencode) value;
+		}
+		final IdentityKey key = new IdentityKey(value);
+		synchronized (this) {
+			final RawRencode raw = entries.get(key);
+			if (raw != null) {
+				++hits;
+				return raw;
+			}
+			++misses;
+		}
+		final RawRencode raw = RawRencode.of(value);
+		synchronized (this) {
+			entries.put(key, raw);
+		}
+		return raw;
+	}
+
+	/**
+	 * Drops the cached encoding of the object, e.g. after it was modified.
+	 */
+	public synchronized void invalidate(Object value) {
+		entries.remove(new IdentityKey(value));
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return number of entries dropped to make room for new ones
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void resetCounters() {
+		hits = misses = evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RawRencodeCache[capacity=" + capacity + ", size=" + entries.size() + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + "]";
+	}
+}
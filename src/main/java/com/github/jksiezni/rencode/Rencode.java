@@ -57,5 +57,13 @@ final class Rencode {
 	// Lists with length embedded in typecode.
 	public static final int LIST_FIXED_START = STR_FIXED_START + STR_FIXED_COUNT;
 	public static final int LIST_FIXED_COUNT = 64;
+
+	// Extension, not part of rencode: a BigInteger as a length byte followed
+	// by its big-endian two's-complement bytes.
+	public static final int CHR_EXT_BIGINT = 45;
+
+	// Extension, not part of rencode: a BigDecimal as its scale, written as a
+	// rencoded integer, followed by the unscaled value as in CHR_EXT_BIGINT.
+	public static final int CHR_EXT_BIGDEC = 46;
 	
 }
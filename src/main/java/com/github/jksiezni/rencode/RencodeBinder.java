@@ -0,0 +1,350 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Binds rencoded dicts to Java objects and back.
+ * <p>
+ * Every non-static, non-transient field of a class, including inherited
+ * fields, is mapped to a dict entry keyed by the field name. Use
+ * {@link RencodeField} to rename or ignore a field. Bound classes need a
+ * no-argument constructor, which may be private.
+ * <p>
+ * Field accessors are resolved once per class into {@link MethodHandle}s and
+ * cached, so no reflection happens per call. Primitive fields are read and
+ * written without boxing. Dict entries with no matching field are skipped
+ * without being decoded.
+ * <p>
+ * Supported field types are primitives and their wrappers, {@link String},
+ * enums (encoded by name), other bound classes, and anything
+ * {@link RencodeOutputStream#writeObject(Object)} can write, e.g. lists and
+ * maps.
+ * <p>
+ * Instances are thread-safe and meant to be shared.
+ */
+public class RencodeBinder {
+
+	private final ClassValue<BeanCodec> codecs = new ClassValue<BeanCodec>() {
+		@Override
+		protected BeanCodec computeValue(Class<?> type) {
+			return new BeanCodec(type);
+		}
+	};
+
+	/**
+	 * Reads a dict, or CHR_NONE, as an instance of the given class.
+	 */
+	public <T> T read(RencodeInputStream in, Class<T> type) throws IOException {
+		final BeanCodec codec = codecs.get(type);
+		final boolean top = in.beginValue();
+		try {
+			return type.cast(codec.read(in));
+		} finally {
+			in.endValue(top);
+		}
+	}
+
+	/**
+	 * Writes the fields of the object as a dict, or CHR_NONE if it is
+	 * <code>null</code>.
+	 */
+	public void write(RencodeOutputStream out, Object bean) throws IOException {
+		out.writeObject(bean == null ? null : codecs.get(bean.getClass()), bean);
+	}
+
+	private enum Kind {
+		BOOLEAN, BYTE, SHORT, CHAR, INT, LONG, FLOAT, DOUBLE, STRING, ENUM, BEAN, OBJECT
+	}
+
+	private final class Property {
+		final Field field;
+		final Kind kind;
+		// the key, already encoded as a rencoded string
+		final byte[] encodedName;
+		final int nameLength;
+		final MethodHandle getter;
+		final MethodHandle setter;
+
+		Property(Field field, String name) throws IllegalAccessException, IOException {
+			this.field = field;
+			this.kind = kindOf(field.getType());
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			new RencodeOutputStream(bytes).writeUTF(name);
+			this.encodedName = bytes.toByteArray();
+			this.nameLength = name.getBytes(UTF_8).length;
+			field.setAccessible(true);
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			final Class<?> type = field.getType().isPrimitive() ? field.getType() : Object.class;
+			this.getter = lookup.unreflectGetter(field).asType(MethodType.methodType(type, Object.class));
+			this.setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, type));
+		}
+
+		void write(RencodeOutputStream out, Object bean) throws Throwable {
+			out.writeEncodedString(encodedName, nameLength);
+			switch (kind) {
+			case BOOLEAN:
+				out.writeBoolean((boolean) getter.invokeExact(bean));
+				break;
+			case BYTE:
+				out.writeByte((byte) getter.invokeExact(bean));
+				break;
+			case SHORT:
+				out.writeShort((short) getter.invokeExact(bean));
+				break;
+			case CHAR:
+				out.writeChar((char) getter.invokeExact(bean));
+				break;
+			case INT:
+				out.writeInt((int) getter.invokeExact(bean));
+				break;
+			case LONG:
+				out.writeLong((long) getter.invokeExact(bean));
+				break;
+			case FLOAT:
+				out.writeFloat((float) getter.invokeExact(bean));
+				break;
+			case DOUBLE:
+				out.writeDouble((double) getter.invokeExact(bean));
+				break;
+			default:
+				final Object value = (Object) getter.invokeExact(bean);
+				if (value == null) {
+					out.writeObject(null);
+				} else if (kind == Kind.ENUM) {
+					out.writeUTF(((Enum<?>) value).name());
+				} else if (kind == Kind.BEAN) {
+					RencodeBinder.this.write(out, value);
+				} else {
+					out.writeObject(value);
+				}
+			}
+		}
+
+		void read(RencodeInputStream in, Object bean) throws Throwable {
+			switch (kind) {
+			case BOOLEAN:
+				setter.invokeExact(bean, in.readBoolean());
+				break;
+			case BYTE:
+				setter.invokeExact(bean, in.readByte());
+				break;
+			case SHORT:
+				setter.invokeExact(bean, in.readShort());
+				break;
+			case CHAR:
+				setter.invokeExact(bean, in.readChar());
+				break;
+			case INT:
+				setter.invokeExact(bean, in.readInt());
+				break;
+			case LONG:
+				setter.invokeExact(bean, in.readLong());
+				break;
+			case FLOAT:
+				setter.invokeExact(bean, ((Number) in.readObject()).floatValue());
+				break;
+			case DOUBLE:
+				setter.invokeExact(bean, ((Number) in.readObject()).doubleValue());
+				break;
+			default:
+				final Object value;
+				if (in.peek() == CHR_NONE) {
+					in.read();
+					value = null;
+				} else if (kind == Kind.STRING) {
+					value = in.readUTF();
+				} else if (kind == Kind.ENUM) {
+					value = toEnum(field.getType(), in.readUTF());
+				} else if (kind == Kind.BEAN) {
+					value = codecs.get(field.getType()).read(in);
+				} else {
+					value = convert(in.readObject(), field.getType());
+				}
+				setter.invokeExact(bean, value);
+			}
+		}
+	}
+
+	private final class BeanCodec implements RencodeEncoder<Object> {
+		private final Class<?> type;
+		private final MethodHandle constructor;
+		private final Property[] properties;
+		private final Map<String, Property> byName = new HashMap<>();
+
+		BeanCodec(Class<?> type) {
+			this.type = type;
+			try {
+				final Constructor<?> ctor = type.getDeclaredConstructor();
+				ctor.setAccessible(true);
+				this.constructor = MethodHandles.lookup().unreflectConstructor(ctor)
+						.asType(MethodType.methodType(Object.class));
+				final List<Property> list = new ArrayList<>();
+				collect(type, list);
+				this.properties = list.toArray(new Property[list.size()]);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException(type.getName() + " has no no-argument constructor", e);
+			} catch (IllegalAccessException | IOException e) {
+				throw new IllegalArgumentException("Unable to bind " + type.getName(), e);
+			}
+		}
+
+		private void collect(Class<?> c, List<Property> list) throws IllegalAccessException, IOException {
+			if (c.getSuperclass() != null && c.getSuperclass() != Object.class) {
+				collect(c.getSuperclass(), list);
+			}
+			for (Field field : c.getDeclaredFields()) {
+				final int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+					continue;
+				}
+				final RencodeField annotation = field.getAnnotation(RencodeField.class);
+				if (annotation != null && annotation.ignore()) {
+					continue;
+				}
+				final String name = annotation != null && !annotation.value().isEmpty() ? annotation.value() : field.getName();
+				final Property property = new Property(field, name);
+				if (byName.put(name, property) != null) {
+					throw new IllegalArgumentException("Duplicate key '" + name + "' in " + type.getName());
+				}
+				list.add(property);
+			}
+		}
+
+		@Override
+		public void encode(RencodeOutputStream out, Object bean) throws IOException {
+			out.writeDictStart(properties.length);
+			for (Property property : properties) {
+				try {
+					property.write(out, bean);
+				} catch (IOException | RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new IOException("Unable to write " + property.field, e);
+				}
+			}
+			out.writeDictEnd(properties.length);
+		}
+
+		Object read(RencodeInputStream in) throws IOException {
+			final int token = in.read();
+			if (token == CHR_NONE) {
+				return null;
+			}
+			if (Tokens.kind(token) != Tokens.Kind.DICT) {
+				throw new IOException("Unable to read " + type.getName() + ": expected a dict, got token " + token);
+			}
+			int count = Tokens.fixedCount(token);
+			final Object bean;
+			try {
+				bean = (Object) constructor.invokeExact();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IOException("Unable to create " + type.getName(), e);
+			}
+			in.enter();
+			try {
+				final boolean terminated = count < 0;
+				while (terminated ? in.peek() != CHR_TERM : count-- > 0) {
+					final Property property = byName.get(in.readKey());
+					if (property == null) {
+						in.skipValue();
+						continue;
+					}
+					try {
+						property.read(in, bean);
+					} catch (IOException | Error e) {
+						throw e;
+					} catch (Throwable e) {
+						throw new IOException("Unable to read " + property.field, e);
+					}
+				}
+				if (terminated) {
+					in.read(); // consume EOF character
+				}
+			} finally {
+				in.exit();
+			}
+			return bean;
+		}
+	}
+
+	private static Kind kindOf(Class<?> type) {
+		if (type == boolean.class) {
+			return Kind.BOOLEAN;
+		} else if (type == byte.class) {
+			return Kind.BYTE;
+		} else if (type == short.class) {
+			return Kind.SHORT;
+		} else if (type == char.class) {
+			return Kind.CHAR;
+		} else if (type == int.class) {
+			return Kind.INT;
+		} else if (type == long.class) {
+			return Kind.LONG;
+		} else if (type == float.class) {
+			return Kind.FLOAT;
+		} else if (type == double.class) {
+			return Kind.DOUBLE;
+		} else if (type == String.class) {
+			return Kind.STRING;
+		} else if (type.isEnum()) {
+			return Kind.ENUM;
+		} else if (type == Object.class || type.isArray() || type.isInterface() || Number.class.isAssignableFrom(type)
+				|| type == Boolean.class || type == Character.class || Collection.class.isAssignableFrom(type)
+				|| Map.class.isAssignableFrom(type) || type.getName().startsWith("java.")) {
+			return Kind.OBJECT;
+		}
+		return Kind.BEAN;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEnum(Class<?> type, String name) {
+		return Enum.valueOf((Class) type, name);
+	}
+
+	/**
+	 * Adapts a decoded value to the declared field type, e.g. a Byte decoded
+	 * from a small integer to an Integer field.
+	 */
+	private static Object convert(Object value, Class<?> type) {
+		if (value instanceof Number && !type.isInstance(value)) {
+			final Number number = (Number) value;
+			if (type == Integer.class) {
+				return number.intValue();
+			} else if (type == Long.class) {
+				return number.longValue();
+			} else if (type == Short.class) {
+				return number.shortValue();
+			} else if (type == Byte.class) {
+				return number.byteValue();
+			} else if (type == Double.class) {
+				return number.doubleValue();
+			} else if (type == Float.class) {
+				return number.floatValue();
+			} else if (type == Character.class) {
+				return (char) number.intValue();
+			}
+		} else if (value instanceof byte[] && type == String.class) {
+			return new String((byte[]) value, UTF_8);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,258 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Inflater;
+
+import static com.github.jksiezni.rencode.RencodeBlockWriter.*;
+
+/**
+ * Random access to a block-compressed container file written by
+ * {@link RencodeBlockWriter}.
+ * <p>
+ * Opening the file reads only the block headers, skipping the compressed
+ * data, to build an index of the blocks. Any block, or the block holding the
+ * n-th value, can then be read directly, and ranges of blocks can be
+ * decompressed and decoded in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * Instances are thread-safe: blocks are read with positional reads, and each
+ * read uses its own buffers and {@link Inflater}.
+ */
+public class RencodeBlockFile implements Closeable {
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final boolean decodeAsString;
+	private final byte[] dictionary;
+
+	// per block: file offset of the compressed data, number of values,
+	// uncompressed and compressed length, index of the first value
+	private long[] offsets = new long[16];
+	private int[] counts = new int[16];
+	private int[] lengths = new int[16];
+	private int[] compressedLengths = new int[16];
+	private long[] firstValues = new long[17];
+	private int blocks;
+
+	private volatile RencodeLimits limits = RencodeLimits.DEFAULT;
+	private volatile int maxBlockLength = RencodeBlockReader.DEFAULT_MAX_BLOCK_LENGTH;
+
+	public RencodeBlockFile(File file, boolean decodeAsString) throws IOException {
+		this(file, decodeAsString, null);
+	}
+
+	/**
+	 * @param dictionary the preset dictionary the container was written with,
+	 *          or <code>null</code>
+	 * @throws IOException if the file is not a container, is truncated, or the
+	 *           dictionary does not match it
+	 */
+	public RencodeBlockFile(File file, boolean decodeAsString, byte[] dictionary) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.decodeAsString = decodeAsString;
+		this.dictionary = dictionary != null ? dictionary.clone() : null;
+		try {
+			index();
+		} catch (IOException | RuntimeException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	private void index() throws IOException {
+		final long size = channel.size();
+		final byte[] fileHeader = new byte[FILE_HEADER_LENGTH];
+		readFully(fileHeader, 0);
+		RencodeBlockReader.checkHeader(fileHeader, dictionary);
+		final byte[] header = new byte[BLOCK_HEADER_LENGTH];
+		long position = FILE_HEADER_LENGTH;
+		while (position < size) {
+			readFully(header, position);
+			RencodeBlockReader.checkBlockHeader(header, blocks);
+			final int count = getInt(header, 0);
+			final int length = getInt(header, 4);
+			final int compressedLength = getInt(header, 8);
+			position += BLOCK_HEADER_LENGTH;
+			if (position + compressedLength > size) {
+				throw new EOFException("Truncated block " + blocks);
+			}
+			if (blocks == offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2 * blocks);
+				counts = Arrays.copyOf(counts, 2 * blocks);
+				lengths = Arrays.copyOf(lengths, 2 * blocks);
+				compressedLengths = Arrays.copyOf(compressedLengths, 2 * blocks);
+				firstValues = Arrays.copyOf(firstValues, 2 * blocks + 1);
+			}
+			offsets[blocks] = position;
+			counts[blocks] = count;
+			lengths[blocks] = length;
+			compressedLengths[blocks] = compressedLength;
+			firstValues[blocks + 1] = firstValues[blocks] + count;
+			++blocks;
+			position += compressedLength;
+		}
+	}
+
+	private void readFully(byte[] b, long position) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(b);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated container at byte " + (position + buffer.position()));
+			}
+		}
+	}
+
+	/**
+	 * Sets the bounds enforced while decoding values. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		this.limits = limits;
+	}
+
+	/**
+	 * Sets the largest uncompressed block read, which bounds the buffers
+	 * allocated per read. Defaults to
+	 * {@link RencodeBlockReader#DEFAULT_MAX_BLOCK_LENGTH}.
+	 */
+	public void setMaxBlockLength(int maxBlockLength) {
+		this.maxBlockLength = maxBlockLength;
+	}
+
+	public int blockCount() {
+		return blocks;
+	}
+
+	/**
+	 * @return number of values in all blocks
+	 */
+	public long valueCount() {
+		return firstValues[blocks];
+	}
+
+	/**
+	 * @return number of values in the block
+	 */
+	public int valueCount(int block) {
+		checkBlock(block);
+		return counts[block];
+	}
+
+	/**
+	 * @return index of the block holding the value with the given index
+	 */
+	public int blockOf(long valueIndex) {
+		if (valueIndex < 0 || valueIndex >= valueCount()) {
+			throw new IndexOutOfBoundsException("value " + valueIndex + " of " + valueCount());
+		}
+		final int i = Arrays.binarySearch(firstValues, 0, blocks + 1, valueIndex);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	private void checkBlock(int block) {
+		if (block < 0 || block >= blocks) {
+			throw new IndexOutOfBoundsException("block " + block + " of " + blocks);
+		}
+	}
+
+	/**
+	 * Reads and decodes all values of one block.
+	 */
+	public List<Object> readBlock(int block) throws IOException {
+		checkBlock(block);
+		RencodeBlockReader.checkBlockLength(lengths[block], maxBlockLength);
+		final byte[] compressed = new byte[compressedLengths[block]];
+		readFully(compressed, offsets[block]);
+		final byte[] data = new byte[lengths[block]];
+		final Inflater inflater = new Inflater();
+		try {
+			RencodeBlockReader.inflate(inflater, dictionary, compressed, compressed.length, data, data.length);
+		} finally {
+			inflater.end();
+		}
+		final ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+		final RencodeInputStream in = new RencodeInputStream(bytes, decodeAsString);
+		in.setLimits(limits);
+		final List<Object> values = new ArrayList<>(counts[block]);
+		for (int i = 0; i < counts[block]; ++i) {
+			values.add(in.readObject());
+		}
+		if (bytes.available() > 0) {
+			throw new IOException(bytes.available() + " trailing byte(s) in block " + block);
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the value with the given index, decompressing only its block.
+	 */
+	public Object get(long valueIndex) throws IOException {
+		final int block = blockOf(valueIndex);
+		return readBlock(block).get((int) (valueIndex - firstValues[block]));
+	}
+
+	/**
+	 * Reads the blocks in the range in parallel.
+	 *
+	 * @param from index of the first block, inclusive
+	 * @param to index of the last block, exclusive
+	 * @return the values of the blocks, in order
+	 */
+	public List<Object> readBlocks(int from, int to, ForkJoinPool pool) throws IOException {
+		if (from < 0 || to > blocks || from > to) {
+			throw new IndexOutOfBoundsException("blocks " + from + " to " + to + " of " + blocks);
+		}
+		final List<ForkJoinTask<List<Object>>> tasks = new ArrayList<>(to - from);
+		try {
+			for (int i = from; i < to; ++i) {
+				final int block = i;
+				tasks.add(pool.submit(ForkJoinTask.adapt(new Callable<List<Object>>() {
+					@Override
+					public List<Object> call() throws IOException {
+						return readBlock(block);
+					}
+				})));
+			}
+			final List<Object> values = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, firstValues[to] - firstValues[from]));
+			for (ForkJoinTask<List<Object>> task : tasks) {
+				values.addAll(ParallelRencode.get(task));
+			}
+			return values;
+		} finally {
+			for (ForkJoinTask<?> task : tasks) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Reads all blocks in parallel.
+	 */
+	public List<Object> readAll(ForkJoinPool pool) throws IOException {
+		return readBlocks(0, blocks, pool);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
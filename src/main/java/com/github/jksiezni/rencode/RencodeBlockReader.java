@@ -0,0 +1,369 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.github.jksiezni.rencode.RencodeBlockWriter.*;
+
+/**
+ * Reads the values of a block-compressed container written by
+ * {@link RencodeBlockWriter}, block by block.
+ * <p>
+ * Every block is decompressed into a buffer that is reused for the next
+ * block, and its values are decoded by a single {@link RencodeInputStream}.
+ * Whole blocks can be skipped with {@link #skipBlock()} without being
+ * decompressed. For random access and parallel decompression of a file, use
+ * {@link RencodeBlockFile}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class RencodeBlockReader implements Iterator<Object>, Closeable {
+
+	public static final int DEFAULT_MAX_BLOCK_LENGTH = 64 << 20;
+
+	private final InputStream in;
+	private final byte[] dictionary;
+	private final Inflater inflater = new Inflater();
+	private final BlockInputStream block = new BlockInputStream();
+	private final RencodeInputStream decoder;
+	private final byte[] header = new byte[BLOCK_HEADER_LENGTH];
+	private byte[] compressed = new byte[4096];
+	private int maxBlockLength = DEFAULT_MAX_BLOCK_LENGTH;
+
+	// values left in the current block, and index of the current block
+	private int remaining;
+	private long blockIndex = -1;
+	private boolean end;
+
+	public RencodeBlockReader(InputStream in) throws IOException {
+		this(in, false, null);
+	}
+
+	/**
+	 * @param dictionary the preset dictionary the container was written with,
+	 *          or <code>null</code>
+	 * @throws IOException if the container header is missing, or the
+	 *           dictionary does not match it
+	 */
+	public RencodeBlockReader(InputStream in, boolean decodeAsString, byte[] dictionary) throws IOException {
+		this.in = in;
+		this.dictionary = dictionary != null ? dictionary.clone() : null;
+		this.decoder = new RencodeInputStream(block, decodeAsString);
+		final byte[] fileHeader = new byte[FILE_HEADER_LENGTH];
+		if (readFully(in, fileHeader, 0, fileHeader.length) < fileHeader.length) {
+			throw new EOFException("Missing container header");
+		}
+		checkHeader(fileHeader, this.dictionary);
+	}
+
+	static void checkHeader(byte[] header, byte[] dictionary) throws IOException {
+		if (!Arrays.equals(MAGIC, Arrays.copyOf(header, MAGIC.length))) {
+			throw new IOException("Not a block-compressed rencode container");
+		}
+		if (header[MAGIC.length] != VERSION) {
+			throw new IOException("Unsupported container version " + header[MAGIC.length]);
+		}
+		final int id = getInt(header, MAGIC.length + 1);
+		if (id != dictionaryId(dictionary)) {
+			throw new IOException(id == 0 ? "Container has no preset dictionary"
+					: "Container needs a preset dictionary with id " + Integer.toHexString(id));
+		}
+	}
+
+	/**
+	 * Sets the bounds enforced while decoding values. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		decoder.setLimits(limits);
+	}
+
+	/**
+	 * Sets the largest uncompressed block accepted, which is the size of the
+	 * largest buffer allocated. Defaults to {@link #DEFAULT_MAX_BLOCK_LENGTH}.
+	 */
+	public void setMaxBlockLength(int maxBlockLength) {
+		this.maxBlockLength = maxBlockLength;
+	}
+
+	/**
+	 * @return index of the block the last value was read from, or -1 before
+	 *         the first block
+	 */
+	public long blockIndex() {
+		return blockIndex;
+	}
+
+	/**
+	 * @return values left in the current block
+	 */
+	public int remainingInBlock() {
+		return remaining;
+	}
+
+	/**
+	 * Reads the next block header.
+	 *
+	 * @return <code>false</code> at the end of the container
+	 */
+	private boolean nextHeader() throws IOException {
+		if (end) {
+			return false;
+		}
+		final int n = readFully(in, header, 0, header.length);
+		if (n == 0) {
+			end = true;
+			return false;
+		} else if (n < header.length) {
+			throw new EOFException("Truncated block header");
+		}
+		checkBlockHeader(header, blockIndex + 1);
+		checkBlockLength(getInt(header, 4), maxBlockLength);
+		++blockIndex;
+		return true;
+	}
+
+	/**
+	 * Checks that the counts of the block header are positive, and that the
+	 * compressed length is within the deflate bound of the uncompressed one,
+	 * before any buffer is allocated for the block.
+	 */
+	static void checkBlockHeader(byte[] header, long block) throws IOException {
+		final int count = getInt(header, 0);
+		final int length = getInt(header, 4);
+		final int compressedLength = getInt(header, 8);
+		if (count <= 0 || length <= 0 || compressedLength <= 0 || compressedLength > maxCompressedLength(length)) {
+			throw new IOException("Corrupt header of block " + block + ": " + count + " values, " + length + " bytes, "
+					+ compressedLength + " compressed bytes");
+		}
+	}
+
+	static void checkBlockLength(int length, int maxBlockLength) throws RencodeLimitException {
+		if (length > maxBlockLength) {
+			throw new RencodeLimitException("Block of " + length + " bytes exceeds the limit of " + maxBlockLength, -1);
+		}
+	}
+
+	private boolean nextBlock() throws IOException {
+		if (!nextHeader()) {
+			return false;
+		}
+		final int compressedLength = getInt(header, 8);
+		if (compressed.length < compressedLength) {
+			compressed = new byte[Math.max(compressedLength, 2 * compressed.length)];
+		}
+		if (readFully(in, compressed, 0, compressedLength) < compressedLength) {
+			throw new EOFException("Truncated block " + blockIndex);
+		}
+		final int length = getInt(header, 4);
+		if (block.buf.length < length) {
+			block.buf = new byte[Math.max(length, 2 * block.buf.length)];
+		}
+		inflate(inflater, dictionary, compressed, compressedLength, block.buf, length);
+		block.reset(length);
+		remaining = getInt(header, 0);
+		return true;
+	}
+
+	/**
+	 * Decompresses a whole block into <code>dst</code>.
+	 *
+	 * @throws IOException if the block is corrupt or its length differs from
+	 *           <code>length</code>
+	 */
+	static void inflate(Inflater inflater, byte[] dictionary, byte[] src, int srcLength, byte[] dst, int length)
+			throws IOException {
+		inflater.reset();
+		inflater.setInput(src, 0, srcLength);
+		try {
+			int n = 0;
+			while (!inflater.finished()) {
+				// once the block is full, any further output is an error
+				final int r = n < length ? inflater.inflate(dst, n, length - n) : inflater.inflate(new byte[1]);
+				if (r == 0 && inflater.needsDictionary()) {
+					if (dictionary == null) {
+						throw new IOException("Block needs a preset dictionary");
+					}
+					inflater.setDictionary(dictionary);
+				} else if (r == 0 && inflater.needsInput()) {
+					break;
+				}
+				n += r;
+			}
+			if (n != length || !inflater.finished()) {
+				throw new IOException("Block length mismatch: expected " + length + " bytes");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt block", e);
+		}
+	}
+
+	/**
+	 * Reads the next value, like {@link #next()} but with the original
+	 * exception.
+	 *
+	 * @throws EOFException at the end of the container
+	 */
+	public Object readObject() throws IOException {
+		if (remaining == 0 && !nextBlock()) {
+			throw new EOFException("end of container");
+		}
+		final Object value = decoder.readObject();
+		if (--remaining == 0 && block.available() > 0) {
+			throw new IOException(block.available() + " trailing byte(s) in block " + blockIndex);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads the remaining values of the current block, or all values of the
+	 * next block if the current one is exhausted.
+	 *
+	 * @return the values, or an empty list at the end of the container
+	 */
+	public List<Object> readBlock() throws IOException {
+		if (remaining == 0 && !nextBlock()) {
+			return new ArrayList<>();
+		}
+		final List<Object> values = new ArrayList<>(remaining);
+		while (remaining > 0) {
+			values.add(readObject());
+		}
+		return values;
+	}
+
+	/**
+	 * Drops the remaining values of the current block or, if it is exhausted,
+	 * skips the next block without decompressing it.
+	 *
+	 * @return number of values skipped, or -1 at the end of the container
+	 */
+	public int skipBlock() throws IOException {
+		if (remaining > 0) {
+			final int skipped = remaining;
+			remaining = 0;
+			return skipped;
+		}
+		if (!nextHeader()) {
+			return -1;
+		}
+		long n = getInt(header, 8);
+		while (n > 0) {
+			final long skipped = in.skip(n);
+			if (skipped > 0) {
+				n -= skipped;
+			} else if (in.read() < 0) {
+				throw new EOFException("Truncated block " + blockIndex);
+			} else {
+				--n;
+			}
+		}
+		return getInt(header, 0);
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			return remaining > 0 || nextBlock();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the value cannot be decoded; the cause
+	 *           holds the original {@link IOException}
+	 */
+	@Override
+	public Object next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return readObject();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to decode a value of block " + blockIndex, e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		in.close();
+	}
+
+	/**
+	 * @return number of bytes read, less than <code>len</code> only at the end
+	 *         of the stream
+	 */
+	static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while (total < len) {
+			final int r = in.read(b, off + total, len - total);
+			if (r < 0) {
+				break;
+			}
+			total += r;
+		}
+		return total;
+	}
+
+	/**
+	 * Reads the decompressed block; reset for every block.
+	 */
+	private static class BlockInputStream extends InputStream {
+		byte[] buf = new byte[4096];
+		private int pos;
+		private int count;
+
+		void reset(int length) {
+			pos = 0;
+			count = length;
+		}
+
+		@Override
+		public int read() {
+			return pos < count ? buf[pos++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (pos >= count) {
+				return len == 0 ? 0 : -1;
+			}
+			final int n = Math.min(len, count - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			final int skipped = (int) Math.max(0, Math.min(n, count - pos));
+			pos += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return count - pos;
+		}
+	}
+}
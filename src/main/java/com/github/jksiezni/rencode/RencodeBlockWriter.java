@@ -0,0 +1,290 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a sequence of top-level values as a block-compressed container.
+ * <p>
+ * Consecutive values are encoded into a block until it holds
+ * <code>maxValues</code> values or <code>maxBlockLength</code> bytes, then the
+ * block is compressed with a {@link Deflater}. Repeated dict keys and small
+ * values compress well, even more so with a preset dictionary trained on
+ * sample messages, see {@link #trainDictionary(Iterable, int)}.
+ * <p>
+ * The container starts with a header: the magic bytes <code>RNCB</code>, a
+ * version byte and the Adler-32 checksum of the preset dictionary, or 0
+ * without one. Every block starts with three 4-byte big-endian integers: the
+ * number of values, the uncompressed length and the compressed length. Blocks
+ * are compressed independently, so they can be skipped, located and
+ * decompressed in parallel, see {@link RencodeBlockReader} and
+ * {@link RencodeBlockFile}.
+ * <p>
+ * The encoding and compression buffers are reused from block to block.
+ * Instances are not thread-safe.
+ */
+public class RencodeBlockWriter implements Closeable, Flushable {
+
+	static final byte[] MAGIC = { 'R', 'N', 'C', 'B' };
+	static final int VERSION = 1;
+	static final int FILE_HEADER_LENGTH = MAGIC.length + 1 + 4;
+	static final int BLOCK_HEADER_LENGTH = 12;
+
+	public static final int DEFAULT_MAX_VALUES = 1024;
+	public static final int DEFAULT_MAX_BLOCK_LENGTH = 256 << 10;
+
+	private final OutputStream out;
+	private final int maxValues;
+	private final int maxBlockLength;
+	private final byte[] dictionary;
+	private final Deflater deflater;
+
+	private final Block block = new Block();
+	private final RencodeOutputStream encoder = new RencodeOutputStream(block);
+	private byte[] compressed = new byte[4096];
+	private int values;
+	private long blocks;
+	private boolean headerWritten;
+
+	public RencodeBlockWriter(OutputStream out) {
+		this(out, DEFAULT_MAX_VALUES, DEFAULT_MAX_BLOCK_LENGTH, null, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param maxValues a block is closed after this many values
+	 * @param maxBlockLength a block is closed once it holds at least this many
+	 *          uncompressed bytes
+	 * @param dictionary preset dictionary, or <code>null</code>; readers need
+	 *          the same one
+	 * @param level compression level of {@link Deflater}
+	 */
+	public RencodeBlockWriter(OutputStream out, int maxValues, int maxBlockLength, byte[] dictionary, int level) {
+		if (maxValues <= 0 || maxBlockLength <= 0) {
+			throw new IllegalArgumentException("Block limits must be positive");
+		}
+		this.out = out;
+		this.maxValues = maxValues;
+		this.maxBlockLength = maxBlockLength;
+		this.dictionary = dictionary != null ? dictionary.clone() : null;
+		this.deflater = new Deflater(level);
+	}
+
+	/**
+	 * Appends the value to the current block, closing the block when it is
+	 * full.
+	 */
+	public void writeObject(Object value) throws IOException {
+		final int start = block.size();
+		try {
+			encoder.writeObject(value);
+		} catch (IOException | RuntimeException e) {
+			block.truncate(start);
+			throw e;
+		}
+		if (++values >= maxValues || block.size() >= maxBlockLength) {
+			writeBlock();
+		}
+	}
+
+	/**
+	 * @return number of values in the current, not yet written block
+	 */
+	public int pendingValues() {
+		return values;
+	}
+
+	/**
+	 * @return number of blocks written so far
+	 */
+	public long blocks() {
+		return blocks;
+	}
+
+	/**
+	 * Closes the current block, even if it is not full, and flushes the
+	 * underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeBlock();
+		out.flush();
+	}
+
+	private void writeHeader() throws IOException {
+		final byte[] header = new byte[FILE_HEADER_LENGTH];
+		System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+		header[MAGIC.length] = VERSION;
+		putInt(header, MAGIC.length + 1, dictionaryId(dictionary));
+		out.write(header);
+		headerWritten = true;
+	}
+
+	private void writeBlock() throws IOException {
+		if (!headerWritten) {
+			writeHeader();
+		}
+		if (values == 0) {
+			return;
+		}
+		deflater.reset();
+		if (dictionary != null) {
+			deflater.setDictionary(dictionary);
+		}
+		deflater.setInput(block.buffer(), 0, block.size());
+		deflater.finish();
+		int length = BLOCK_HEADER_LENGTH;
+		while (!deflater.finished()) {
+			if (length == compressed.length) {
+				compressed = Arrays.copyOf(compressed, 2 * length);
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		putInt(compressed, 0, values);
+		putInt(compressed, 4, block.size());
+		putInt(compressed, 8, length - BLOCK_HEADER_LENGTH);
+		out.write(compressed, 0, length);
+		block.reset();
+		values = 0;
+		++blocks;
+	}
+
+	/**
+	 * Writes the last block and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock();
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	static void putInt(byte[] b, int off, int v) {
+		b[off] = (byte) (v >>> 24);
+		b[off + 1] = (byte) (v >>> 16);
+		b[off + 2] = (byte) (v >>> 8);
+		b[off + 3] = (byte) v;
+	}
+
+	static int getInt(byte[] b, int off) {
+		return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+	}
+
+	/**
+	 * @return the largest compressed length of a block of <code>length</code>
+	 *         bytes: zlib's compressBound(), plus the id of a preset
+	 *         dictionary and some slack
+	 */
+	static long maxCompressedLength(int length) {
+		return (long) length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 4 + 16;
+	}
+
+	/**
+	 * @return the id of the dictionary stored in the container header
+	 */
+	static int dictionaryId(byte[] dictionary) {
+		if (dictionary == null) {
+			return 0;
+		}
+		final Adler32 adler = new Adler32();
+		adler.update(dictionary, 0, dictionary.length);
+		return (int) adler.getValue();
+	}
+
+	/**
+	 * Builds a preset dictionary from sample messages. The encoded strings of
+	 * the samples, dict keys included, are ranked by the bytes they occur
+	 * with, and the most valuable ones are placed at the end of the
+	 * dictionary, where Deflater finds them at the shortest distance.
+	 *
+	 * @param maxLength maximum size of the dictionary; Deflater uses at most
+	 *          32 KB
+	 */
+	public static byte[] trainDictionary(Iterable<?> samples, int maxLength) throws IOException {
+		final Map<String, int[]> counts = new HashMap<>();
+		for (Object sample : samples) {
+			collectStrings(sample, counts);
+		}
+		final List<Entry<String, int[]>> ranked = new ArrayList<>(counts.entrySet());
+		Collections.sort(ranked, new Comparator<Entry<String, int[]>>() {
+			@Override
+			public int compare(Entry<String, int[]> a, Entry<String, int[]> b) {
+				final long scoreA = (long) a.getValue()[0] * a.getKey().length();
+				final long scoreB = (long) b.getValue()[0] * b.getKey().length();
+				return scoreA < scoreB ? 1 : scoreA > scoreB ? -1 : a.getKey().compareTo(b.getKey());
+			}
+		});
+		// most valuable first, until the dictionary is full
+		final List<byte[]> chosen = new ArrayList<>();
+		int length = 0;
+		for (Entry<String, int[]> entry : ranked) {
+			if (entry.getValue()[0] < 2) {
+				continue; // nothing to share
+			}
+			final byte[] encoded = RencodeCodec.BYTES.encode(entry.getKey());
+			if (length + encoded.length <= maxLength) {
+				chosen.add(encoded);
+				length += encoded.length;
+			}
+		}
+		final ByteArrayOutputStream dictionary = new ByteArrayOutputStream(length);
+		for (int i = chosen.size() - 1; i >= 0; --i) {
+			dictionary.write(chosen.get(i));
+		}
+		return dictionary.toByteArray();
+	}
+
+	private static void collectStrings(Object value, Map<String, int[]> counts) {
+		if (value instanceof CharSequence) {
+			final String s = value.toString();
+			int[] count = counts.get(s);
+			if (count == null) {
+				counts.put(s, count = new int[1]);
+			}
+			++count[0];
+		} else if (value instanceof Collection<?>) {
+			for (Object elem : (Collection<?>) value) {
+				collectStrings(elem, counts);
+			}
+		} else if (value instanceof Map<?, ?>) {
+			for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				collectStrings(entry.getKey(), counts);
+				collectStrings(entry.getValue(), counts);
+			}
+		}
+	}
+
+	private static class Block extends ByteArrayOutputStream {
+
+		Block() {
+			super(4096);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+
+		void truncate(int size) {
+			count = size;
+		}
+	}
+}
@@ -0,0 +1,558 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Decodes rencoded values directly from a {@link ByteBuffer}, heap or direct.
+ * <p>
+ * The decoder keeps its own cursor and reads with absolute gets, so the
+ * position and limit of the given buffer are never modified. Values are
+ * decoded to the same types as {@link RencodeInputStream#readObject()}.
+ * <p>
+ * Input is checked against {@link RencodeLimits} as it is decoded.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class RencodeBufferDecoder {
+
+	private final ByteBuffer buffer;
+	private final boolean decodeAsString;
+	private final int limit;
+	private int position;
+
+	private RencodeLimits limits = RencodeLimits.DEFAULT;
+	// number of lists and dicts being decoded
+	private int depth;
+	// the position beyond which the current top-level value exceeds
+	// limits.getMaxTotalBytes()
+	private long positionLimit = Long.MAX_VALUE;
+
+	public RencodeBufferDecoder(ByteBuffer buffer) {
+		this(buffer, false);
+	}
+
+	/**
+	 * @param buffer the buffer to decode; values are read from its current
+	 *          position up to its limit
+	 * @param decodeAsString if <code>true</code>, strings are decoded as
+	 *          {@link String}, otherwise as <code>byte[]</code>
+	 */
+	public RencodeBufferDecoder(ByteBuffer buffer, boolean decodeAsString) {
+		this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		this.decodeAsString = decodeAsString;
+		this.position = buffer.position();
+		this.limit = buffer.limit();
+	}
+
+	/**
+	 * @return the index of the next byte to be decoded
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * Moves the cursor, e.g. to re-read a value.
+	 */
+	public void position(int newPosition) {
+		if (newPosition < 0 || newPosition > limit) {
+			throw new IllegalArgumentException("position out of range: " + newPosition);
+		}
+		position = newPosition;
+	}
+
+	public boolean hasRemaining() {
+		return position < limit;
+	}
+
+	/**
+	 * Sets the bounds enforced while decoding. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		this.limits = limits;
+	}
+
+	public RencodeLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Starts a read by a public method. Unless it is nested in another read,
+	 * the read decodes a top-level value, bounded by
+	 * {@link RencodeLimits#getMaxTotalBytes()}.
+	 *
+	 * @return <code>true</code> if the read is top-level, to be passed to
+	 *         {@link #endValue(boolean)}
+	 */
+	private boolean beginValue() {
+		if (depth > 0 || positionLimit != Long.MAX_VALUE) {
+			return false;
+		}
+		final long maxTotalBytes = limits.getMaxTotalBytes();
+		positionLimit = position > Long.MAX_VALUE - maxTotalBytes ? Long.MAX_VALUE : position + maxTotalBytes;
+		return true;
+	}
+
+	private void endValue(boolean top) {
+		if (top) {
+			positionLimit = Long.MAX_VALUE;
+		}
+	}
+
+	public Object readObject() throws IOException {
+		final boolean top = beginValue();
+		try {
+			return decode();
+		} finally {
+			endValue(top);
+		}
+	}
+
+	private Object decode() throws IOException {
+		final int token = next();
+		switch (Tokens.kind(token)) {
+		case FIXED_INT:
+			return (byte) Tokens.fixedInt(token);
+		case INT:
+			switch (token) {
+			case CHR_INT1:
+				return (byte) next();
+			case CHR_INT2:
+				return fetchShort();
+			case CHR_INT4:
+				return fetchInt();
+			default:
+				return fetchLong();
+			}
+		case FLOAT:
+			if (token == CHR_FLOAT32) {
+				return Float.intBitsToFloat(fetchInt());
+			}
+			return Double.longBitsToDouble(fetchLong());
+		case DECIMAL:
+			return fetchDecimal();
+		case BIG_INTEGER:
+			return fetchTwosComplement();
+		case BIG_DECIMAL: {
+			final long scale = readNumber();
+			return BigNumbers.toBigDecimal(fetchTwosComplement(), scale);
+		}
+		case STRING:
+			return fetchStringOrBytes(fetchLength(token));
+		case LIST:
+			return fetchList(Tokens.fixedCount(token));
+		case DICT:
+			return fetchMap(Tokens.fixedCount(token));
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case NONE:
+			return null;
+		default:
+			throw new IOException("readObject(): null decoder for token " + token);
+		}
+	}
+
+	public boolean readBoolean() throws IOException {
+		return next() == CHR_TRUE;
+	}
+
+	private long readNumber() throws IOException {
+		final int token = next();
+		if (Tokens.kind(token) == Tokens.Kind.FIXED_INT) {
+			return Tokens.fixedInt(token);
+		}
+		switch (token) {
+		case CHR_INT1:
+			return (byte) next();
+		case CHR_INT2:
+			return fetchShort();
+		case CHR_INT4:
+			return fetchInt();
+		case CHR_INT8:
+			return fetchLong();
+		default:
+			throw new IOException("Unable to decode the number.");
+		}
+	}
+
+	public byte readByte() throws IOException {
+		return (byte) readNumber();
+	}
+
+	public short readShort() throws IOException {
+		return (short) readNumber();
+	}
+
+	public int readInt() throws IOException {
+		return (int) readNumber();
+	}
+
+	public long readLong() throws IOException {
+		return readNumber();
+	}
+
+	private void validate(final int expected) throws IOException {
+		final int token = next();
+		if (token != expected) {
+			throw new IOException("Invalid code: expected=" + expected + ", actual=" + token);
+		}
+	}
+
+	public float readFloat() throws IOException {
+		validate(CHR_FLOAT32);
+		return Float.intBitsToFloat(fetchInt());
+	}
+
+	public double readDouble() throws IOException {
+		validate(CHR_FLOAT64);
+		return Double.longBitsToDouble(fetchLong());
+	}
+
+	public String readUTF() throws IOException {
+		final boolean top = beginValue();
+		try {
+			final int token = next();
+			if (Tokens.kind(token) == Tokens.Kind.STRING) {
+				return fetchString(fetchLength(token));
+			}
+			throw new IOException("Unable to read a String from buffer.");
+		} finally {
+			endValue(top);
+		}
+	}
+
+	public List<Object> readList() throws IOException {
+		final boolean top = beginValue();
+		try {
+			final int token = next();
+			if (Tokens.kind(token) == Tokens.Kind.LIST) {
+				return fetchList(Tokens.fixedCount(token));
+			}
+			throw new IOException("Unable to read a List from buffer.");
+		} finally {
+			endValue(top);
+		}
+	}
+
+	public Map<Object, Object> readMap() throws IOException {
+		final boolean top = beginValue();
+		try {
+			final int token = next();
+			if (Tokens.kind(token) == Tokens.Kind.DICT) {
+				return fetchMap(Tokens.fixedCount(token));
+			}
+			throw new IOException("Unable to read a Map from buffer.");
+		} finally {
+			endValue(top);
+		}
+	}
+
+	/**
+	 * @param count number of elements, or -1 for a CHR_TERM terminated list
+	 */
+	private List<Object> fetchList(int count) throws IOException {
+		enter();
+		try {
+			final List<Object> list;
+			if (count >= 0) {
+				limits.checkElements(count, position);
+				list = new ArrayList<>(count);
+				while (count-- > 0) {
+					list.add(decode());
+				}
+			} else {
+				final int maxElements = limits.getMaxContainerElements();
+				list = new ArrayList<>(2 * LIST_FIXED_COUNT);
+				while (peek() != CHR_TERM) {
+					if (list.size() == maxElements) {
+						limits.checkElements(maxElements + 1L, position);
+					}
+					list.add(decode());
+				}
+				++position; // consume CHR_TERM
+			}
+			return list;
+		} finally {
+			--depth;
+		}
+	}
+
+	/**
+	 * @param count number of entries, or -1 for a CHR_TERM terminated dict
+	 */
+	private Map<Object, Object> fetchMap(int count) throws IOException {
+		enter();
+		try {
+			final Map<Object, Object> map;
+			if (count >= 0) {
+				limits.checkElements(count, position);
+				map = new HashMap<>(count, 1);
+				while (count-- > 0) {
+					map.put(readKey(), decode());
+				}
+			} else {
+				final int maxElements = limits.getMaxContainerElements();
+				map = new HashMap<>(2 * DICT_FIXED_COUNT);
+				for (int size = 0; peek() != CHR_TERM; ++size) {
+					if (size == maxElements) {
+						limits.checkElements(maxElements + 1L, position);
+					}
+					map.put(readKey(), decode());
+				}
+				++position; // consume CHR_TERM
+			}
+			return map;
+		} finally {
+			--depth;
+		}
+	}
+
+	/**
+	 * Moves past the next value, including all elements of a list or dict,
+	 * without decoding it. Only tokens and length prefixes are read.
+	 */
+	public void skipValue() throws IOException {
+		final boolean top = beginValue();
+		try {
+			skipNext();
+		} finally {
+			endValue(top);
+		}
+	}
+
+	private void skipNext() throws IOException {
+		final int token = next();
+		switch (Tokens.kind(token)) {
+		case STRING:
+			skip(fetchLength(token));
+			break;
+		case LIST:
+			skipElements(Tokens.fixedCount(token), false);
+			break;
+		case DICT:
+			skipElements(Tokens.fixedCount(token), true);
+			break;
+		case INT:
+		case FLOAT:
+			skip(Tokens.size(token));
+			break;
+		case DECIMAL:
+			for (int length = 0; next() != CHR_TERM; ++length) {
+				Tokens.decimalDigit(length);
+			}
+			break;
+		case BIG_INTEGER:
+			skip(next());
+			break;
+		case BIG_DECIMAL:
+			readNumber(); // the scale is an integer token
+			skip(next());
+			break;
+		case FIXED_INT:
+		case TRUE:
+		case FALSE:
+		case NONE:
+			break;
+		default:
+			throw new IOException("skipValue(): null decoder for token " + token);
+		}
+	}
+
+	/**
+	 * @param count number of elements or entries, or -1 for a CHR_TERM
+	 *          terminated container
+	 */
+	private void skipElements(int count, boolean isDict) throws IOException {
+		enter();
+		try {
+			if (count >= 0) {
+				limits.checkElements(count, position);
+				for (int values = isDict ? 2 * count : count; values > 0; --values) {
+					skipNext();
+				}
+			} else {
+				final long maxValues = isDict ? 2L * limits.getMaxContainerElements() : limits.getMaxContainerElements();
+				for (long values = 0; peek() != CHR_TERM; ++values) {
+					if (values == maxValues) {
+						limits.checkElements(isDict ? values / 2 + 1 : values + 1, position);
+					}
+					skipNext();
+				}
+				++position; // consume CHR_TERM
+			}
+		} finally {
+			--depth;
+		}
+	}
+
+	/**
+	 * @param token a token already consumed
+	 * @return length of the string the token starts, leaving the cursor at its
+	 *         first byte, or -1 if the token does not start a string
+	 */
+	int stringLength(int token) throws IOException {
+		if (Tokens.kind(token) == Tokens.Kind.STRING) {
+			return fetchLength(token);
+		}
+		return -1;
+	}
+
+	void skip(int n) throws IOException {
+		require(n);
+		position += n;
+	}
+
+	private void enter() throws RencodeLimitException {
+		limits.checkDepth(depth + 1, position);
+		++depth;
+	}
+
+	Object readKey() throws IOException {
+		final Object key = decode();
+		if (key instanceof Number) {
+			return ((Number) key).intValue();
+		} else if (key instanceof byte[]) {
+			return new String((byte[]) key, UTF_8);
+		}
+		return key;
+	}
+
+	/**
+	 * @throws RencodeLimitException if the bytes would take the current
+	 *           top-level value beyond the limit
+	 * @throws EOFException if fewer bytes are left in the buffer
+	 */
+	private void require(int n) throws IOException {
+		if (position + (long) n > positionLimit) {
+			throw new RencodeLimitException("Value exceeds the limit of " + limits.getMaxTotalBytes() + " bytes",
+					position + (long) n);
+		}
+		if (limit - position < n) {
+			throw new EOFException("end of buffer");
+		}
+	}
+
+	int next() throws IOException {
+		require(1);
+		return buffer.get(position++) & 0xFF;
+	}
+
+	int peek() throws IOException {
+		require(1);
+		return buffer.get(position) & 0xFF;
+	}
+
+	private short fetchShort() throws IOException {
+		require(2);
+		final short value = buffer.getShort(position);
+		position += 2;
+		return value;
+	}
+
+	private int fetchInt() throws IOException {
+		require(4);
+		final int value = buffer.getInt(position);
+		position += 4;
+		return value;
+	}
+
+	private long fetchLong() throws IOException {
+		require(8);
+		final long value = buffer.getLong(position);
+		position += 8;
+		return value;
+	}
+
+	/**
+	 * @param token a {@link Tokens.Kind#STRING} token, already consumed
+	 * @return length of the string, leaving the cursor at its first byte
+	 * @throws RencodeLimitException if the length, embedded in the token or
+	 *           prefixed, exceeds the limit
+	 */
+	private int fetchLength(int token) throws IOException {
+		int length = Tokens.fixedCount(token);
+		if (length < 0) {
+			length = token - '0';
+			while ((token = next()) != LENGTH_DELIMITER) {
+				length = Tokens.lengthDigit(length, token);
+			}
+		}
+		limits.checkStringLength(length, position);
+		return length;
+	}
+
+	/**
+	 * Reads the ASCII digits of CHR_INT up to CHR_TERM.
+	 */
+	private Number fetchDecimal() throws IOException {
+		final int start = position;
+		for (int length = 0; next() != CHR_TERM; ++length) {
+			Tokens.decimalDigit(length);
+		}
+		final int length = position - 1 - start;
+		final byte[] digits = new byte[length];
+		final ByteBuffer src = buffer.duplicate();
+		src.position(start);
+		src.get(digits);
+		return BigNumbers.parseDecimal(digits, length);
+	}
+
+	private BigInteger fetchTwosComplement() throws IOException {
+		final int size = next();
+		require(size);
+		final byte[] bytes = new byte[size];
+		final ByteBuffer src = buffer.duplicate();
+		src.position(position);
+		src.get(bytes);
+		position += size;
+		return BigNumbers.fromTwosComplement(bytes);
+	}
+
+	private Object fetchStringOrBytes(int size) throws IOException {
+		if (decodeAsString) {
+			return fetchString(size);
+		}
+		require(size);
+		final byte[] bytes = new byte[size];
+		final ByteBuffer src = buffer.duplicate();
+		src.position(position);
+		src.get(bytes);
+		position += size;
+		return bytes;
+	}
+
+	private String fetchString(int size) throws IOException {
+		require(size);
+		final String value;
+		if (buffer.hasArray()) {
+			value = new String(buffer.array(), buffer.arrayOffset() + position, size, UTF_8);
+		} else {
+			final byte[] bytes = new byte[size];
+			final ByteBuffer src = buffer.duplicate();
+			src.position(position);
+			src.get(bytes);
+			value = new String(bytes, UTF_8);
+		}
+		position += size;
+		return value;
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An immutable, thread-safe entry point for encoding and decoding single
+ * values, meant to be created once and shared.
+ * <p>
+ * The codec holds no decoding tables: tokens are classified once for all
+ * decoders, and the per-call state lives in a short-lived reader, a
+ * {@link RencodeBufferDecoder} for in-memory input or a
+ * {@link RencodeInputStream} for streams. Byte arrays and buffers are decoded
+ * in place, without wrapping them in a stream.
+ */
+public final class RencodeCodec {
+
+	/**
+	 * Decodes strings as <code>byte[]</code>.
+	 */
+	public static final RencodeCodec BYTES = new RencodeCodec(false, RencodeEncoders.DEFAULT, RencodeLimits.DEFAULT);
+
+	/**
+	 * Decodes strings as {@link String}.
+	 */
+	public static final RencodeCodec STRINGS = new RencodeCodec(true, RencodeEncoders.DEFAULT, RencodeLimits.DEFAULT);
+
+	private final boolean decodeAsString;
+	private final RencodeEncoders encoders;
+	private final RencodeLimits limits;
+
+	private RencodeCodec(boolean decodeAsString, RencodeEncoders encoders, RencodeLimits limits) {
+		this.decodeAsString = decodeAsString;
+		this.encoders = encoders;
+		this.limits = limits;
+	}
+
+	/**
+	 * @return a codec encoding values with the given encoders
+	 */
+	public RencodeCodec withEncoders(RencodeEncoders encoders) {
+		if (encoders == null) {
+			throw new NullPointerException("encoders");
+		}
+		return new RencodeCodec(decodeAsString, encoders, limits);
+	}
+
+	/**
+	 * @return a codec whose readers enforce the given limits
+	 */
+	public RencodeCodec withLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		return new RencodeCodec(decodeAsString, encoders, limits);
+	}
+
+	public boolean isDecodeAsString() {
+		return decodeAsString;
+	}
+
+	public RencodeEncoders getEncoders() {
+		return encoders;
+	}
+
+	public RencodeLimits getLimits() {
+		return limits;
+	}
+
+	public Object decode(byte[] b) throws IOException {
+		return decode(b, 0, b.length);
+	}
+
+	/**
+	 * Decodes exactly one value spanning the given range.
+	 *
+	 * @throws IOException if the value is malformed, or followed by trailing
+	 *           bytes
+	 */
+	public Object decode(byte[] b, int off, int len) throws IOException {
+		return decode(ByteBuffer.wrap(b, off, len));
+	}
+
+	/**
+	 * Decodes exactly one value spanning the remaining bytes of the buffer. The
+	 * buffer itself is not modified.
+	 *
+	 * @throws IOException if the value is malformed, or followed by trailing
+	 *           bytes
+	 */
+	public Object decode(ByteBuffer buffer) throws IOException {
+		final RencodeBufferDecoder reader = reader(buffer);
+		final Object value = reader.readObject();
+		if (reader.hasRemaining()) {
+			throw new IOException((buffer.limit() - reader.position()) + " trailing byte(s) after the value");
+		}
+		return value;
+	}
+
+	/**
+	 * @return a new reader for a sequence of values in the buffer
+	 */
+	public RencodeBufferDecoder reader(ByteBuffer buffer) {
+		final RencodeBufferDecoder reader = new RencodeBufferDecoder(buffer, decodeAsString);
+		reader.setLimits(limits);
+		return reader;
+	}
+
+	/**
+	 * @return a new reader for a sequence of values in the stream
+	 */
+	public RencodeInputStream reader(InputStream in) {
+		final RencodeInputStream reader = new RencodeInputStream(in, decodeAsString);
+		reader.setLimits(limits);
+		return reader;
+	}
+
+	/**
+	 * @return the exact number of bytes {@link #encode(Object)} produces for
+	 *         the value
+	 * @throws IllegalArgumentException if no encoder writes the value
+	 */
+	public long encodedSize(Object value) {
+		return new EncodedSize(false, encoders).of(value);
+	}
+
+	/**
+	 * Sizes the value first, then encodes it straight into an array of that
+	 * size, so the array is allocated once and never copied. The value must
+	 * not be modified meanwhile.
+	 */
+	public byte[] encode(Object value) throws IOException {
+		return RencodeOutputStream.toByteArray(value, false, encoders);
+	}
+
+	/**
+	 * Writes the value to the stream with a single write.
+	 */
+	public void encode(Object value, OutputStream out) throws IOException {
+		final RencodeOutputStream encoder = new RencodeOutputStream(out, true);
+		encoder.setEncoders(encoders);
+		encoder.writeObject(value);
+		encoder.flush();
+	}
+}
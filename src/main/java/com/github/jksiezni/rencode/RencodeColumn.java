@@ -0,0 +1,327 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.github.jksiezni.rencode.Rencode.UTF_8;
+
+/**
+ * The values of one dict key across the records of a batch read by
+ * {@link RencodeColumnReader}, stored in a primitive vector.
+ * <p>
+ * Integers and booleans (as 0 and 1) go to {@link #longs()}, floats to
+ * {@link #doubles()}; a column of integers that meets a float is widened to
+ * doubles. Strings are dictionary-encoded: {@link #codes()} holds an index
+ * into {@link #dictionary()} per row. Rows where the value is
+ * <code>None</code> or the key is missing are marked in the
+ * {@link #nulls()} bitmap, and hold 0 in the vector.
+ * <p>
+ * The vectors have the batch size as capacity: only the first
+ * {@link RencodeColumnReader#rowCount()} rows are valid, and all of them are
+ * reused by the next batch. The string dictionary is rebuilt for every batch.
+ */
+public final class RencodeColumn {
+
+	public enum Type {
+		/** Only nulls met so far. */
+		NONE,
+		LONG,
+		DOUBLE,
+		STRING
+	}
+
+	private final String name;
+	private final byte[] nameBytes;
+	private final int capacity;
+	private Type type = Type.NONE;
+
+	private final long[] nulls;
+	private long[] longs;
+	private double[] doubles;
+	private int[] codes;
+
+	// dictionary of the batch; table is an open-addressing hash of the
+	// entries, holding code + 1 per slot, or 0 for free slots
+	private String[] dictionary;
+	private byte[][] entries;
+	private int size;
+	private int[] table;
+
+	// last row a value was put in, to detect missing and duplicate keys
+	private int lastRow = -1;
+
+	RencodeColumn(String name, int capacity) {
+		this.name = name;
+		this.nameBytes = name.getBytes(UTF_8);
+		this.capacity = capacity;
+		this.nulls = new long[(capacity + 63) >>> 6];
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public Type type() {
+		return type;
+	}
+
+	/**
+	 * @return the null bitmap, bit <code>row % 64</code> of word
+	 *         <code>row / 64</code> being set for a null
+	 */
+	public long[] nulls() {
+		return nulls;
+	}
+
+	public boolean isNull(int row) {
+		return (nulls[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * @return the values of a {@link Type#LONG} column, or <code>null</code>
+	 */
+	public long[] longs() {
+		return type == Type.LONG ? longs : null;
+	}
+
+	/**
+	 * @return the values of a {@link Type#DOUBLE} column, or <code>null</code>
+	 */
+	public double[] doubles() {
+		return type == Type.DOUBLE ? doubles : null;
+	}
+
+	/**
+	 * @return the dictionary codes of a {@link Type#STRING} column, or
+	 *         <code>null</code>
+	 */
+	public int[] codes() {
+		return type == Type.STRING ? codes : null;
+	}
+
+	/**
+	 * @return the distinct strings of the batch, indexed by code
+	 */
+	public String[] dictionary() {
+		return type == Type.STRING ? Arrays.copyOf(dictionary, size) : new String[0];
+	}
+
+	/**
+	 * @return the string in the row, or <code>null</code>
+	 */
+	public String getString(int row) {
+		if (type != Type.STRING) {
+			throw new IllegalStateException("Column " + name + " holds " + type);
+		}
+		return isNull(row) ? null : dictionary[codes[row]];
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + type;
+	}
+
+	/**
+	 * Starts a new batch.
+	 */
+	void reset() {
+		Arrays.fill(nulls, 0);
+		lastRow = -1;
+		if (size > 0) {
+			Arrays.fill(dictionary, 0, size, null);
+			Arrays.fill(entries, 0, size, null);
+			Arrays.fill(table, 0);
+			size = 0;
+		}
+	}
+
+	boolean nameEquals(ByteBuffer buffer, int start, int length) {
+		return equals(nameBytes, buffer, start, length);
+	}
+
+	/**
+	 * Marks all rows before <code>row</code> null, for a column met first in
+	 * the middle of a batch.
+	 */
+	void fillNulls(int row) {
+		for (int i = 0; i < row; ++i) {
+			nulls[i >>> 6] |= 1L << i;
+		}
+	}
+
+	/**
+	 * Claims the row for a value of this column.
+	 *
+	 * @throws IOException if the row already has one
+	 */
+	private void claim(int row) throws IOException {
+		if (lastRow == row) {
+			throw new IOException("Duplicate key " + name + " in record " + row);
+		}
+		lastRow = row;
+	}
+
+	/**
+	 * Marks the row null unless it has a value, at the end of a record.
+	 */
+	void endRow(int row) {
+		if (lastRow != row) {
+			clear(row);
+		}
+	}
+
+	void putNull(int row) throws IOException {
+		claim(row);
+		clear(row);
+	}
+
+	private void clear(int row) {
+		nulls[row >>> 6] |= 1L << row;
+		switch (type) {
+		case LONG:
+			longs[row] = 0;
+			break;
+		case DOUBLE:
+			doubles[row] = 0;
+			break;
+		case STRING:
+			codes[row] = 0;
+			break;
+		default:
+			break;
+		}
+	}
+
+	void putLong(int row, long value) throws IOException {
+		claim(row);
+		switch (type) {
+		case NONE:
+			if (longs == null) {
+				longs = new long[capacity];
+			}
+			Arrays.fill(longs, 0, row, 0);
+			type = Type.LONG;
+			longs[row] = value;
+			break;
+		case LONG:
+			longs[row] = value;
+			break;
+		case DOUBLE:
+			doubles[row] = value;
+			break;
+		default:
+			throw mixed(Type.LONG);
+		}
+	}
+
+	void putDouble(int row, double value) throws IOException {
+		claim(row);
+		switch (type) {
+		case LONG:
+			// widen the rows read so far
+			if (doubles == null) {
+				doubles = new double[capacity];
+			}
+			for (int i = 0; i < row; ++i) {
+				doubles[i] = longs[i];
+			}
+			type = Type.DOUBLE;
+			break;
+		case NONE:
+			if (doubles == null) {
+				doubles = new double[capacity];
+			}
+			Arrays.fill(doubles, 0, row, 0);
+			type = Type.DOUBLE;
+			break;
+		case DOUBLE:
+			break;
+		default:
+			throw mixed(Type.DOUBLE);
+		}
+		doubles[row] = value;
+	}
+
+	/**
+	 * Puts the code of the string at <code>[start, start + length)</code>,
+	 * adding it to the dictionary if it is new.
+	 */
+	void putString(int row, ByteBuffer buffer, int start, int length) throws IOException {
+		claim(row);
+		if (type == Type.NONE) {
+			if (codes == null) {
+				codes = new int[capacity];
+				dictionary = new String[16];
+				entries = new byte[16][];
+				table = new int[32];
+			}
+			Arrays.fill(codes, 0, row, 0);
+			type = Type.STRING;
+		} else if (type != Type.STRING) {
+			throw mixed(Type.STRING);
+		}
+		int hash = 0;
+		for (int i = 0; i < length; ++i) {
+			hash = 31 * hash + buffer.get(start + i);
+		}
+		final int mask = table.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		for (int code; (code = table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+			if (equals(entries[code], buffer, start, length)) {
+				codes[row] = code;
+				return;
+			}
+		}
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			bytes[i] = buffer.get(start + i);
+		}
+		if (size == entries.length) {
+			entries = Arrays.copyOf(entries, 2 * size);
+			dictionary = Arrays.copyOf(dictionary, 2 * size);
+		}
+		entries[size] = bytes;
+		dictionary[size] = new String(bytes, UTF_8);
+		table[slot] = size + 1;
+		codes[row] = size++;
+		if (2 * size > table.length) {
+			rehash();
+		}
+	}
+
+	private void rehash() {
+		table = new int[2 * table.length];
+		final int mask = table.length - 1;
+		for (int code = 0; code < size; ++code) {
+			int hash = 0;
+			for (byte b : entries[code]) {
+				hash = 31 * hash + b;
+			}
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = code + 1;
+		}
+	}
+
+	private static boolean equals(byte[] entry, ByteBuffer buffer, int start, int length) {
+		if (entry.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (buffer.get(start + i) != entry[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private IOException mixed(Type actual) {
+		return new IOException("Column " + name + " holds " + type + " values, not " + actual);
+	}
+}
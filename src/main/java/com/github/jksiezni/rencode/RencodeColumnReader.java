@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Decodes a sequence of dicts sharing the same keys into column vectors, a
+ * batch of records at a time, e.g. for vectorized aggregation.
+ * <p>
+ * Every key becomes a {@link RencodeColumn}, in the order the keys are first
+ * met. Values are read straight from the tokens into the primitive vector of
+ * their column, so no per-record {@link java.util.Map} and no boxed values
+ * are created; strings are dictionary-encoded and decoded once per distinct
+ * value and batch. Records with the keys in the same order are matched
+ * against the columns with a single comparison per key.
+ * <p>
+ * Keys must be strings, and values integers, floats, booleans, strings or
+ * <code>None</code>. Nested lists and dicts and big numbers fail with an
+ * {@link IOException}, as does a column holding both strings and numbers.
+ * <p>
+ * Like {@link RencodeBufferDecoder}, the reader keeps its own cursor, so the
+ * position and limit of the given buffer are never modified. Instances are
+ * not thread-safe.
+ */
+public class RencodeColumnReader {
+
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+
+	private final ByteBuffer buffer;
+	private final RencodeBufferDecoder decoder;
+	private final int batchSize;
+	private final List<RencodeColumn> columns = new ArrayList<>();
+	private int rows;
+
+	public RencodeColumnReader(ByteBuffer buffer) {
+		this(buffer, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param batchSize maximum number of records per batch, and the length of
+	 *          the column vectors
+	 */
+	public RencodeColumnReader(ByteBuffer buffer, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.buffer = buffer.duplicate();
+		this.decoder = new RencodeBufferDecoder(buffer);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the index of the next byte to be decoded
+	 */
+	public int position() {
+		return decoder.position();
+	}
+
+	public boolean hasRemaining() {
+		return decoder.hasRemaining();
+	}
+
+	/**
+	 * Reads up to the batch size of records into the columns, overwriting the
+	 * previous batch. If a record is malformed, the content of the batch is
+	 * undefined.
+	 *
+	 * @return number of records read, 0 at the end of the buffer
+	 */
+	public int readBatch() throws IOException {
+		for (RencodeColumn column : columns) {
+			column.reset();
+		}
+		rows = 0;
+		while (rows < batchSize && decoder.hasRemaining()) {
+			readRecord(rows);
+			++rows;
+		}
+		return rows;
+	}
+
+	/**
+	 * @return number of records in the current batch
+	 */
+	public int rowCount() {
+		return rows;
+	}
+
+	/**
+	 * @return all columns met so far, in the order their keys were first met
+	 */
+	public List<RencodeColumn> columns() {
+		return Collections.unmodifiableList(columns);
+	}
+
+	/**
+	 * @return the column of the key, or <code>null</code> if the key was not
+	 *         met yet
+	 */
+	public RencodeColumn column(String name) {
+		for (RencodeColumn column : columns) {
+			if (column.name().equals(name)) {
+				return column;
+			}
+		}
+		return null;
+	}
+
+	private void readRecord(int row) throws IOException {
+		final int token = decoder.next();
+		if (Tokens.kind(token) != Tokens.Kind.DICT) {
+			throw new IOException("Record " + row + " is not a dict, token " + token);
+		}
+		final int count = Tokens.fixedCount(token);
+		// index of the column expected next, if keys keep their order
+		int expected = 0;
+		for (int i = 0; count < 0 ? decoder.peek() != CHR_TERM : i < count; ++i) {
+			final int index = readKey(row, expected);
+			readValue(columns.get(index), row);
+			expected = index + 1;
+		}
+		if (count < 0) {
+			decoder.next(); // consume CHR_TERM
+		}
+		for (RencodeColumn column : columns) {
+			column.endRow(row);
+		}
+	}
+
+	/**
+	 * @return index of the column of the key
+	 */
+	private int readKey(int row, int expected) throws IOException {
+		final int token = decoder.next();
+		final int length = decoder.stringLength(token);
+		if (length < 0) {
+			throw new IOException("Keys of record " + row + " must be strings, token " + token);
+		}
+		final int start = decoder.position();
+		decoder.skip(length);
+		if (expected < columns.size() && columns.get(expected).nameEquals(buffer, start, length)) {
+			return expected;
+		}
+		for (int i = 0; i < columns.size(); ++i) {
+			if (columns.get(i).nameEquals(buffer, start, length)) {
+				return i;
+			}
+		}
+		final byte[] name = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			name[i] = buffer.get(start + i);
+		}
+		final RencodeColumn column = new RencodeColumn(new String(name, UTF_8), batchSize);
+		column.fillNulls(row);
+		columns.add(column);
+		return columns.size() - 1;
+	}
+
+	private void readValue(RencodeColumn column, int row) throws IOException {
+		final int token = decoder.peek();
+		switch (Tokens.kind(token)) {
+		case FIXED_INT:
+		case INT:
+			column.putLong(row, decoder.readLong());
+			break;
+		case FLOAT:
+			column.putDouble(row, token == CHR_FLOAT32 ? decoder.readFloat() : decoder.readDouble());
+			break;
+		case TRUE:
+		case FALSE:
+			column.putLong(row, decoder.readBoolean() ? 1 : 0);
+			break;
+		case NONE:
+			decoder.next();
+			column.putNull(row);
+			break;
+		case STRING: {
+			decoder.next();
+			final int length = decoder.stringLength(token);
+			final int start = decoder.position();
+			decoder.skip(length);
+			column.putString(row, buffer, start, length);
+			break;
+		}
+		default:
+			throw new IOException("Column " + column.name() + " of record " + row + " holds a non-scalar value, token "
+					+ token);
+		}
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+
+/**
+ * Writes values of one type as rencoded values, e.g. a domain type as a dict.
+ * An encoder writes exactly one value, using the write methods of the stream;
+ * nested values may be written with
+ * {@link RencodeOutputStream#writeObject(Object)}.
+ *
+ * @param <T> the type of values encoded
+ * @see RencodeEncoders#with(Class, RencodeEncoder)
+ */
+public interface RencodeEncoder<T> {
+
+	void encode(RencodeOutputStream out, T value) throws IOException;
+}
@@ -0,0 +1,316 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable registry of the encoders used by
+ * {@link RencodeOutputStream#writeObject(Object)}, keyed by class.
+ * <p>
+ * The encoder of every class is resolved once and cached in a
+ * {@link ClassValue}, so writing a value costs one lookup instead of a chain
+ * of <code>instanceof</code> checks. Custom encoders, added with
+ * {@link #with(Class, RencodeEncoder)}, take precedence over the built-in
+ * ones: an encoder registered for the class itself wins, then one registered
+ * for its nearest superclass, then one registered for an interface it
+ * implements, in registration order.
+ * <p>
+ * The built-in encoders write booleans, characters, numbers, strings and
+ * other {@link CharSequence}s, <code>byte[]</code> and {@link ByteBuffer} as
+ * strings, collections and arrays as lists, maps as dicts, enums by name and
+ * {@link RawRencode} verbatim. Any other type fails with an
+ * {@link IllegalArgumentException} instead of being skipped.
+ * <p>
+ * Instances are thread-safe and meant to be shared.
+ */
+public final class RencodeEncoders {
+
+	/**
+	 * The built-in encoders only.
+	 */
+	public static final RencodeEncoders DEFAULT = new RencodeEncoders(new LinkedHashMap<Class<?>, RencodeEncoder<?>>());
+
+	private final Map<Class<?>, RencodeEncoder<?>> custom;
+
+	private final ClassValue<RencodeEncoder<Object>> encoders = new ClassValue<RencodeEncoder<Object>>() {
+		@Override
+		protected RencodeEncoder<Object> computeValue(Class<?> type) {
+			final RencodeEncoder<Object> encoder = findCustom(type);
+			return encoder != null ? encoder : builtin(type);
+		}
+	};
+
+	private RencodeEncoders(Map<Class<?>, RencodeEncoder<?>> custom) {
+		this.custom = custom;
+	}
+
+	/**
+	 * @return a registry with the encoder added, replacing any encoder
+	 *         registered for the same type
+	 */
+	public <T> RencodeEncoders with(Class<T> type, RencodeEncoder<? super T> encoder) {
+		if (type == null || encoder == null) {
+			throw new NullPointerException();
+		}
+		final Map<Class<?>, RencodeEncoder<?>> copy = new LinkedHashMap<>(custom);
+		copy.put(type, encoder);
+		return new RencodeEncoders(copy);
+	}
+
+	/**
+	 * @return the encoder used for values of the given class
+	 */
+	public RencodeEncoder<Object> encoderFor(Class<?> type) {
+		return encoders.get(type);
+	}
+
+	/**
+	 * @return <code>true</code> if values of the class are written by a custom
+	 *         encoder
+	 */
+	boolean isCustom(Class<?> type) {
+		return !custom.isEmpty() && !(encoders.get(type) instanceof Builtin);
+	}
+
+	@SuppressWarnings("unchecked")
+	private RencodeEncoder<Object> findCustom(Class<?> type) {
+		if (custom.isEmpty()) {
+			return null;
+		}
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			final RencodeEncoder<?> encoder = custom.get(c);
+			if (encoder != null) {
+				return (RencodeEncoder<Object>) encoder;
+			}
+		}
+		for (Entry<Class<?>, RencodeEncoder<?>> entry : custom.entrySet()) {
+			if (entry.getKey().isAssignableFrom(type)) {
+				return (RencodeEncoder<Object>) entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Marks the encoders {@link EncodedSize} can size without encoding.
+	 */
+	private static abstract class Builtin implements RencodeEncoder<Object> {
+	}
+
+	private static final RencodeEncoder<Object> BOOLEAN = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeBoolean((Boolean) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> CHARACTER = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeChar((Character) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> STRING = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeUTF((CharSequence) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> BINARY = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeBinary((byte[]) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> BYTE_BUFFER = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeBinary((ByteBuffer) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> FLOAT = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeFloat((Float) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> DOUBLE = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeDouble((Double) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> BIG_INTEGER = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeBigInteger((BigInteger) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> BIG_DECIMAL = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeBigDecimal((BigDecimal) value);
+		}
+	};
+
+	// Byte, Short, Integer, Long, atomics and any other Number
+	private static final RencodeEncoder<Object> INTEGER = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeLong(((Number) value).longValue());
+		}
+	};
+
+	private static final RencodeEncoder<Object> COLLECTION = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeCollection((Collection<?>) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> MAP = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeMap((Map<?, ?>) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> RAW = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeRaw((RawRencode) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> ENUM = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeUTF(((Enum<?>) value).name());
+		}
+	};
+
+	private static final RencodeEncoder<Object> INT_ARRAY = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeIntArray((int[]) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> LONG_ARRAY = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeLongArray((long[]) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> DOUBLE_ARRAY = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeDoubleArray((double[]) value);
+		}
+	};
+
+	private static final RencodeEncoder<Object> OBJECT_ARRAY = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			out.writeCollection(Arrays.asList((Object[]) value));
+		}
+	};
+
+	// boolean[], char[], short[] and float[], boxed element by element
+	private static final RencodeEncoder<Object> PRIMITIVE_ARRAY = new Builtin() {
+		@Override
+		public void encode(RencodeOutputStream out, Object value) throws IOException {
+			final int length = Array.getLength(value);
+			out.writeListStart(length);
+			for (int i = 0; i < length; ++i) {
+				out.writeObject(Array.get(value, i));
+			}
+			out.writeListEnd(length);
+		}
+	};
+
+	private static final class Unsupported extends Builtin {
+		private final Class<?> type;
+
+		Unsupported(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public void encode(RencodeOutputStream out, Object value) {
+			throw new IllegalArgumentException("No rencode encoder for " + type.getName());
+		}
+	}
+
+	/**
+	 * Resolves the built-in encoder, in the order writeObject() always
+	 * checked the types in.
+	 */
+	private static RencodeEncoder<Object> builtin(Class<?> type) {
+		if (type == Boolean.class) {
+			return BOOLEAN;
+		} else if (type == Character.class) {
+			return CHARACTER;
+		} else if (type == String.class) {
+			return STRING;
+		} else if (type == byte[].class) {
+			return BINARY;
+		} else if (Number.class.isAssignableFrom(type)) {
+			if (type == Float.class) {
+				return FLOAT;
+			} else if (type == Double.class) {
+				return DOUBLE;
+			} else if (BigInteger.class.isAssignableFrom(type)) {
+				return BIG_INTEGER;
+			} else if (BigDecimal.class.isAssignableFrom(type)) {
+				return BIG_DECIMAL;
+			}
+			return INTEGER;
+		} else if (Collection.class.isAssignableFrom(type)) {
+			return COLLECTION;
+		} else if (Map.class.isAssignableFrom(type)) {
+			return MAP;
+		} else if (CharSequence.class.isAssignableFrom(type)) {
+			return STRING;
+		} else if (ByteBuffer.class.isAssignableFrom(type)) {
+			return BYTE_BUFFER;
+		} else if (type == RawRencode.class) {
+			return RAW;
+		} else if (Enum.class.isAssignableFrom(type)) {
+			return ENUM;
+		} else if (type == int[].class) {
+			return INT_ARRAY;
+		} else if (type == long[].class) {
+			return LONG_ARRAY;
+		} else if (type == double[].class) {
+			return DOUBLE_ARRAY;
+		} else if (type.isArray()) {
+			return type.getComponentType().isPrimitive() ? PRIMITIVE_ARRAY : OBJECT_ARRAY;
+		}
+		return new Unsupported(type);
+	}
+
+	@Override
+	public String toString() {
+		return "RencodeEncoders" + custom.keySet();
+	}
+}
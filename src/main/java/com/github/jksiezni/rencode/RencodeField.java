@@ -0,0 +1,27 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Customizes how {@link RencodeBinder} maps a field to a dict entry.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface RencodeField {
+
+	/**
+	 * @return the dict key; defaults to the field name
+	 */
+	String value() default "";
+
+	/**
+	 * @return <code>true</code> to leave the field out of encoding and decoding
+	 */
+	boolean ignore() default false;
+}
@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import static com.github.jksiezni.rencode.RencodeFrameWriter.HEADER_LENGTH;
+
+/**
+ * Incrementally decodes frames written by {@link RencodeFrameWriter}.
+ * <p>
+ * Bytes are pushed in chunks of any size with {@link #feed(byte[], int, int)}
+ * or {@link #feed(ByteBuffer)}, for example as they arrive from a
+ * non-blocking channel. Complete messages are then taken with
+ * {@link #hasMessage()} and {@link #nextMessage()}; partial frames stay
+ * buffered until the rest arrives, so the caller never blocks. The length
+ * of every frame is checked as soon as its header is fed, so a peer cannot
+ * make the decoder buffer an oversized frame.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class RencodeFrameDecoder {
+
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 16 << 20;
+
+	private final boolean decodeAsString;
+	private final int maxFrameLength;
+	private RencodeLimits limits = RencodeLimits.DEFAULT;
+
+	private byte[] buf = new byte[4096];
+	private int pos;
+	private int lim;
+	// offset of the next frame header whose length is not checked yet
+	private int header;
+
+	public RencodeFrameDecoder() {
+		this(false, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * @param decodeAsString if <code>true</code>, strings are decoded as
+	 *          {@link String}, otherwise as <code>byte[]</code>
+	 * @param maxFrameLength frames with a longer payload are rejected before
+	 *          any of it is buffered
+	 */
+	public RencodeFrameDecoder(boolean decodeAsString, int maxFrameLength) {
+		this.decodeAsString = decodeAsString;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * Sets the bounds enforced while decoding a message. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		this.limits = limits;
+	}
+
+	public RencodeLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * @throws IOException if a frame header in the bytes declares a payload
+	 *           longer than the limit; the decoder is unusable afterwards
+	 */
+	public void feed(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			final int n = Math.min(len, acceptable());
+			ensureCapacity(n);
+			System.arraycopy(b, off, buf, lim, n);
+			off += n;
+			len -= n;
+			buffered(n);
+		}
+	}
+
+	/**
+	 * Consumes all remaining bytes of the buffer.
+	 *
+	 * @throws IOException if a frame header in the bytes declares a payload
+	 *           longer than the limit; the decoder is unusable afterwards
+	 */
+	public void feed(ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			final int n = Math.min(src.remaining(), acceptable());
+			ensureCapacity(n);
+			src.get(buf, lim, n);
+			buffered(n);
+		}
+	}
+
+	/**
+	 * @return number of bytes that can be buffered before the next frame
+	 *         header is complete and has to be checked
+	 */
+	private int acceptable() {
+		return lim < header ? header - lim : header + HEADER_LENGTH - lim;
+	}
+
+	private void buffered(int n) throws IOException {
+		lim += n;
+		if (lim == header + HEADER_LENGTH) {
+			header += HEADER_LENGTH + frameLength(header);
+		}
+	}
+
+	private void ensureCapacity(int len) {
+		if (buf.length - lim >= len) {
+			return;
+		}
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, lim - pos);
+			lim -= pos;
+			header -= pos;
+			pos = 0;
+		}
+		if (buf.length - lim < len) {
+			buf = Arrays.copyOf(buf, Math.max(2 * buf.length, lim + len));
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if a complete frame is buffered
+	 */
+	public boolean hasMessage() throws IOException {
+		if (lim - pos < HEADER_LENGTH) {
+			return false;
+		}
+		return lim - pos - HEADER_LENGTH >= frameLength(pos);
+	}
+
+	private int frameLength(int at) throws IOException {
+		final int length = (buf[at] & 0xFF) << 24 | (buf[at + 1] & 0xFF) << 16 | (buf[at + 2] & 0xFF) << 8
+				| (buf[at + 3] & 0xFF);
+		if (length < 0 || length > maxFrameLength) {
+			throw new IOException("Invalid frame length: " + (length & 0xFFFFFFFFL) + ", limit=" + maxFrameLength);
+		}
+		return length;
+	}
+
+	/**
+	 * Decodes the next complete message.
+	 *
+	 * @throws NoSuchElementException if no complete frame is buffered
+	 * @throws IOException if the frame does not hold exactly one rencoded value
+	 */
+	public Object nextMessage() throws IOException {
+		if (!hasMessage()) {
+			throw new NoSuchElementException("no complete frame");
+		}
+		final int length = frameLength(pos);
+		final int start = pos + HEADER_LENGTH;
+		pos = start + length;
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(ByteBuffer.wrap(buf, start, length), decodeAsString);
+		decoder.setLimits(limits);
+		final Object message = decoder.readObject();
+		if (decoder.hasRemaining()) {
+			throw new IOException("Frame has " + (pos - decoder.position()) + " trailing byte(s)");
+		}
+		if (pos == lim) {
+			header -= pos;
+			pos = lim = 0;
+		}
+		return message;
+	}
+
+	/**
+	 * @return number of bytes buffered but not yet decoded
+	 */
+	public int buffered() {
+		return lim - pos;
+	}
+}
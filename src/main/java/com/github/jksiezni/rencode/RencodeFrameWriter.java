@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes rencoded messages as length-prefixed frames.
+ * <p>
+ * Each frame is a 4-byte big-endian payload length followed by one rencoded
+ * value. Frames are collected in memory by {@link #writeFrame(Object)} and
+ * handed to the underlying stream in a single write by {@link #flush()}, so
+ * many small messages can be pipelined with one system call.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @see RencodeFrameDecoder
+ */
+public class RencodeFrameWriter implements Closeable, Flushable {
+
+	static final int HEADER_LENGTH = 4;
+
+	private final OutputStream out;
+	private final Batch batch = new Batch();
+	private final RencodeOutputStream encoder = new RencodeOutputStream(batch);
+	// placeholder patched by Batch.patchLength()
+	private final byte[] header = new byte[HEADER_LENGTH];
+	private int frames;
+
+	public RencodeFrameWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Encodes the message as a frame and queues it until the next
+	 * {@link #flush()}.
+	 */
+	public void writeFrame(Object message) throws IOException {
+		final int start = batch.size();
+		batch.write(header);
+		try {
+			encoder.writeObject(message);
+		} catch (IOException | RuntimeException e) {
+			batch.truncate(start);
+			throw e;
+		}
+		batch.patchLength(start);
+		++frames;
+	}
+
+	/**
+	 * @return number of frames written since the last flush
+	 */
+	public int pendingFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return number of bytes written since the last flush
+	 */
+	public int pendingBytes() {
+		return batch.size();
+	}
+
+	/**
+	 * Writes all queued frames to the underlying stream and flushes it.
+	 */
+	@Override
+	public void flush() throws IOException {
+		batch.writeTo(out);
+		batch.reset();
+		frames = 0;
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private static class Batch extends ByteArrayOutputStream {
+
+		Batch() {
+			super(512);
+		}
+
+		void patchLength(int start) {
+			final int length = count - start - HEADER_LENGTH;
+			buf[start] = (byte) (length >>> 24);
+			buf[start + 1] = (byte) (length >>> 16);
+			buf[start + 2] = (byte) (length >>> 8);
+			buf[start + 3] = (byte) length;
+		}
+
+		void truncate(int size) {
+			count = size;
+		}
+	}
+}
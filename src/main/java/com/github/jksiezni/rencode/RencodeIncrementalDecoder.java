@@ -0,0 +1,465 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * A push-style decoder for rencoded values arriving in arbitrary chunks, e.g.
+ * from a non-blocking channel served by a selector thread.
+ * <p>
+ * {@link #feed(byte[], int, int)} consumes every byte it is given and never
+ * blocks. The position inside nested lists and dicts, numbers and long
+ * length-prefixed strings is kept in an explicit state machine rather than on
+ * the call stack, so decoding resumes exactly where the previous chunk ended.
+ * Complete top-level values are queued and taken with {@link #hasValue()} and
+ * {@link #nextValue()}. Values are decoded to the same types as
+ * {@link RencodeInputStream#readObject()}.
+ * <p>
+ * Input is checked against {@link RencodeLimits} as it arrives; a long string
+ * is buffered as its bytes are fed rather than allocated up front.
+ * <p>
+ * After an {@link IOException} the decoder refuses further input until
+ * {@link #reset()} is called. Instances are not thread-safe.
+ */
+public class RencodeIncrementalDecoder {
+
+	// strings longer than this are buffered in growing chunks
+	private static final int CHUNK_SIZE = 64 << 10;
+
+	// stands for null in the output queue
+	private static final Object NONE = new Object();
+
+	private enum State {
+		TOKEN, NUMBER, LENGTH, STRING, DECIMAL, SCALE, TWOS_SIZE, TWOS
+	}
+
+	private final boolean decodeAsString;
+	private final ArrayDeque<Object> values = new ArrayDeque<>();
+
+	private State state = State.TOKEN;
+	private boolean failed;
+
+	private RencodeLimits limits = RencodeLimits.DEFAULT;
+	// bytes consumed since the last reset, and the position beyond which the
+	// current top-level value exceeds limits.getMaxTotalBytes()
+	private long position;
+	private long positionLimit = Long.MAX_VALUE;
+
+	// NUMBER: the token being read, bytes still needed and bytes read so far
+	private int numberToken;
+	private int numberNeeded;
+	private long number;
+
+	// DECIMAL: the ASCII digits of CHR_INT read so far
+	private final byte[] digits = new byte[MAX_INT_LENGTH];
+	private int digitCount;
+
+	// SCALE, TWOS_SIZE and TWOS: the scale of CHR_EXT_BIGDEC, read as an
+	// integer token, then the two's-complement bytes of a big number
+	private boolean bigDecimal;
+	private boolean scalePending;
+	private long scale;
+	private byte[] twos;
+	private int twosOffset;
+
+	// LENGTH and STRING: decimal length read so far, then the string bytes
+	private int length;
+	private byte[] string;
+	private int stringLength;
+	private int stringOffset;
+
+	// open containers: the container, elements left (-1 when terminated by
+	// CHR_TERM), elements added, and the pending key of a dict entry
+	private int depth;
+	private Object[] containers = new Object[8];
+	private int[] remaining = new int[8];
+	private int[] sizes = new int[8];
+	private Object[] keys = new Object[8];
+	private boolean[] hasKey = new boolean[8];
+
+	public RencodeIncrementalDecoder() {
+		this(false);
+	}
+
+	/**
+	 * @param decodeAsString if <code>true</code>, strings are decoded as
+	 *          {@link String}, otherwise as <code>byte[]</code>
+	 */
+	public RencodeIncrementalDecoder(boolean decodeAsString) {
+		this.decodeAsString = decodeAsString;
+	}
+
+	/**
+	 * Sets the bounds enforced while decoding. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		this.limits = limits;
+	}
+
+	public RencodeLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * @return number of bytes consumed since the decoder was created or reset
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Consumes all remaining bytes of the buffer.
+	 */
+	public void feed(ByteBuffer src) throws IOException {
+		if (src.hasArray()) {
+			final int len = src.remaining();
+			feed(src.array(), src.arrayOffset() + src.position(), len);
+			src.position(src.position() + len);
+		} else {
+			final byte[] chunk = new byte[Math.min(src.remaining(), 8192)];
+			while (src.hasRemaining()) {
+				final int len = Math.min(chunk.length, src.remaining());
+				src.get(chunk, 0, len);
+				feed(chunk, 0, len);
+			}
+		}
+	}
+
+	public void feed(byte[] b, int off, int len) throws IOException {
+		if (failed) {
+			throw new IOException("Decoder failed earlier; reset() it first");
+		}
+		try {
+			final int end = off + len;
+			while (off < end) {
+				if (isIdle()) {
+					positionLimit = limits.getMaxTotalBytes() > Long.MAX_VALUE - position ? Long.MAX_VALUE
+							: position + limits.getMaxTotalBytes();
+				}
+				final int n = state == State.STRING ? Math.min(end - off, stringLength - stringOffset) : 1;
+				if ((position += n) > positionLimit) {
+					throw new RencodeLimitException("Value exceeds the limit of " + limits.getMaxTotalBytes() + " bytes",
+							position);
+				}
+				switch (state) {
+				case TOKEN:
+					token(b[off++] & 0xFF);
+					break;
+				case NUMBER:
+					number = number << 8 | (b[off++] & 0xFF);
+					if (--numberNeeded == 0) {
+						state = State.TOKEN;
+						completeNumber();
+					}
+					break;
+				case LENGTH:
+					final int c = b[off++] & 0xFF;
+					if (c == LENGTH_DELIMITER) {
+						startString(length);
+					} else {
+						length = Tokens.lengthDigit(length, c);
+					}
+					break;
+				case DECIMAL:
+					final int d = b[off++] & 0xFF;
+					if (d == CHR_TERM) {
+						state = State.TOKEN;
+						value(BigNumbers.parseDecimal(digits, digitCount));
+					} else {
+						Tokens.decimalDigit(digitCount);
+						digits[digitCount++] = (byte) d;
+					}
+					break;
+				case SCALE:
+					scale(b[off++] & 0xFF);
+					break;
+				case TWOS_SIZE:
+					twos = new byte[b[off++] & 0xFF];
+					twosOffset = 0;
+					state = State.TWOS;
+					if (twos.length == 0) {
+						completeTwos();
+					}
+					break;
+				case TWOS:
+					twos[twosOffset++] = b[off++];
+					if (twosOffset == twos.length) {
+						completeTwos();
+					}
+					break;
+				case STRING:
+					if (stringOffset + n > string.length) {
+						string = Arrays.copyOf(string, (int) Math.min(Math.max(2L * string.length, stringOffset + n), stringLength));
+					}
+					System.arraycopy(b, off, string, stringOffset, n);
+					off += n;
+					stringOffset += n;
+					if (stringOffset == stringLength) {
+						completeString();
+					}
+					break;
+				}
+			}
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	private void token(int token) throws IOException {
+		switch (Tokens.kind(token)) {
+		case FIXED_INT:
+			value((byte) Tokens.fixedInt(token));
+			break;
+		case INT:
+		case FLOAT:
+			startNumber(token, Tokens.size(token));
+			break;
+		case DECIMAL:
+			digitCount = 0;
+			state = State.DECIMAL;
+			break;
+		case BIG_INTEGER:
+			bigDecimal = false;
+			state = State.TWOS_SIZE;
+			break;
+		case BIG_DECIMAL:
+			bigDecimal = true;
+			state = State.SCALE;
+			break;
+		case STRING: {
+			final int size = Tokens.fixedCount(token);
+			if (size >= 0) {
+				startString(size);
+			} else {
+				length = token - '0';
+				state = State.LENGTH;
+			}
+			break;
+		}
+		case LIST: {
+			final int count = Tokens.fixedCount(token);
+			push(new ArrayList<>(count < 0 ? 2*LIST_FIXED_COUNT : count), count);
+			break;
+		}
+		case DICT: {
+			final int count = Tokens.fixedCount(token);
+			push(count < 0 ? new HashMap<>(2*DICT_FIXED_COUNT) : new HashMap<>(count, 1), count < 0 ? -1 : 2 * count);
+			break;
+		}
+		case TRUE:
+			value(Boolean.TRUE);
+			break;
+		case FALSE:
+			value(Boolean.FALSE);
+			break;
+		case NONE:
+			value(null);
+			break;
+		case TERM:
+			if (depth == 0 || remaining[depth - 1] >= 0) {
+				throw new IOException("Unexpected CHR_TERM");
+			}
+			value(pop());
+			break;
+		default:
+			throw new IOException("feed(): null decoder for token " + token);
+		}
+	}
+
+	private void startNumber(int token, int size) {
+		numberToken = token;
+		numberNeeded = size;
+		number = 0;
+		state = State.NUMBER;
+	}
+
+	/**
+	 * Reads the integer token holding the scale of CHR_EXT_BIGDEC.
+	 */
+	private void scale(int token) throws IOException {
+		final Tokens.Kind kind = Tokens.kind(token);
+		if (kind == Tokens.Kind.FIXED_INT) {
+			scale = Tokens.fixedInt(token);
+			state = State.TWOS_SIZE;
+		} else if (kind == Tokens.Kind.INT) {
+			scalePending = true;
+			startNumber(token, Tokens.size(token));
+		} else {
+			throw new IOException("Unable to decode the scale of a big decimal, token " + token);
+		}
+	}
+
+	private void completeTwos() throws IOException {
+		final BigInteger unscaled = BigNumbers.fromTwosComplement(twos);
+		twos = null;
+		state = State.TOKEN;
+		value(bigDecimal ? BigNumbers.toBigDecimal(unscaled, scale) : unscaled);
+	}
+
+	private void completeNumber() throws IOException {
+		if (scalePending) {
+			scalePending = false;
+			scale = numberToken == CHR_INT1 ? (byte) number
+					: numberToken == CHR_INT2 ? (short) number : numberToken == CHR_INT4 ? (int) number : number;
+			state = State.TWOS_SIZE;
+			return;
+		}
+		switch (numberToken) {
+		case CHR_INT1:
+			value((byte) number);
+			break;
+		case CHR_INT2:
+			value((short) number);
+			break;
+		case CHR_INT4:
+			value((int) number);
+			break;
+		case CHR_INT8:
+			value(number);
+			break;
+		case CHR_FLOAT32:
+			value(Float.intBitsToFloat((int) number));
+			break;
+		default:
+			value(Double.longBitsToDouble(number));
+		}
+	}
+
+	/**
+	 * @param size length of the string, embedded in the token or prefixed
+	 */
+	private void startString(int size) throws IOException {
+		limits.checkStringLength(size, position);
+		string = new byte[Math.min(size, CHUNK_SIZE)];
+		stringLength = size;
+		stringOffset = 0;
+		state = State.STRING;
+		if (size == 0) {
+			completeString();
+		}
+	}
+
+	private void completeString() throws IOException {
+		final byte[] bytes = string;
+		string = null;
+		state = State.TOKEN;
+		value(decodeAsString || isKeyExpected() ? new String(bytes, UTF_8) : bytes);
+	}
+
+	private boolean isKeyExpected() {
+		return depth > 0 && containers[depth - 1] instanceof Map && !hasKey[depth - 1];
+	}
+
+	private void push(Object container, int count) throws IOException {
+		limits.checkDepth(depth + 1, position);
+		if (count == 0) {
+			value(container);
+			return;
+		}
+		if (depth == containers.length) {
+			containers = Arrays.copyOf(containers, 2 * depth);
+			remaining = Arrays.copyOf(remaining, 2 * depth);
+			sizes = Arrays.copyOf(sizes, 2 * depth);
+			keys = Arrays.copyOf(keys, 2 * depth);
+			hasKey = Arrays.copyOf(hasKey, 2 * depth);
+		}
+		containers[depth] = container;
+		remaining[depth] = count;
+		sizes[depth] = 0;
+		hasKey[depth] = false;
+		++depth;
+	}
+
+	private Object pop() {
+		--depth;
+		final Object container = containers[depth];
+		containers[depth] = null;
+		keys[depth] = null;
+		return container;
+	}
+
+	/**
+	 * Adds a complete value to the innermost open container, closing every
+	 * container it completes, or queues it at the top level.
+	 */
+	@SuppressWarnings("unchecked")
+	private void value(Object value) throws IOException {
+		while (depth > 0) {
+			final int top = depth - 1;
+			final Object container = containers[top];
+			if (container instanceof List || !hasKey[top]) {
+				limits.checkElements(++sizes[top], position);
+			}
+			if (container instanceof List) {
+				((List<Object>) container).add(value);
+			} else if (!hasKey[top]) {
+				keys[top] = value instanceof Number ? (Object) ((Number) value).intValue() : value;
+				hasKey[top] = true;
+			} else {
+				((Map<Object, Object>) container).put(keys[top], value);
+				keys[top] = null;
+				hasKey[top] = false;
+			}
+			if (remaining[top] < 0 || --remaining[top] > 0) {
+				return;
+			}
+			value = pop();
+		}
+		values.add(value == null ? NONE : value);
+	}
+
+	public boolean hasValue() {
+		return !values.isEmpty();
+	}
+
+	/**
+	 * @return the next complete top-level value
+	 * @throws NoSuchElementException if there is none
+	 */
+	public Object nextValue() {
+		final Object value = values.remove();
+		return value == NONE ? null : value;
+	}
+
+	/**
+	 * @return <code>true</code> if no value is partially decoded, i.e. the
+	 *         input so far ended on a value boundary
+	 */
+	public boolean isIdle() {
+		return state == State.TOKEN && depth == 0;
+	}
+
+	/**
+	 * Drops all partially decoded and queued values.
+	 */
+	public void reset() {
+		values.clear();
+		while (depth > 0) {
+			pop();
+		}
+		state = State.TOKEN;
+		string = null;
+		twos = null;
+		scalePending = false;
+		failed = false;
+		position = 0;
+	}
+}
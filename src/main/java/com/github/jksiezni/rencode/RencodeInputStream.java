@@ -4,11 +4,15 @@
 package com.github.jksiezni.rencode;
 
 import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.PushbackInputStream;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,199 +24,311 @@ import static com.github.jksiezni.rencode.Rencode.*;
  * 
  */
 public class RencodeInputStream extends PushbackInputStream implements ObjectInput {
-	// attempt at resolving runaway calls of readObject() and this decoder
-	private static final int MAX_NESTED_CALLS = 100;
-	private int nestedCallCount = 0;
-	
-	private interface Decoder<T> {
-		T decode(int token) throws IOException;
-	}
-
-	private final Decoder<?>[] decoders = new Decoder[256];
+	// strings longer than this are read in growing chunks
+	private static final int CHUNK_SIZE = 64 << 10;
+
+	private final boolean decodeAsString;
+
+	private RencodeLimits limits = RencodeLimits.DEFAULT;
+	// number of lists and dicts being decoded
+	private int depth;
+	// bytes consumed so far, and the position beyond which the current
+	// top-level value exceeds limits.getMaxTotalBytes()
+	private long position;
+	private long positionLimit = Long.MAX_VALUE;
+	// whether a public read of a top-level value is in progress
+	private boolean topLevel;
+
+	// opt-in reuse of containers and string buffers, see setPooling()
+	private static final int MAX_POOLED_CONTAINERS = 1024;
+	private boolean pooling;
+	private final ArrayDeque<ArrayList<Object>> listPool = new ArrayDeque<>();
+	private final ArrayDeque<HashMap<Object, Object>> mapPool = new ArrayDeque<>();
+	private byte[] stringBuffer;
+
+	private KeyCache keyCache;
+	private byte[] keyBuffer;
+
+	// instrumentation, see setListener()
+	private RencodeListener listener;
 	
 
 	public RencodeInputStream(InputStream in) {
 		this(in, false);
 	}
 	
-	public RencodeInputStream(InputStream in, final boolean decodeAsString) {
+	public RencodeInputStream(InputStream in, boolean decodeAsString) {
 		super(in);
-		decoders[CHR_TRUE] = new Decoder<Boolean>() {
-			@Override
-			public Boolean decode(int token) throws IOException {
-				return Boolean.TRUE;
-			}
-		};
-		decoders[CHR_FALSE] = new Decoder<Boolean>() {
-			@Override
-			public Boolean decode(int token) throws IOException {
-				return Boolean.FALSE;
-			}
-		};
-		decoders[CHR_NONE] = new Decoder<Object>() {
-			@Override
-			public Object decode(int token) throws IOException {
-				return null;
-			}
-		};
-		decoders['0'] = decoders['1'] = decoders['2'] = decoders['3'] = decoders['4'] = decoders['5'] = decoders['6'] = decoders['7'] = decoders['8'] = decoders['9'] = new Decoder<Object>() {
-			@Override
-			public Object decode(int token) throws IOException {
-				final int length = fetchLength(token);
-				if(decodeAsString) {
-					return fetchString(length);
-				} else {
-					final byte[] bytes = new byte[length];
-					readFully(bytes);
-					return bytes;
-				}
-			}
-		};
-		for (int i = STR_FIXED_START; i < STR_FIXED_START+STR_FIXED_COUNT; ++i) {
-			decoders[i] = new Decoder<Object>() {
-				@Override
-				public Object decode(int token) throws IOException {
-					final int length = token - STR_FIXED_START;
-					if(decodeAsString) {
-						return fetchString(length);
-					} else {
-						final byte[] bytes = new byte[length];
-						readFully(bytes);
-						return bytes;
-					}
-				}
-			};
+		this.decodeAsString = decodeAsString;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		final int value = super.read();
+		if(value < 0) {
+			throw new EOFException("end of stream");
 		}
-		for (int i = INT_POS_FIXED_START; i < INT_POS_FIXED_COUNT; ++i) {
-			decoders[i] = new Decoder<Byte>() {
-				@Override
-				public Byte decode(int token) throws IOException {
-					return (byte) token;
-				}
-			};
+		if (++position > positionLimit) {
+			throw totalBytesExceeded();
 		}
-		for (int i = INT_NEG_FIXED_START; i < INT_NEG_FIXED_START + INT_NEG_FIXED_COUNT; ++i) {
-			decoders[i] = new Decoder<Byte>() {
-				@Override
-				public Byte decode(int token) throws IOException {
-					return (byte) (INT_NEG_FIXED_START - 1 - token);
-				}
-			};
+		return value;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int n = super.read(b, off, len);
+		if (n > 0 && (position += n) > positionLimit) {
+			throw totalBytesExceeded();
 		}
-		decoders[CHR_INT1] = new Decoder<Byte>() {
-			@Override
-			public Byte decode(int token) throws IOException {
-				return (byte) read();
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		final long skipped = super.skip(n);
+		if ((position += skipped) > positionLimit) {
+			throw totalBytesExceeded();
+		}
+		return skipped;
+	}
+
+	@Override
+	public void unread(int b) throws IOException {
+		super.unread(b);
+		--position;
+	}
+
+	private RencodeLimitException totalBytesExceeded() {
+		return new RencodeLimitException("Value exceeds the limit of " + limits.getMaxTotalBytes() + " bytes", position);
+	}
+
+	/**
+	 * @return number of bytes consumed from the underlying stream
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Sets the bounds enforced while decoding. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		this.limits = limits;
+	}
+
+	public RencodeLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Starts a read by a public method. Unless it is nested in another read,
+	 * the read decodes a top-level value, bounded by
+	 * {@link RencodeLimits#getMaxTotalBytes()}.
+	 *
+	 * @return <code>true</code> if the read is top-level, to be passed to
+	 *         {@link #endValue(boolean)}
+	 */
+	boolean beginValue() {
+		if (depth > 0 || topLevel) {
+			return false;
+		}
+		final long maxTotalBytes = limits.getMaxTotalBytes();
+		positionLimit = position > Long.MAX_VALUE - maxTotalBytes ? Long.MAX_VALUE : position + maxTotalBytes;
+		topLevel = true;
+		return true;
+	}
+
+	void endValue(boolean top) {
+		if (top) {
+			positionLimit = Long.MAX_VALUE;
+			topLevel = false;
+		}
+	}
+
+	@Override
+	public Object readObject() throws IOException {
+		if (depth > 0) {
+			return decode();
+		}
+		final long start = listener != null ? System.nanoTime() : 0;
+		final boolean top = beginValue();
+		try {
+			return decode();
+		} finally {
+			endValue(top);
+			if (listener != null) {
+				listener.onTopLevel(System.nanoTime() - start);
 			}
-		};
-		decoders[CHR_INT2] = new Decoder<Short>() {
-			@Override
-			public Short decode(int token) throws IOException {
+		}
+	}
+
+	/**
+	 * Decodes the next value. Tokens are dispatched on their
+	 * {@link Tokens.Kind}, so no per-stream decoder table is needed.
+	 */
+	private Object decode() throws IOException {
+		final int token = read();
+		if (listener != null) {
+			listener.onValue(token);
+		}
+		switch (Tokens.kind(token)) {
+		case FIXED_INT:
+			return (byte) Tokens.fixedInt(token);
+		case INT:
+			switch (token) {
+			case CHR_INT1:
+				return (byte) read();
+			case CHR_INT2:
 				return (short) (read() << 8 | read());
-			}
-		};
-		decoders[CHR_INT4] = new Decoder<Integer>() {
-			@Override
-			public Integer decode(int token) throws IOException {
+			case CHR_INT4:
 				return fetchInt();
-			}
-		};
-		decoders[CHR_INT8] = new Decoder<Long>() {
-			@Override
-			public Long decode(int token) throws IOException {
+			default:
 				return fetchLong();
 			}
-		};
-		decoders[CHR_FLOAT32] = new Decoder<Float>() {
-			@Override
-			public Float decode(int token) throws IOException {
+		case FLOAT:
+			if (token == CHR_FLOAT32) {
 				return Float.intBitsToFloat(fetchInt());
 			}
-		};
-		decoders[CHR_FLOAT64] = new Decoder<Double>() {
-			@Override
-			public Double decode(int token) throws IOException {
-				return Double.longBitsToDouble(fetchLong());
-			}
-		};
-		for(int i = LIST_FIXED_START; i < LIST_FIXED_START+LIST_FIXED_COUNT; ++i) {
-  		decoders[i] = new Decoder<List<?>>() {
-  			@Override
-  			public List<?> decode(int token) throws IOException {
-  				int count = token - LIST_FIXED_START;
-  				final List<Object> list = new ArrayList<>(count);
-				// attempt at resolving runaway calls of readObject() and this decoder
-                    		if (nestedCallCount >= MAX_NESTED_CALLS) {
-                        		//throw new StackOverflowError("Maximum nested decode calls exceeded: " + MAX_NESTED_CALLS);
-					return list;
-                    		}
-                    		nestedCallCount++;
-				try {
-					while(count-- > 0) {
-	  					list.add(readObject());
-	  				}
-				} finally {
-                        		nestedCallCount--;
-                    		}
-  				return list;
-  			}
-  		};
-		}
-		decoders[CHR_LIST] = new Decoder<List<?>>() {
-			@Override
-			public List<?> decode(int token) throws IOException {
-				final List<Object> list = new ArrayList<>(2*LIST_FIXED_COUNT);
-				do {
+			return Double.longBitsToDouble(fetchLong());
+		case DECIMAL:
+			return fetchDecimal();
+		case BIG_INTEGER:
+			return fetchTwosComplement();
+		case BIG_DECIMAL: {
+			final long scale = readNumber();
+			return BigNumbers.toBigDecimal(fetchTwosComplement(), scale);
+		}
+		case STRING:
+			return fetchStringOrBytes(fetchLength(token));
+		case LIST:
+			return fetchList(Tokens.fixedCount(token));
+		case DICT:
+			return fetchMap(Tokens.fixedCount(token));
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case NONE:
+			return null;
+		default:
+			throw new IOException("readObject(): null decoder for token " + token);
+		}
+	}
+
+	/**
+	 * Enters a list or dict; every call is paired with {@link #exit()}.
+	 */
+	void enter() throws RencodeLimitException {
+		limits.checkDepth(depth + 1, position);
+		++depth;
+	}
+
+	void exit() {
+		--depth;
+	}
+
+	/**
+	 * @param count number of elements, or -1 for a CHR_TERM terminated list
+	 */
+	private List<Object> fetchList(int count) throws IOException {
+		enter();
+		try {
+			final List<Object> list;
+			if (count >= 0) {
+				limits.checkElements(count, position);
+				list = newList(count);
+				while(count-- > 0) {
 					list.add(readObject());
-				} while(peek() != CHR_TERM);
-				read(); // consume EOF character
-				return list;
-			}
-		};
-		for(int i = DICT_FIXED_START; i < DICT_FIXED_START+DICT_FIXED_COUNT; ++i) {
-			decoders[i] = new Decoder<Map<?,?>>() {
-				@Override
-				public Map<?,?> decode(int token) throws IOException {
-					int count = token - DICT_FIXED_START;
-					final Map<Object, Object> map = new HashMap<>(count, 1);
-					while(count-- > 0) {
-						try {
-							map.put(readKey(), readObject());
-						}
-						catch (IOException iox)
-						{}
+				}
+			} else {
+				final int maxElements = limits.getMaxContainerElements();
+				list = newList(2*LIST_FIXED_COUNT);
+				while(peek() != CHR_TERM) {
+					if (list.size() == maxElements) {
+						limits.checkElements(maxElements + 1L, position);
 					}
-					return map;
+					list.add(readObject());
 				}
-			};
+				read(); // consume EOF character
+			}
+			if (listener != null) {
+				listener.onContainer(false, list.size(), depth);
+			}
+			return list;
+		} finally {
+			--depth;
 		}
-		decoders[CHR_DICT] = new Decoder<Map<?,?>>() {
-			@Override
-			public Map<?,?> decode(int token) throws IOException {
-				final Map<Object, Object> map = new HashMap<>(2*DICT_FIXED_COUNT);
-				do {
+	}
+
+	/**
+	 * @param count number of entries, or -1 for a CHR_TERM terminated dict
+	 */
+	private Map<Object, Object> fetchMap(int count) throws IOException {
+		enter();
+		try {
+			final Map<Object, Object> map;
+			int size = 0;
+			if (count >= 0) {
+				limits.checkElements(count, position);
+				map = newMap(count, 1);
+				for (; size < count; ++size) {
+					map.put(readKey(), readObject());
+				}
+			} else {
+				final int maxElements = limits.getMaxContainerElements();
+				map = newMap(2*DICT_FIXED_COUNT, 0.75f);
+				for (; peek() != CHR_TERM; ++size) {
+					if (size == maxElements) {
+						limits.checkElements(maxElements + 1L, position);
+					}
 					map.put(readKey(), readObject());
-				} while(peek() != CHR_TERM);
+				}
 				read(); // consume EOF character
-				return map;
 			}
-		};
+			if (listener != null) {
+				listener.onContainer(true, size, depth);
+			}
+			return map;
+		} finally {
+			--depth;
+		}
 	}
-	
-	@Override
-	public int read() throws IOException {
-		final int value = super.read();
-		if(value < 0) {
-			throw new EOFException("end of stream");
+
+	private Object fetchStringOrBytes(int length) throws IOException {
+		if (listener != null) {
+			listener.onString(length);
 		}
-		return value;
+		if(decodeAsString) {
+			return fetchString(length);
+		}
+		return fetchBytes(length);
 	}
 
-	@Override
-	public Object readObject() throws IOException {
-		final int token = read();
-		if (decoders[token]==null) throw new IOException("readObject(): null decoder for token "+token);
-		return decoders[token].decode(token);
+	/**
+	 * Reads a string of the given, already validated length. Long strings are
+	 * read into a buffer that grows as the bytes actually arrive, so a forged
+	 * length costs no more memory than the input that backs it.
+	 */
+	private byte[] fetchBytes(int length) throws IOException {
+		if (length <= CHUNK_SIZE) {
+			final byte[] bytes = new byte[length];
+			readFully(bytes);
+			return bytes;
+		}
+		byte[] bytes = new byte[CHUNK_SIZE];
+		int total = 0;
+		while (total < length) {
+			if (total == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(2L * total, length));
+			}
+			readFully(bytes, total, bytes.length - total);
+			total = bytes.length;
+		}
+		return bytes;
 	}
 
 	@Override
@@ -243,17 +359,18 @@ public class RencodeInputStream extends PushbackInputStream implements ObjectInp
 	}
 
 	private long readNumber() throws IOException {
-		final int token = read();
-		if (0 <= token && token < INT_POS_FIXED_COUNT) {
-			return token;
-		} else if (INT_NEG_FIXED_START <= token && token < INT_NEG_FIXED_START + INT_NEG_FIXED_COUNT) {
-			return INT_NEG_FIXED_START - 1 - token;
+		return readNumber(read());
+	}
+
+	private long readNumber(final int token) throws IOException {
+		if (Tokens.kind(token) == Tokens.Kind.FIXED_INT) {
+			return Tokens.fixedInt(token);
 		}
 		switch (token) {
 		case CHR_INT1:
-			return read();
+			return (byte) read();
 		case CHR_INT2:
-			return read() << 8 | read();
+			return (short) (read() << 8 | read());
 		case CHR_INT4:
 			return fetchInt();
 		case CHR_INT8:
@@ -270,7 +387,7 @@ public class RencodeInputStream extends PushbackInputStream implements ObjectInp
 
 	@Override
 	public int readUnsignedByte() throws IOException {
-		return (int) readNumber();
+		return (int) readNumber() & 0xFF;
 	}
 
 	@Override
@@ -280,7 +397,7 @@ public class RencodeInputStream extends PushbackInputStream implements ObjectInp
 
 	@Override
 	public int readUnsignedShort() throws IOException {
-		return (int) readNumber();
+		return (int) readNumber() & 0xFFFF;
 	}
 
 	@Override
@@ -324,57 +441,249 @@ public class RencodeInputStream extends PushbackInputStream implements ObjectInp
 
 	@Override
 	public String readUTF() throws IOException {
-		final int token = read();
-		if (STR_FIXED_START <= token && token < STR_FIXED_START + STR_FIXED_COUNT) {
-			return fetchString(token - STR_FIXED_START);
-		} else if ('0' <= token && token <= '9') {
-			final int size = fetchLength(token);
-			return fetchString(size);
+		final boolean top = beginValue();
+		try {
+			final int token = read();
+			if (Tokens.kind(token) == Tokens.Kind.STRING) {
+				return fetchString(fetchLength(token));
+			}
+			throw new IOException("Unable to read a String from stream.");
+		} finally {
+			endValue(top);
 		}
-		throw new IOException("Unable to read a String from stream.");
 	}
 
 	public List<Object> readList() throws IOException {
-		final int token = read();
-		if (LIST_FIXED_START <= token && token < LIST_FIXED_START+LIST_FIXED_COUNT) {
-			int count = token - LIST_FIXED_START;
-			final List<Object> list = new ArrayList<>(count);
-			while(count-- > 0) {
-				list.add(readObject());
+		final boolean top = beginValue();
+		try {
+			final int token = read();
+			if (Tokens.kind(token) == Tokens.Kind.LIST) {
+				return fetchList(Tokens.fixedCount(token));
 			}
-			return list;
-		} else if (token == CHR_LIST) {
-			final List<Object> list = new ArrayList<>(2*LIST_FIXED_COUNT);
-			do {
-				list.add(readObject());
-			} while(peek() != CHR_TERM);
-			read(); // consume EOF character
-			return list;
+			throw new IOException("Unable to read a List from stream.");
+		} finally {
+			endValue(top);
 		}
-		throw new IOException("Unable to read a List from stream.");
 	}
 
 	public Map<Object, Object> readMap() throws IOException {
-		final int token = read();
-		if (DICT_FIXED_START <= token && token < DICT_FIXED_START+DICT_FIXED_COUNT) {
-			int count = token - DICT_FIXED_START;
-			final Map<Object, Object> map = new HashMap<>(count, 1);
-			while(count-- > 0) {
-				map.put(readKey(), readObject());
+		final boolean top = beginValue();
+		try {
+			final int token = read();
+			if (Tokens.kind(token) == Tokens.Kind.DICT) {
+				return fetchMap(Tokens.fixedCount(token));
 			}
-			return map;
-		} else if (token == CHR_DICT) {
-			final Map<Object, Object> map = new HashMap<>(2*DICT_FIXED_COUNT);
-			do {
-				map.put(readKey(), readObject());
-			} while(peek() != CHR_TERM);
+			throw new IOException("Unable to read a Map from stream.");
+		} finally {
+			endValue(top);
+		}
+	}
+
+	/**
+	 * Reads a list of integers into an array, without boxing the elements.
+	 *
+	 * @throws IOException if an element does not fit in an <code>int</code>
+	 */
+	public int[] readIntArray() throws IOException {
+		final boolean top = beginValue();
+		try {
+			return fetchIntArray();
+		} finally {
+			endValue(top);
+		}
+	}
+
+	private int[] fetchIntArray() throws IOException {
+		int count = readListStart();
+		int[] values = new int[count < 0 ? LIST_FIXED_COUNT : count];
+		int size = 0;
+		while (count < 0 ? peek() != CHR_TERM : size < count) {
+			if (size == values.length) {
+				limits.checkElements(size + 1L, position);
+				values = Arrays.copyOf(values, (int) Math.min(2L * size, limits.getMaxContainerElements()));
+			}
+			final long value = readNumber();
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new IOException("Element " + size + " out of int range: " + value);
+			}
+			values[size++] = (int) value;
+		}
+		if (count < 0) {
 			read(); // consume EOF character
-			return map;
+			values = Arrays.copyOf(values, size);
+		}
+		return values;
+	}
+
+	/**
+	 * Reads a list of integers into an array, without boxing the elements.
+	 */
+	public long[] readLongArray() throws IOException {
+		final boolean top = beginValue();
+		try {
+			return fetchLongArray();
+		} finally {
+			endValue(top);
+		}
+	}
+
+	private long[] fetchLongArray() throws IOException {
+		int count = readListStart();
+		long[] values = new long[count < 0 ? LIST_FIXED_COUNT : count];
+		int size = 0;
+		while (count < 0 ? peek() != CHR_TERM : size < count) {
+			if (size == values.length) {
+				limits.checkElements(size + 1L, position);
+				values = Arrays.copyOf(values, (int) Math.min(2L * size, limits.getMaxContainerElements()));
+			}
+			values[size++] = readNumber();
+		}
+		if (count < 0) {
+			read(); // consume EOF character
+			values = Arrays.copyOf(values, size);
+		}
+		return values;
+	}
+
+	/**
+	 * Reads a list of numbers into an array, without boxing the elements. Both
+	 * floats and integers are accepted.
+	 */
+	public double[] readDoubleArray() throws IOException {
+		final boolean top = beginValue();
+		try {
+			return fetchDoubleArray();
+		} finally {
+			endValue(top);
+		}
+	}
+
+	private double[] fetchDoubleArray() throws IOException {
+		int count = readListStart();
+		double[] values = new double[count < 0 ? LIST_FIXED_COUNT : count];
+		int size = 0;
+		while (count < 0 ? peek() != CHR_TERM : size < count) {
+			if (size == values.length) {
+				limits.checkElements(size + 1L, position);
+				values = Arrays.copyOf(values, (int) Math.min(2L * size, limits.getMaxContainerElements()));
+			}
+			final int token = read();
+			if (token == CHR_FLOAT64) {
+				values[size++] = Double.longBitsToDouble(fetchLong());
+			} else if (token == CHR_FLOAT32) {
+				values[size++] = Float.intBitsToFloat(fetchInt());
+			} else {
+				values[size++] = readNumber(token);
+			}
+		}
+		if (count < 0) {
+			read(); // consume EOF character
+			values = Arrays.copyOf(values, size);
+		}
+		return values;
+	}
+
+	/**
+	 * @return number of elements, or -1 for a CHR_TERM terminated list
+	 */
+	private int readListStart() throws IOException {
+		final int token = read();
+		if (Tokens.kind(token) == Tokens.Kind.LIST) {
+			return Tokens.fixedCount(token);
 		}
 		throw new IOException("Unable to read a List from stream.");
 	}
 
-	private Object readKey() throws IOException {
+	/**
+	 * Skips the next value, including all elements of a list or dict, without
+	 * decoding it. Only tokens and length prefixes are read.
+	 */
+	public void skipValue() throws IOException {
+		final boolean top = beginValue();
+		try {
+			skipValue(read(), depth);
+		} finally {
+			endValue(top);
+		}
+	}
+
+	private void skipValue(int token, int nested) throws IOException {
+		switch (Tokens.kind(token)) {
+		case STRING:
+			skipFully(fetchLength(token));
+			break;
+		case LIST:
+		case DICT: {
+			limits.checkDepth(nested + 1, position);
+			final boolean isDict = Tokens.kind(token) == Tokens.Kind.DICT;
+			final int count = Tokens.fixedCount(token);
+			if (count >= 0) {
+				for (int values = isDict ? 2 * count : count; values > 0; --values) {
+					skipValue(read(), nested + 1);
+				}
+				break;
+			}
+			final long maxValues = isDict ? 2L * limits.getMaxContainerElements() : limits.getMaxContainerElements();
+			for (long values = 0; peek() != CHR_TERM; ++values) {
+				if (values == maxValues) {
+					limits.checkElements(isDict ? values / 2 + 1 : values + 1, position);
+				}
+				skipValue(read(), nested + 1);
+			}
+			read(); // consume EOF character
+			break;
+		}
+		case INT:
+		case FLOAT:
+			skipFully(Tokens.size(token));
+			break;
+		case DECIMAL:
+			for (int length = 0; read() != CHR_TERM; ++length) {
+				Tokens.decimalDigit(length);
+			}
+			break;
+		case BIG_INTEGER:
+			skipFully(read());
+			break;
+		case BIG_DECIMAL:
+			readNumber();
+			skipFully(read());
+			break;
+		case FIXED_INT:
+		case TRUE:
+		case FALSE:
+		case NONE:
+			break;
+		default:
+			throw new IOException("skipValue(): null decoder for token " + token);
+		}
+	}
+
+	private void skipFully(int n) throws IOException {
+		while (n > 0) {
+			final long skipped = skip(n);
+			if (skipped > 0) {
+				n -= skipped;
+			} else {
+				read(); // blocks, or throws EOFException at the end of stream
+				--n;
+			}
+		}
+	}
+
+	Object readKey() throws IOException {
+		if (keyCache != null) {
+			final int token = peek();
+			if (Tokens.kind(token) == Tokens.Kind.STRING) {
+				read();
+				final int size = fetchLength(token);
+				if (listener != null) {
+					listener.onValue(token);
+					listener.onString(size);
+				}
+				return fetchKey(size);
+			}
+		}
 		final Object key = readObject();
 		if(key instanceof Number) {
 			return ((Number)key).intValue();
@@ -384,7 +693,7 @@ public class RencodeInputStream extends PushbackInputStream implements ObjectInp
 		return key;
 	}
 
-	private int peek() throws IOException {
+	int peek() throws IOException {
 		final int token = read();
 		unread(token);
 		return token;
@@ -404,18 +713,214 @@ public class RencodeInputStream extends PushbackInputStream implements ObjectInp
 				| (buffer[7] & 0xFF);
 	}
 
+	/**
+	 * @param token a {@link Tokens.Kind#STRING} token, already consumed
+	 * @return length of the string, leaving the stream at its first byte
+	 * @throws RencodeLimitException if the length, embedded in the token or
+	 *           prefixed, exceeds the limit
+	 */
 	private int fetchLength(int token) throws IOException {
-		final StringBuilder buffer = new StringBuilder(MAX_INT_LENGTH);
-		buffer.append((char) token);
-		while ((token = read()) != LENGTH_DELIMITER) {
-			buffer.append((char) token);
+		int length = Tokens.fixedCount(token);
+		if (length < 0) {
+			length = token - '0';
+			while ((token = read()) != LENGTH_DELIMITER) {
+				length = Tokens.lengthDigit(length, token);
+			}
+		}
+		limits.checkStringLength(length, position);
+		return length;
+	}
+
+	/**
+	 * Reads the ASCII digits of CHR_INT up to CHR_TERM.
+	 */
+	private Number fetchDecimal() throws IOException {
+		final byte[] digits = new byte[MAX_INT_LENGTH];
+		int length = 0;
+		int c;
+		while ((c = read()) != CHR_TERM) {
+			Tokens.decimalDigit(length);
+			digits[length++] = (byte) c;
+		}
+		return BigNumbers.parseDecimal(digits, length);
+	}
+
+	private BigInteger fetchTwosComplement() throws IOException {
+		final byte[] bytes = new byte[read()];
+		readFully(bytes);
+		return BigNumbers.fromTwosComplement(bytes);
+	}
+
+	private String fetchKey(int size) throws IOException {
+		if (size > keyCache.getMaxKeyLength() || size > CHUNK_SIZE) {
+			return fetchString(size);
+		} else if (size > keyBuffer.length) {
+			// grow with the keys met, not to the configured maximum
+			keyBuffer = new byte[Math.max(size, 2 * keyBuffer.length)];
 		}
-		return Integer.parseInt(buffer.toString());
+		readFully(keyBuffer, 0, size);
+		return keyCache.get(keyBuffer, 0, size);
 	}
 
 	private String fetchString(int size) throws IOException {
-		final byte[] bytes = size <= buffer.length ? buffer : new byte[size];
+		final byte[] bytes;
+		if (size <= buffer.length) {
+			bytes = buffer;
+		} else if (size > CHUNK_SIZE) {
+			return new String(fetchBytes(size), UTF_8);
+		} else if (pooling) {
+			if (stringBuffer == null || stringBuffer.length < size) {
+				stringBuffer = new byte[size];
+			}
+			bytes = stringBuffer;
+		} else {
+			bytes = new byte[size];
+		}
 		readFully(bytes, 0, size);
 		return new String(bytes, 0, size, UTF_8);
 	}
+
+	/**
+	 * Sets a cache used to decode string dict keys to shared String
+	 * instances, or <code>null</code> to disable it. Keys are looked up by
+	 * their raw bytes, so a cache hit creates no String. A cache may be shared
+	 * by streams used from the same thread.
+	 */
+	public void setKeyCache(KeyCache keyCache) {
+		this.keyCache = keyCache;
+		this.keyBuffer = keyCache != null ? new byte[STR_FIXED_COUNT] : null;
+	}
+
+	public KeyCache getKeyCache() {
+		return keyCache;
+	}
+
+	/**
+	 * Sets a listener notified of every value decoded by
+	 * {@link #readObject()}, including nested values, and of every byte read
+	 * from the underlying stream, or <code>null</code> to remove it. Typed
+	 * reads such as {@link #readInt()} are not reported.
+	 */
+	public void setListener(RencodeListener listener) {
+		if (in instanceof CountingInputStream) {
+			in = ((CountingInputStream) in).source();
+		}
+		this.listener = listener;
+		if (listener != null) {
+			in = new CountingInputStream(in, listener);
+		}
+	}
+
+	public RencodeListener getListener() {
+		return listener;
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private final RencodeListener listener;
+
+		CountingInputStream(InputStream in, RencodeListener listener) {
+			super(in);
+			this.listener = listener;
+		}
+
+		InputStream source() {
+			return in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = in.read();
+			if (b >= 0) {
+				listener.onBytes(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int n = in.read(b, off, len);
+			if (n > 0) {
+				listener.onBytes(n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final long skipped = in.skip(n);
+			if (skipped > 0) {
+				listener.onBytes((int) skipped);
+			}
+			return skipped;
+		}
+	}
+
+	/**
+	 * Enables reuse of decoded lists and dicts, and of the buffer used for
+	 * decoding strings.
+	 * <p>
+	 * When enabled, strings are decoded through a single buffer sized to the
+	 * largest string seen so far, and lists and dicts are taken from a pool
+	 * filled by {@link #release(Object)}. Together this makes a long-running
+	 * decode loop nearly allocation-free, apart from the decoded strings and
+	 * boxed numbers.
+	 */
+	public void setPooling(boolean pooling) {
+		this.pooling = pooling;
+		if (!pooling) {
+			listPool.clear();
+			mapPool.clear();
+			stringBuffer = null;
+		}
+	}
+
+	/**
+	 * Returns the lists and dicts of a value decoded by this stream to the
+	 * pool, recursively. The value must not be used afterwards. Does nothing
+	 * unless pooling is enabled.
+	 *
+	 * @see #setPooling(boolean)
+	 */
+	@SuppressWarnings("unchecked")
+	public void release(Object value) {
+		if (!pooling) {
+			return;
+		}
+		if (value instanceof ArrayList) {
+			final ArrayList<Object> list = (ArrayList<Object>) value;
+			for (Object elem : list) {
+				release(elem);
+			}
+			list.clear();
+			if (listPool.size() < MAX_POOLED_CONTAINERS) {
+				listPool.push(list);
+			}
+		} else if (value instanceof HashMap) {
+			final HashMap<Object, Object> map = (HashMap<Object, Object>) value;
+			for (Object elem : map.values()) {
+				release(elem);
+			}
+			map.clear();
+			if (mapPool.size() < MAX_POOLED_CONTAINERS) {
+				mapPool.push(map);
+			}
+		}
+	}
+
+	private ArrayList<Object> newList(int capacity) {
+		final ArrayList<Object> list = pooling ? listPool.poll() : null;
+		if (list == null) {
+			return new ArrayList<>(capacity);
+		}
+		list.ensureCapacity(capacity);
+		return list;
+	}
+
+	private HashMap<Object, Object> newMap(int capacity, float loadFactor) {
+		final HashMap<Object, Object> map = pooling ? mapPool.poll() : null;
+		if (map == null) {
+			return new HashMap<>(capacity, loadFactor);
+		}
+		return map;
+	}
 }
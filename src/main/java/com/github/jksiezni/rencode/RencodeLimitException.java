@@ -0,0 +1,29 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+
+/**
+ * Thrown when decoded input exceeds one of the {@link RencodeLimits}.
+ */
+public class RencodeLimitException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long position;
+
+	public RencodeLimitException(String message, long position) {
+		super(position >= 0 ? message + " at byte " + position : message);
+		this.position = position;
+	}
+
+	/**
+	 * @return number of bytes consumed from the input when the limit was
+	 *         exceeded, or -1 if unknown
+	 */
+	public long getPosition() {
+		return position;
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+/**
+ * Immutable bounds on what a decoder accepts from the wire. Exceeding any of
+ * them fails with a {@link RencodeLimitException} before the offending value
+ * is allocated.
+ * <p>
+ * Start from {@link #DEFAULT} or {@link #UNLIMITED} and narrow it with the
+ * <code>with*</code> methods, e.g.
+ * <code>RencodeLimits.DEFAULT.withMaxStringLength(4096)</code>.
+ */
+public final class RencodeLimits {
+
+	/**
+	 * 16 MB strings, 16M elements per container, depth 100 and no limit on
+	 * the size of a value.
+	 */
+	public static final RencodeLimits DEFAULT = new RencodeLimits(16 << 20, Long.MAX_VALUE, 16 << 20, 100);
+
+	/**
+	 * No limits other than a nesting depth of 100, which protects the call
+	 * stack.
+	 */
+	public static final RencodeLimits UNLIMITED = new RencodeLimits(Integer.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, 100);
+
+	private final int maxStringLength;
+	private final long maxTotalBytes;
+	private final int maxContainerElements;
+	private final int maxDepth;
+
+	private RencodeLimits(int maxStringLength, long maxTotalBytes, int maxContainerElements, int maxDepth) {
+		if (maxStringLength < 0 || maxTotalBytes <= 0 || maxContainerElements < 0 || maxDepth < 0) {
+			throw new IllegalArgumentException("Limits must not be negative");
+		}
+		this.maxStringLength = maxStringLength;
+		this.maxTotalBytes = maxTotalBytes;
+		this.maxContainerElements = maxContainerElements;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * @return maximum length in bytes of a string or byte string
+	 */
+	public int getMaxStringLength() {
+		return maxStringLength;
+	}
+
+	/**
+	 * @return maximum number of bytes of one top-level value, including all
+	 *         nested values
+	 */
+	public long getMaxTotalBytes() {
+		return maxTotalBytes;
+	}
+
+	/**
+	 * @return maximum number of elements of a list, or entries of a dict
+	 */
+	public int getMaxContainerElements() {
+		return maxContainerElements;
+	}
+
+	/**
+	 * @return maximum number of nested lists and dicts
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public RencodeLimits withMaxStringLength(int maxStringLength) {
+		return new RencodeLimits(maxStringLength, maxTotalBytes, maxContainerElements, maxDepth);
+	}
+
+	public RencodeLimits withMaxTotalBytes(long maxTotalBytes) {
+		return new RencodeLimits(maxStringLength, maxTotalBytes, maxContainerElements, maxDepth);
+	}
+
+	public RencodeLimits withMaxContainerElements(int maxContainerElements) {
+		return new RencodeLimits(maxStringLength, maxTotalBytes, maxContainerElements, maxDepth);
+	}
+
+	public RencodeLimits withMaxDepth(int maxDepth) {
+		return new RencodeLimits(maxStringLength, maxTotalBytes, maxContainerElements, maxDepth);
+	}
+
+	void checkStringLength(long length, long position) throws RencodeLimitException {
+		if (length > maxStringLength) {
+			throw new RencodeLimitException("String length " + length + " exceeds the limit of " + maxStringLength, position);
+		}
+	}
+
+	void checkElements(long count, long position) throws RencodeLimitException {
+		if (count > maxContainerElements) {
+			throw new RencodeLimitException("Container with more than " + maxContainerElements + " elements", position);
+		}
+	}
+
+	void checkDepth(int depth, long position) throws RencodeLimitException {
+		if (depth > maxDepth) {
+			throw new RencodeLimitException("Nesting depth exceeds the limit of " + maxDepth, position);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RencodeLimits[maxStringLength=" + maxStringLength + ", maxTotalBytes=" + maxTotalBytes
+				+ ", maxContainerElements=" + maxContainerElements + ", maxDepth=" + maxDepth + "]";
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+/**
+ * Receives instrumentation events from {@link RencodeInputStream} and
+ * {@link RencodeOutputStream}.
+ * <p>
+ * Events are reported on the thread using the stream. A listener shared by
+ * several streams must be thread-safe. Streams without a listener pay only a
+ * null check per value.
+ *
+ * @see RencodeMetrics
+ * @see RencodeInputStream#setListener(RencodeListener)
+ * @see RencodeOutputStream#setListener(RencodeListener)
+ */
+public interface RencodeListener {
+
+	/**
+	 * A value was read or written. The token is its rencode type code, e.g.
+	 * CHR_INT4 or a fixed-length string code; a string with a decimal length
+	 * prefix reports the first digit. Containers are reported before their
+	 * elements.
+	 */
+	void onValue(int token);
+
+	/**
+	 * A string or byte string of the given length in bytes was read or
+	 * written.
+	 */
+	void onString(int length);
+
+	/**
+	 * A list or dict was read or written.
+	 *
+	 * @param dict <code>true</code> for a dict
+	 * @param size number of elements or entries
+	 * @param depth nesting depth of the container, 1 for a top-level value
+	 */
+	void onContainer(boolean dict, int size, int depth);
+
+	/**
+	 * A top-level call of readObject() or writeObject() completed.
+	 *
+	 * @param nanos time spent in the call, including nested values
+	 */
+	void onTopLevel(long nanos);
+
+	/**
+	 * Bytes were read from or written to the underlying stream.
+	 */
+	void onBytes(int count);
+}
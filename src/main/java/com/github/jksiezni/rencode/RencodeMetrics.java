@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * A thread-safe {@link RencodeListener} collecting counters and histograms,
+ * readable directly or through JMX.
+ * <p>
+ * Use one instance for decoding and another for encoding; either can be
+ * shared by any number of streams. Besides timing and byte counts, the
+ * metrics show how often values miss the fixed-length type codes, i.e.
+ * strings of {@value Rencode#STR_FIXED_COUNT} bytes or more, lists of
+ * {@value Rencode#LIST_FIXED_COUNT} elements or more and dicts of
+ * {@value Rencode#DICT_FIXED_COUNT} entries or more.
+ */
+public class RencodeMetrics implements RencodeListener, RencodeMetricsMXBean {
+
+	private static final int BUCKETS = 33;
+
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong topLevelValues = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+	private final AtomicLongArray values = new AtomicLongArray(256);
+	private final AtomicLongArray stringLengths = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray listSizes = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray dictSizes = new AtomicLongArray(BUCKETS);
+	private final AtomicLong stringFixedMisses = new AtomicLong();
+	private final AtomicLong listFixedMisses = new AtomicLong();
+	private final AtomicLong dictFixedMisses = new AtomicLong();
+
+	@Override
+	public void onValue(int token) {
+		values.incrementAndGet(token);
+	}
+
+	@Override
+	public void onString(int length) {
+		stringLengths.incrementAndGet(bucket(length));
+		if (length >= STR_FIXED_COUNT) {
+			stringFixedMisses.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void onContainer(boolean dict, int size, int depth) {
+		if (dict) {
+			dictSizes.incrementAndGet(bucket(size));
+			if (size >= DICT_FIXED_COUNT) {
+				dictFixedMisses.incrementAndGet();
+			}
+		} else {
+			listSizes.incrementAndGet(bucket(size));
+			if (size >= LIST_FIXED_COUNT) {
+				listFixedMisses.incrementAndGet();
+			}
+		}
+		int max;
+		while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) {
+			// retry
+		}
+	}
+
+	@Override
+	public void onTopLevel(long nanos) {
+		topLevelValues.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+			// retry
+		}
+	}
+
+	@Override
+	public void onBytes(int count) {
+		bytes.addAndGet(count);
+	}
+
+	private static int bucket(int size) {
+		return 32 - Integer.numberOfLeadingZeros(size);
+	}
+
+	private static long[] toArray(AtomicLongArray array) {
+		final long[] result = new long[array.length()];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = array.get(i);
+		}
+		return result;
+	}
+
+	@Override
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	@Override
+	public long getTopLevelValues() {
+		return topLevelValues.get();
+	}
+
+	@Override
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	@Override
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	@Override
+	public long[] getValueCounts() {
+		return toArray(values);
+	}
+
+	@Override
+	public long[] getStringLengthHistogram() {
+		return toArray(stringLengths);
+	}
+
+	@Override
+	public long[] getListSizeHistogram() {
+		return toArray(listSizes);
+	}
+
+	@Override
+	public long[] getDictSizeHistogram() {
+		return toArray(dictSizes);
+	}
+
+	@Override
+	public long getStringFixedMisses() {
+		return stringFixedMisses.get();
+	}
+
+	@Override
+	public long getListFixedMisses() {
+		return listFixedMisses.get();
+	}
+
+	@Override
+	public long getDictFixedMisses() {
+		return dictFixedMisses.get();
+	}
+
+	/**
+	 * Clears all counters. Events reported concurrently may be lost.
+	 */
+	@Override
+	public void reset() {
+		bytes.set(0);
+		topLevelValues.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+		maxDepth.set(0);
+		for (AtomicLongArray array : new AtomicLongArray[] { values, stringLengths, listSizes, dictSizes }) {
+			for (int i = 0; i < array.length(); ++i) {
+				array.set(i, 0);
+			}
+		}
+		stringFixedMisses.set(0);
+		listFixedMisses.set(0);
+		dictFixedMisses.set(0);
+	}
+
+	/**
+	 * Registers this instance with the platform MBean server.
+	 *
+	 * @param name the value of the <code>name</code> key, e.g. "decoder"
+	 * @return the name it was registered under
+	 */
+	public ObjectName register(String name) throws JMException {
+		final ObjectName objectName = new ObjectName("com.github.jksiezni.rencode:type=RencodeMetrics,name="
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+/**
+ * Management interface of {@link RencodeMetrics}.
+ * <p>
+ * Histograms have 33 buckets: bucket 0 counts empty values, bucket
+ * <i>i</i> counts sizes from 2<sup><i>i</i>-1</sup> up to
+ * 2<sup><i>i</i></sup>-1.
+ */
+public interface RencodeMetricsMXBean {
+
+	long getBytes();
+
+	long getTopLevelValues();
+
+	long getTotalNanos();
+
+	long getMaxNanos();
+
+	int getMaxDepth();
+
+	/**
+	 * @return number of values by type code, indexed by token
+	 */
+	long[] getValueCounts();
+
+	long[] getStringLengthHistogram();
+
+	long[] getListSizeHistogram();
+
+	long[] getDictSizeHistogram();
+
+	/**
+	 * @return number of strings too long for a fixed-length type code
+	 */
+	long getStringFixedMisses();
+
+	/**
+	 * @return number of lists too long for a fixed-length type code
+	 */
+	long getListFixedMisses();
+
+	/**
+	 * @return number of dicts too large for a fixed-length type code
+	 */
+	long getDictFixedMisses();
+
+	void reset();
+}
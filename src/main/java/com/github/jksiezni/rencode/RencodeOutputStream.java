@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,22 +23,211 @@ import static com.github.jksiezni.rencode.Rencode.*;
  */
 public class RencodeOutputStream extends FilterOutputStream implements DataOutput {
 
+	private static final int DEFAULT_BUFFER_SIZE = 512;
+	private static final int CHUNK_SIZE = 1024;
+
+	private final boolean buffered;
+	// lists and dicts opened with beginList() or beginDict(), innermost
+	// last: LIST, or DICT_KEY or DICT_VALUE for the item a dict expects next
+	private byte[] levels = new byte[8];
+	private int depth;
+
+	// encoded bytes waiting for flush(), used only in buffered mode
+	private byte[] buf;
+	private int count;
+
+	// encoding scratch space for the unbuffered mode, allocated on first use
+	private byte[] chunk;
+
+	// UTF-8 lengths of the strings to be written, in order, precomputed by
+	// EncodedSize; null if they are computed per string
+	private int[] utf8Lengths;
+	private int strings;
+
+	private boolean rawBigNumbers;
+	private RencodeEncoders encoders = RencodeEncoders.DEFAULT;
+
+	// instrumentation, see setListener(); nested counts the writeCollection()
+	// and writeMap() calls in progress
+	private RencodeListener listener;
+	private int nested;
+
 	public RencodeOutputStream(OutputStream out) {
+		this(out, false);
+	}
+
+	/**
+	 * @param out the underlying output stream
+	 * @param buffered if <code>true</code>, encoded values are collected in an
+	 *          internal, growable buffer and handed to the underlying stream
+	 *          only on {@link #flush()} or {@link #close()}
+	 */
+	public RencodeOutputStream(OutputStream out, boolean buffered) {
 		super(out);
+		this.buffered = buffered;
+		if (buffered) {
+			buf = new byte[DEFAULT_BUFFER_SIZE];
+		}
+	}
+
+	/**
+	 * Writes into the given array instead of a stream, taking the string
+	 * lengths from a previous {@link EncodedSize} pass over the same value.
+	 */
+	RencodeOutputStream(byte[] target, int[] utf8Lengths) {
+		super(null);
+		this.buffered = true;
+		this.buf = target;
+		this.utf8Lengths = utf8Lengths;
+	}
+
+	/**
+	 * Encodes the value into an array of exactly its encoded size, sized by a
+	 * first pass over the value. The value must not be modified meanwhile.
+	 *
+	 * @throws IOException if the value is too large for an array, or it
+	 *           changed between the two passes
+	 */
+	static byte[] toByteArray(Object value, boolean rawBigNumbers, RencodeEncoders encoders) throws IOException {
+		final EncodedSize sizer = new EncodedSize(rawBigNumbers, encoders);
+		final long size = sizer.of(value);
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IOException("Encoded value of " + size + " bytes does not fit in an array");
+		}
+		final byte[] bytes = new byte[(int) size];
+		final RencodeOutputStream out = new RencodeOutputStream(bytes, sizer.utf8Lengths());
+		out.setRawBigNumbers(rawBigNumbers);
+		out.setEncoders(encoders);
+		try {
+			out.writeObject(value);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Value modified while being encoded", e);
+		}
+		if (out.buf != bytes || out.count != bytes.length) {
+			throw new IOException("Value modified while being encoded");
+		}
+		return bytes;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (buffered) {
+			if (count == buf.length) {
+				grow(1);
+			}
+			buf[count++] = (byte) b;
+		} else {
+			out.write(b);
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (buffered) {
+			if (len > buf.length - count) {
+				grow(len);
+			}
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		} else {
+			out.write(b, off, len);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (count > 0) {
+			out.write(buf, 0, count);
+			count = 0;
+		}
+		out.flush();
+	}
+
+	private void grow(int len) {
+		buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + len));
+	}
+
+	private static final byte LIST = 0;
+	private static final byte DICT_KEY = 1;
+	private static final byte DICT_VALUE = 2;
+
+	/**
+	 * Called at the start of every value written, nested or not, with its
+	 * first token.
+	 */
+	void count(int token) {
+		if (listener != null) {
+			listener.onValue(token);
+		}
+		// a direct item of the innermost list or dict opened with begin*()
+		if (nested == 0 && depth > 0 && levels[depth - 1] != LIST) {
+			levels[depth - 1] = levels[depth - 1] == DICT_KEY ? DICT_VALUE : DICT_KEY;
+		}
+	}
+
+	/**
+	 * Sets a listener notified of every value written, including nested
+	 * values, and of every byte written to the underlying stream, or
+	 * <code>null</code> to remove it. In buffered mode bytes are reported on
+	 * {@link #flush()}. Containers written with {@link #beginList()} and
+	 * {@link #beginDict()} are reported without their sizes.
+	 */
+	public void setListener(RencodeListener listener) {
+		if (out instanceof CountingOutputStream) {
+			out = ((CountingOutputStream) out).target();
+		}
+		this.listener = listener;
+		if (listener != null) {
+			out = new CountingOutputStream(out, listener);
+		}
+	}
+
+	public RencodeListener getListener() {
+		return listener;
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private final RencodeListener listener;
+
+		CountingOutputStream(OutputStream out, RencodeListener listener) {
+			super(out);
+			this.listener = listener;
+		}
+
+		OutputStream target() {
+			return out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			listener.onBytes(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			listener.onBytes(len);
+		}
 	}
 
 	public void writeBoolean(boolean v) throws IOException {
+		count(v ? CHR_TRUE : CHR_FALSE);
 		write(v ? CHR_TRUE : CHR_FALSE);
 	}
 
 	public void writeByte(int v) throws IOException {
 		if (0 <= v && v < INT_POS_FIXED_COUNT) {
+			count(INT_POS_FIXED_START + v);
 			write(INT_POS_FIXED_START + v);
 		} else if (-INT_NEG_FIXED_COUNT <= v && v < 0) {
+			count(INT_NEG_FIXED_START - 1 - v);
 			write(INT_NEG_FIXED_START - 1 - v);
 		} else {
-			write(CHR_INT1);
-			write(v);
+			count(CHR_INT1);
+			buffer[0] = (byte) CHR_INT1;
+			buffer[1] = (byte) v;
+			write(buffer, 0, 2);
 		}
 	}
 
@@ -44,9 +235,11 @@ public class RencodeOutputStream extends FilterOutputStream implements DataOutpu
 		if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
 			writeByte(v);
 		} else {
-			write(CHR_INT2);
-			write((v >>> 8) & 0xFF);
-			write((v >>> 0) & 0xFF);
+			count(CHR_INT2);
+			buffer[0] = (byte) CHR_INT2;
+			buffer[1] = (byte) (v >>> 8);
+			buffer[2] = (byte) (v >>> 0);
+			write(buffer, 0, 3);
 		}
 	}
 
@@ -58,54 +251,52 @@ public class RencodeOutputStream extends FilterOutputStream implements DataOutpu
 		if (Short.MIN_VALUE <= v && v <= Short.MAX_VALUE) {
 			writeShort(v);
 		} else {
-			write(CHR_INT4);
-			write((v >>> 24) & 0xFF);
-			write((v >>> 16) & 0xFF);
-			write((v >>> 8) & 0xFF);
-			write((v >>> 0) & 0xFF);
+			count(CHR_INT4);
+			buffer[0] = (byte) CHR_INT4;
+			putInt(1, v);
+			write(buffer, 0, 5);
 		}
 	}
 
-	private final byte buffer[] = new byte[8];
-
 	public void writeLong(long v) throws IOException {
 		if (Integer.MIN_VALUE <= v && v <= Integer.MAX_VALUE) {
 			writeInt((int) v);
 		} else {
-			write(CHR_INT8);
-			buffer[0] = (byte) (v >>> 56);
-			buffer[1] = (byte) (v >>> 48);
-			buffer[2] = (byte) (v >>> 40);
-			buffer[3] = (byte) (v >>> 32);
-			buffer[4] = (byte) (v >>> 24);
-			buffer[5] = (byte) (v >>> 16);
-			buffer[6] = (byte) (v >>> 8);
-			buffer[7] = (byte) (v >>> 0);
-			write(buffer, 0, 8);
+			count(CHR_INT8);
+			buffer[0] = (byte) CHR_INT8;
+			putLong(1, v);
+			write(buffer, 0, 9);
 		}
 	}
 
 	public void writeFloat(float v) throws IOException {
-		write(CHR_FLOAT32);
-		final int val = Float.floatToIntBits(v);
-		write((val >>> 24) & 0xFF);
-		write((val >>> 16) & 0xFF);
-		write((val >>> 8) & 0xFF);
-		write((val >>> 0) & 0xFF);
+		count(CHR_FLOAT32);
+		buffer[0] = (byte) CHR_FLOAT32;
+		putInt(1, Float.floatToIntBits(v));
+		write(buffer, 0, 5);
 	}
 
 	public void writeDouble(double v) throws IOException {
-		final long val = Double.doubleToLongBits(v);
-		buffer[0] = (byte) (val >>> 56);
-		buffer[1] = (byte) (val >>> 48);
-		buffer[2] = (byte) (val >>> 40);
-		buffer[3] = (byte) (val >>> 32);
-		buffer[4] = (byte) (val >>> 24);
-		buffer[5] = (byte) (val >>> 16);
-		buffer[6] = (byte) (val >>> 8);
-		buffer[7] = (byte) (val >>> 0);
-		write(CHR_FLOAT64);
-		write(buffer, 0, 8);
+		count(CHR_FLOAT64);
+		buffer[0] = (byte) CHR_FLOAT64;
+		putLong(1, Double.doubleToLongBits(v));
+		write(buffer, 0, 9);
+	}
+
+	// token byte followed by up to 8 bytes of a big-endian value, or the
+	// decimal digits of a string length followed by LENGTH_DELIMITER
+	private final byte buffer[] = new byte[11];
+
+	private void putInt(int off, int v) {
+		buffer[off] = (byte) (v >>> 24);
+		buffer[off + 1] = (byte) (v >>> 16);
+		buffer[off + 2] = (byte) (v >>> 8);
+		buffer[off + 3] = (byte) (v >>> 0);
+	}
+
+	private void putLong(int off, long v) {
+		putInt(off, (int) (v >>> 32));
+		putInt(off + 4, (int) v);
 	}
 
 	public void writeBytes(String s) throws IOException {
@@ -117,91 +308,530 @@ public class RencodeOutputStream extends FilterOutputStream implements DataOutpu
 	}
 
 	public void writeUTF(String s) throws IOException {
-		final byte[] bytes = s.getBytes(UTF_8);
-		if (bytes.length < STR_FIXED_COUNT) {
-			write(STR_FIXED_START + bytes.length);
-			write(bytes);
+		writeUTF((CharSequence) s);
+	}
+
+	/**
+	 * Writes the characters as a UTF-8 string, encoding them straight into
+	 * the output buffer. The encoded length is computed beforehand, without
+	 * allocating. Unpaired surrogates are written as '?', like
+	 * {@link String#getBytes(java.nio.charset.Charset)} does.
+	 */
+	public void writeUTF(CharSequence s) throws IOException {
+		final int length = utf8Lengths != null ? utf8Lengths[strings++] : utf8Length(s);
+		writeStringHeader(length);
+		if (buffered) {
+			if (length > buf.length - count) {
+				grow(length);
+			}
+			final int start = count;
+			count = encodeUTF8(s, 0, s.length(), buf, count);
+			if (count - start != length) {
+				throw new IOException("String modified while being encoded");
+			}
+		} else {
+			if (chunk == null) {
+				chunk = new byte[CHUNK_SIZE];
+			}
+			// every char needs at most 3 bytes, a surrogate pair 4 bytes for 2 chars
+			final int charsPerChunk = CHUNK_SIZE / 3;
+			for (int start = 0; start < s.length();) {
+				int end = Math.min(s.length(), start + charsPerChunk);
+				if (end < s.length() && Character.isHighSurrogate(s.charAt(end - 1))) {
+					--end; // keep a surrogate pair in one chunk
+				}
+				out.write(chunk, 0, encodeUTF8(s, start, end, chunk, 0));
+				start = end;
+			}
+		}
+	}
+
+	/**
+	 * @return number of bytes of the UTF-8 encoded characters
+	 */
+	static int utf8Length(CharSequence s) {
+		final int n = s.length();
+		int length = n;
+		for (int i = 0; i < n; ++i) {
+			final char c = s.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					length += 1;
+				} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+					length += 2; // 4 bytes for 2 chars
+					++i;
+				} else if (!Character.isSurrogate(c)) {
+					length += 2;
+				}
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return the index in <code>dst</code> after the last encoded byte
+	 */
+	private static int encodeUTF8(CharSequence s, int start, int end, byte[] dst, int pos) {
+		for (int i = start; i < end; ++i) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				dst[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				dst[pos++] = (byte) (0xC0 | c >> 6);
+				dst[pos++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(++i));
+				dst[pos++] = (byte) (0xF0 | cp >> 18);
+				dst[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+				dst[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+				dst[pos++] = (byte) (0x80 | cp & 0x3F);
+			} else if (Character.isSurrogate(c)) {
+				dst[pos++] = '?';
+			} else {
+				dst[pos++] = (byte) (0xE0 | c >> 12);
+				dst[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+				dst[pos++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Writes the bytes as a string, like Python's <code>bytes</code>.
+	 */
+	public void writeBinary(byte[] b) throws IOException {
+		writeBinary(b, 0, b.length);
+	}
+
+	public void writeBinary(byte[] b, int off, int len) throws IOException {
+		writeStringHeader(len);
+		write(b, off, len);
+	}
+
+	/**
+	 * Writes the remaining bytes of the buffer as a string. Heap and direct
+	 * buffers are both copied straight into the output; the position of the
+	 * buffer is not modified.
+	 */
+	public void writeBinary(ByteBuffer src) throws IOException {
+		final int len = src.remaining();
+		writeStringHeader(len);
+		if (src.hasArray()) {
+			write(src.array(), src.arrayOffset() + src.position(), len);
+			return;
+		}
+		final ByteBuffer bytes = src.duplicate();
+		if (buffered) {
+			if (len > buf.length - count) {
+				grow(len);
+			}
+			bytes.get(buf, count, len);
+			count += len;
 		} else {
-			write(String.valueOf(bytes.length).getBytes(UTF_8));
-			write(LENGTH_DELIMITER);
-			write(bytes);
+			if (chunk == null) {
+				chunk = new byte[CHUNK_SIZE];
+			}
+			while (bytes.hasRemaining()) {
+				final int n = Math.min(CHUNK_SIZE, bytes.remaining());
+				bytes.get(chunk, 0, n);
+				out.write(chunk, 0, n);
+			}
 		}
 	}
 
+	private static int leadingDigit(int length) {
+		while (length >= 10) {
+			length /= 10;
+		}
+		return '0' + length;
+	}
+
+	private void writeStringHeader(int length) throws IOException {
+		count(length < STR_FIXED_COUNT ? STR_FIXED_START + length : leadingDigit(length));
+		if (listener != null) {
+			listener.onString(length);
+		}
+		if (length < STR_FIXED_COUNT) {
+			write(STR_FIXED_START + length);
+		} else {
+			writeStringLength(length);
+		}
+	}
+
+	/**
+	 * Writes the decimal length prefix of a long string, without allocating.
+	 */
+	private void writeStringLength(int length) throws IOException {
+		int pos = buffer.length;
+		buffer[--pos] = LENGTH_DELIMITER;
+		do {
+			buffer[--pos] = (byte) ('0' + length % 10);
+			length /= 10;
+		} while (length != 0);
+		write(buffer, pos, buffer.length - pos);
+	}
+
 	public void writeObject(Object value) throws IOException {
+		writeObject(value == null ? null : encoders.encoderFor(value.getClass()), value);
+	}
+
+	/**
+	 * Writes the value with the given encoder, timed like any other top-level
+	 * value.
+	 */
+	void writeObject(RencodeEncoder<Object> encoder, Object value) throws IOException {
+		if (listener == null || nested + depth > 0) {
+			encode(encoder, value);
+			return;
+		}
+		final long start = System.nanoTime();
+		try {
+			encode(encoder, value);
+		} finally {
+			listener.onTopLevel(System.nanoTime() - start);
+		}
+	}
+
+	private void encode(RencodeEncoder<Object> encoder, Object value) throws IOException {
 		if (value == null) {
+			count(CHR_NONE);
 			write(CHR_NONE);
-		} else if (value instanceof Boolean) {
-			writeBoolean((Boolean) value);
+		} else {
+			encoder.encode(this, value);
+		}
+	}
 
-		} else if (value instanceof Character) {
-			writeChar((Character) value);
+	/**
+	 * Copies an already encoded value verbatim. A listener sees it as a single
+	 * value, without its nested values.
+	 */
+	public void writeRaw(RawRencode value) throws IOException {
+		count(value.token());
+		value.writeTo(this);
+	}
 
-		} else if (value instanceof String) {
-			writeUTF((String) value);
+	/**
+	 * Sets the encoders {@link #writeObject(Object)} dispatches to. Defaults
+	 * to {@link RencodeEncoders#DEFAULT}.
+	 */
+	public void setEncoders(RencodeEncoders encoders) {
+		if (encoders == null) {
+			throw new NullPointerException("encoders");
+		}
+		this.encoders = encoders;
+	}
+
+	public RencodeEncoders getEncoders() {
+		return encoders;
+	}
+
+	/**
+	 * Writes the value as CHR_INT followed by its decimal digits and
+	 * CHR_TERM, which every rencode implementation reads as an integer, or
+	 * as CHR_EXT_BIGINT if raw big numbers are enabled.
+	 *
+	 * @throws IllegalArgumentException if the decimal form has
+	 *           {@value Rencode#MAX_INT_LENGTH} or more characters
+	 * @see #setRawBigNumbers(boolean)
+	 */
+	public void writeBigInteger(BigInteger value) throws IOException {
+		if (rawBigNumbers) {
+			count(CHR_EXT_BIGINT);
+			write(CHR_EXT_BIGINT);
+			writeTwosComplement(value);
+		} else {
+			writeDecimal(value.toString());
+		}
+	}
 
-    } else if (value instanceof Number) {
-    	writeNumber((Number)value);
+	/**
+	 * Writes the value like {@link #writeBigInteger(BigInteger)}, with the
+	 * digits of {@link BigDecimal#toString()}, so the scale is preserved. A
+	 * value with neither fraction nor exponent gets a trailing '.' to be
+	 * decoded as a BigDecimal again; other rencode implementations cannot
+	 * parse these. Raw big numbers are written as CHR_EXT_BIGDEC.
+	 *
+	 * @see #setRawBigNumbers(boolean)
+	 */
+	public void writeBigDecimal(BigDecimal value) throws IOException {
+		if (rawBigNumbers) {
+			count(CHR_EXT_BIGDEC);
+			write(CHR_EXT_BIGDEC);
+			writeScale(value.scale());
+			writeTwosComplement(value.unscaledValue());
+		} else {
+			final String digits = value.toString();
+			writeDecimal(value.scale() == 0 ? digits + '.' : digits);
+		}
+	}
 
-		} else if (value instanceof Collection<?>) {
-			writeCollection((Collection<?>) value);
+	private void writeDecimal(String digits) throws IOException {
+		final int length = digits.length();
+		if (length >= MAX_INT_LENGTH) {
+			throw new IllegalArgumentException("A number " + digits + " should not exceed length of " + MAX_INT_LENGTH);
+		}
+		count(CHR_INT);
+		final byte[] bytes = new byte[length + 2];
+		bytes[0] = CHR_INT;
+		for (int i = 0; i < length; ++i) {
+			bytes[i + 1] = (byte) digits.charAt(i);
+		}
+		bytes[length + 1] = (byte) CHR_TERM;
+		write(bytes, 0, bytes.length);
+	}
 
-		} else if (value instanceof Map<?, ?>) {
-			writeMap((Map<?, ?>) value);
+	/**
+	 * Writes the scale of CHR_EXT_BIGDEC as an integer token. Unlike
+	 * {@link #writeInt(int)}, it is part of the big decimal rather than a
+	 * value of its own, so it is not counted.
+	 */
+	private void writeScale(int v) throws IOException {
+		if (0 <= v && v < INT_POS_FIXED_COUNT) {
+			write(INT_POS_FIXED_START + v);
+		} else if (-INT_NEG_FIXED_COUNT <= v && v < 0) {
+			write(INT_NEG_FIXED_START - 1 - v);
+		} else if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
+			buffer[0] = (byte) CHR_INT1;
+			buffer[1] = (byte) v;
+			write(buffer, 0, 2);
+		} else if (Short.MIN_VALUE <= v && v <= Short.MAX_VALUE) {
+			buffer[0] = (byte) CHR_INT2;
+			buffer[1] = (byte) (v >>> 8);
+			buffer[2] = (byte) v;
+			write(buffer, 0, 3);
+		} else {
+			buffer[0] = (byte) CHR_INT4;
+			putInt(1, v);
+			write(buffer, 0, 5);
+		}
+	}
 
+	private void writeTwosComplement(BigInteger value) throws IOException {
+		final byte[] bytes = value.toByteArray();
+		if (bytes.length > 0xFF) {
+			throw new IllegalArgumentException("A number of " + value.bitLength() + " bits should not exceed 255 bytes");
 		}
+		write(bytes.length);
+		write(bytes, 0, bytes.length);
 	}
 
-	private void writeNumber(Number value) throws IOException {
-		if(value instanceof Float) {
-        writeFloat(value.floatValue());
-    }
-    else if(value instanceof Double) {
-        writeDouble(value.doubleValue());
-    }
-    else if(value instanceof BigDecimal
-    		|| value instanceof BigInteger) {
-    	final String sval = String.valueOf(value);
-			if (sval.length() >= MAX_INT_LENGTH) {
-				throw new IllegalArgumentException("A number " + sval + " should not exceed length of " + MAX_INT_LENGTH);
-			}
-			write(CHR_INT);
-			writeChars(sval);
-    } else {
-    	writeLong(value.longValue());
-    }
+	/**
+	 * Writes BigIntegers and BigDecimals as raw two's-complement bytes
+	 * instead of decimal digits. This is an extension of the format: the
+	 * decoders of this library read it, other rencode implementations do not.
+	 * Disabled by default.
+	 */
+	public void setRawBigNumbers(boolean rawBigNumbers) {
+		this.rawBigNumbers = rawBigNumbers;
+	}
+
+	public boolean isRawBigNumbers() {
+		return rawBigNumbers;
 	}
 
 	public void writeCollection(Collection<?> list) throws IOException {
-		if (list.size() < LIST_FIXED_COUNT) {
-			write(LIST_FIXED_START + list.size());
-			for (Object elem : list) {
-				writeObject(elem);
-			}
-		} else {
-			write(CHR_LIST);
-			for (Object elem : list) {
-				writeObject(elem);
+		count(list.size() < LIST_FIXED_COUNT ? LIST_FIXED_START + list.size() : CHR_LIST);
+		if (listener != null) {
+			listener.onContainer(false, list.size(), nested + depth + 1);
+		}
+		++nested;
+		try {
+			if (list.size() < LIST_FIXED_COUNT) {
+				write(LIST_FIXED_START + list.size());
+				for (Object elem : list) {
+					writeObject(elem);
+				}
+			} else {
+				write(CHR_LIST);
+				for (Object elem : list) {
+					writeObject(elem);
+				}
+				write(CHR_TERM);
 			}
-			write(CHR_TERM);
+		} finally {
+			--nested;
 		}
 	}
 
 	public <T> void writeMap(Map<T, ?> map) throws IOException {
-		if (map.size() < DICT_FIXED_COUNT) {
-			write(DICT_FIXED_START + map.size());
-			for (Entry<T, ?> elem : map.entrySet()) {
-				writeObject(elem.getKey());
-				writeObject(elem.getValue());
-			}
-		} else {
-			write(CHR_DICT);
-			for (Entry<T, ?> elem : map.entrySet()) {
-				writeObject(elem.getKey());
-				writeObject(elem.getValue());
+		count(map.size() < DICT_FIXED_COUNT ? DICT_FIXED_START + map.size() : CHR_DICT);
+		if (listener != null) {
+			listener.onContainer(true, map.size(), nested + depth + 1);
+		}
+		++nested;
+		try {
+			if (map.size() < DICT_FIXED_COUNT) {
+				write(DICT_FIXED_START + map.size());
+				for (Entry<T, ?> elem : map.entrySet()) {
+					writeObject(elem.getKey());
+					writeObject(elem.getValue());
+				}
+			} else {
+				write(CHR_DICT);
+				for (Entry<T, ?> elem : map.entrySet()) {
+					writeObject(elem.getKey());
+					writeObject(elem.getValue());
+				}
+				write(CHR_TERM);
 			}
+		} finally {
+			--nested;
+		}
+	}
+
+	/**
+	 * Writes the array as a list of integers, like
+	 * {@link #writeCollection(Collection)} with boxed values but without boxing.
+	 */
+	public void writeIntArray(int[] values) throws IOException {
+		writeListStart(values.length);
+		for (int value : values) {
+			writeInt(value);
+		}
+		writeListEnd(values.length);
+	}
+
+	/**
+	 * Writes the array as a list of integers, like
+	 * {@link #writeCollection(Collection)} with boxed values but without boxing.
+	 */
+	public void writeLongArray(long[] values) throws IOException {
+		writeListStart(values.length);
+		for (long value : values) {
+			writeLong(value);
+		}
+		writeListEnd(values.length);
+	}
+
+	/**
+	 * Writes the array as a list of 64-bit floats, like
+	 * {@link #writeCollection(Collection)} with boxed values but without boxing.
+	 */
+	public void writeDoubleArray(double[] values) throws IOException {
+		writeListStart(values.length);
+		for (double value : values) {
+			writeDouble(value);
+		}
+		writeListEnd(values.length);
+	}
+
+	/**
+	 * Starts a list of known size, whose elements are nested values until the
+	 * matching {@link #writeListEnd(int)}.
+	 */
+	void writeListStart(int size) throws IOException {
+		count(size < LIST_FIXED_COUNT ? LIST_FIXED_START + size : CHR_LIST);
+		if (listener != null) {
+			listener.onContainer(false, size, nested + depth + 1);
+		}
+		write(size < LIST_FIXED_COUNT ? LIST_FIXED_START + size : CHR_LIST);
+		++nested;
+	}
+
+	void writeListEnd(int size) throws IOException {
+		--nested;
+		if (size >= LIST_FIXED_COUNT) {
+			write(CHR_TERM);
+		}
+	}
+
+	/**
+	 * Starts a dict of known size, whose keys and values are nested values
+	 * until the matching {@link #writeDictEnd(int)}.
+	 */
+	void writeDictStart(int size) throws IOException {
+		count(size < DICT_FIXED_COUNT ? DICT_FIXED_START + size : CHR_DICT);
+		if (listener != null) {
+			listener.onContainer(true, size, nested + depth + 1);
+		}
+		write(size < DICT_FIXED_COUNT ? DICT_FIXED_START + size : CHR_DICT);
+		++nested;
+	}
+
+	void writeDictEnd(int size) throws IOException {
+		--nested;
+		if (size >= DICT_FIXED_COUNT) {
 			write(CHR_TERM);
 		}
 	}
 
+	/**
+	 * Writes a string that is already encoded, header included.
+	 *
+	 * @param length length of the string, without the header
+	 */
+	void writeEncodedString(byte[] encoded, int length) throws IOException {
+		count(encoded[0] & 0xFF);
+		if (listener != null) {
+			listener.onString(length);
+		}
+		write(encoded, 0, encoded.length);
+	}
+
+	/**
+	 * Starts a list of unknown size. Elements are written with the regular
+	 * write methods, and the list is closed with {@link #end()}.
+	 */
+	public void beginList() throws IOException {
+		count(CHR_LIST);
+		write(CHR_LIST);
+		push(LIST);
+	}
+
+	/**
+	 * Starts a dict of unknown size. Keys and values are written alternately
+	 * with the regular write methods, and the dict is closed with
+	 * {@link #end()}.
+	 */
+	public void beginDict() throws IOException {
+		count(CHR_DICT);
+		write(CHR_DICT);
+		push(DICT_KEY);
+	}
+
+	private void push(byte level) {
+		if (depth == levels.length) {
+			levels = Arrays.copyOf(levels, 2 * depth);
+		}
+		levels[depth++] = level;
+	}
+
+	/**
+	 * Closes the list or dict opened most recently with {@link #beginList()} or
+	 * {@link #beginDict()}.
+	 *
+	 * @throws IllegalStateException if there is no open list or dict, or the
+	 *           dict has a key without a value
+	 */
+	public void end() throws IOException {
+		if (depth == 0) {
+			throw new IllegalStateException("end() without matching beginList() or beginDict()");
+		}
+		if (levels[depth - 1] == DICT_VALUE) {
+			throw new IllegalStateException("end() of a dict with a key but no value");
+		}
+		write(CHR_TERM);
+		--depth;
+	}
+
+	/**
+	 * @return number of lists and dicts started with {@link #beginList()} or
+	 *         {@link #beginDict()} and not yet closed with {@link #end()}
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @throws IOException if a list or dict is still open; the stream is closed
+	 *           anyway
+	 */
+	@Override
+	public void close() throws IOException {
+		super.close();
+		if (depth > 0) {
+			throw new IOException("Stream closed with " + depth + " unterminated list(s) or dict(s)");
+		}
+	}
+
 }
@@ -0,0 +1,577 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * A pull parser that reports rencoded data as a sequence of events instead
+ * of building an object tree.
+ * <p>
+ * Each call to {@link #next()} reads one token and returns its {@link Event}.
+ * Containers are reported as {@link Event#START_LIST} or
+ * {@link Event#START_DICT}, followed by their elements, followed by
+ * {@link Event#END}. Inside a dict, keys and values alternate; use
+ * {@link #isKey()} to tell them apart.
+ * <p>
+ * Scalar values are kept in primitive fields, so pulling numbers, booleans and
+ * container events does not allocate. Only big numbers, reported as
+ * {@link Event#BIG_NUMBER}, are decoded to objects. String contents are read only when
+ * {@link #getString()} or {@link #getBytes()} is called, and skipped
+ * otherwise.
+ * <p>
+ * Input is checked against {@link RencodeLimits} as it is pulled, and long
+ * strings are read in chunks as their bytes arrive, so a forged length does
+ * not allocate a buffer of that size.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class RencodePullParser implements Closeable {
+
+	public enum Event {
+		START_LIST, START_DICT, END, INT, FLOAT, STRING, BYTES, BOOLEAN, NONE, BIG_NUMBER
+	}
+
+	private static final int CHUNK_SIZE = 64 << 10;
+
+	private final InputStream in;
+	private final boolean decodeAsString;
+
+	private final byte[] buf = new byte[8192];
+	private int pos;
+	private int lim;
+
+	private RencodeLimits limits = RencodeLimits.DEFAULT;
+	// bytes of the stream before buf[0], and the position beyond which the
+	// current top-level value exceeds limits.getMaxTotalBytes()
+	private long base;
+	private long positionLimit = Long.MAX_VALUE;
+
+	// open containers: elements left (-1 - elements read when terminated by
+	// CHR_TERM), whether it is a dict, and whether the next dict element is a
+	// key
+	private int depth;
+	private int[] remaining = new int[8];
+	private boolean[] dict = new boolean[8];
+	private boolean[] expectKey = new boolean[8];
+
+	private Event event;
+	private boolean key;
+	private long longValue;
+	private double doubleValue;
+	private Number bigNumber;
+	private int length;
+	// true while the contents of the current string have not been consumed
+	private boolean pending;
+	private byte[] scratch = new byte[64];
+
+	public RencodePullParser(InputStream in) {
+		this(in, false);
+	}
+
+	/**
+	 * @param in the stream to parse
+	 * @param decodeAsString if <code>true</code>, strings are reported as
+	 *          {@link Event#STRING}, otherwise as {@link Event#BYTES}
+	 */
+	public RencodePullParser(InputStream in, boolean decodeAsString) {
+		this.in = in;
+		this.decodeAsString = decodeAsString;
+	}
+
+	/**
+	 * Sets the bounds enforced while parsing. Defaults to
+	 * {@link RencodeLimits#DEFAULT}.
+	 */
+	public void setLimits(RencodeLimits limits) {
+		if (limits == null) {
+			throw new NullPointerException("limits");
+		}
+		this.limits = limits;
+	}
+
+	public RencodeLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * @return number of bytes consumed from the stream
+	 */
+	public long getPosition() {
+		return base + pos;
+	}
+
+	/**
+	 * @return <code>true</code> if there is another event, i.e. a container is
+	 *         still open or the stream holds more data
+	 */
+	public boolean hasNext() throws IOException {
+		skipPending();
+		return depth > 0 || pos < lim || fill() > 0;
+	}
+
+	/**
+	 * Reads the next token.
+	 *
+	 * @throws EOFException if the stream ends in the middle of a value, or
+	 *           there is no more data
+	 */
+	public Event next() throws IOException {
+		skipPending();
+		key = false;
+		if (depth > 0) {
+			final int top = depth - 1;
+			if (remaining[top] == 0 || (remaining[top] < 0 && peek() == CHR_TERM)) {
+				if (remaining[top] < 0) {
+					++pos; // consume CHR_TERM
+				}
+				--depth;
+				return event = Event.END;
+			}
+			if (remaining[top] > 0) {
+				--remaining[top];
+			} else {
+				final long elements = -remaining[top]--;
+				limits.checkElements(dict[top] ? (elements + 1) / 2 : elements, getPosition());
+			}
+			if (dict[top]) {
+				key = expectKey[top];
+				expectKey[top] = !key;
+			}
+		} else {
+			final long maxTotalBytes = limits.getMaxTotalBytes();
+			positionLimit = getPosition() > Long.MAX_VALUE - maxTotalBytes ? Long.MAX_VALUE : getPosition() + maxTotalBytes;
+		}
+		event = decode(read());
+		checkTotal(getPosition());
+		return event;
+	}
+
+	/**
+	 * @param end position the current value reaches
+	 */
+	private void checkTotal(long end) throws RencodeLimitException {
+		if (end > positionLimit) {
+			throw new RencodeLimitException("Value exceeds the limit of " + limits.getMaxTotalBytes() + " bytes", end);
+		}
+	}
+
+	private Event decode(int token) throws IOException {
+		switch (Tokens.kind(token)) {
+		case FIXED_INT:
+			longValue = Tokens.fixedInt(token);
+			return Event.INT;
+		case INT:
+			longValue = fetchNumber(token);
+			return Event.INT;
+		case FLOAT:
+			if (token == CHR_FLOAT32) {
+				doubleValue = Float.intBitsToFloat(fetchInt());
+			} else {
+				doubleValue = Double.longBitsToDouble(fetchLong());
+			}
+			return Event.FLOAT;
+		case DECIMAL:
+			bigNumber = fetchDecimal();
+			return Event.BIG_NUMBER;
+		case BIG_INTEGER:
+			bigNumber = fetchTwosComplement();
+			return Event.BIG_NUMBER;
+		case BIG_DECIMAL: {
+			final long scale = fetchNumber(read());
+			bigNumber = BigNumbers.toBigDecimal(fetchTwosComplement(), scale);
+			return Event.BIG_NUMBER;
+		}
+		case STRING:
+			return string(fetchLength(token));
+		case LIST:
+			push(false, Tokens.fixedCount(token));
+			return Event.START_LIST;
+		case DICT: {
+			final int count = Tokens.fixedCount(token);
+			push(true, count < 0 ? -1 : 2 * count);
+			return Event.START_DICT;
+		}
+		case TRUE:
+			longValue = 1;
+			return Event.BOOLEAN;
+		case FALSE:
+			longValue = 0;
+			return Event.BOOLEAN;
+		case NONE:
+			return Event.NONE;
+		default:
+			throw new IOException("Unexpected token " + token);
+		}
+	}
+
+	private Event string(int size) throws RencodeLimitException {
+		checkTotal(getPosition() + size);
+		length = size;
+		pending = true;
+		return decodeAsString ? Event.STRING : Event.BYTES;
+	}
+
+	private void push(boolean isDict, int count) throws IOException {
+		limits.checkDepth(depth + 1, getPosition());
+		if (count > 0) {
+			limits.checkElements(isDict ? count / 2 : count, getPosition());
+		}
+		if (depth == remaining.length) {
+			remaining = Arrays.copyOf(remaining, 2 * depth);
+			dict = Arrays.copyOf(dict, 2 * depth);
+			expectKey = Arrays.copyOf(expectKey, 2 * depth);
+		}
+		remaining[depth] = count;
+		dict[depth] = isDict;
+		expectKey[depth] = true;
+		++depth;
+	}
+
+	/**
+	 * Skips over the value of the current event without decoding it.
+	 * <p>
+	 * After {@link Event#START_LIST} or {@link Event#START_DICT}, the rest of
+	 * the container is skipped including its {@link Event#END}, by reading only
+	 * tokens and length prefixes. After a string, its contents are skipped. For
+	 * other events this does nothing.
+	 */
+	public void skipValue() throws IOException {
+		skipPending();
+		if (event != Event.START_LIST && event != Event.START_DICT) {
+			return;
+		}
+		final int top = depth - 1;
+		int count = remaining[top];
+		if (count < 0) {
+			final long maxValues = dict[top] ? 2L * limits.getMaxContainerElements() : limits.getMaxContainerElements();
+			for (long elements = -1 - count; peek() != CHR_TERM; ++elements) {
+				if (elements == maxValues) {
+					limits.checkElements(dict[top] ? elements / 2 + 1 : elements + 1, getPosition());
+				}
+				skip(read(), 0);
+			}
+			++pos; // consume CHR_TERM
+		} else {
+			while (count-- > 0) {
+				skip(read(), 0);
+			}
+		}
+		--depth;
+		event = Event.END;
+	}
+
+	/**
+	 * @param nested number of containers opened while skipping
+	 */
+	private void skip(int token, int nested) throws IOException {
+		checkTotal(getPosition());
+		switch (Tokens.kind(token)) {
+		case STRING: {
+			final int size = fetchLength(token);
+			checkTotal(getPosition() + size);
+			skipBytes(size);
+			break;
+		}
+		case LIST:
+		case DICT: {
+			limits.checkDepth(depth + nested + 1, getPosition());
+			final boolean isDict = Tokens.kind(token) == Tokens.Kind.DICT;
+			final int count = Tokens.fixedCount(token);
+			if (count >= 0) {
+				for (int values = isDict ? 2 * count : count; values > 0; --values) {
+					skip(read(), nested + 1);
+				}
+				break;
+			}
+			final long maxValues = isDict ? 2L * limits.getMaxContainerElements() : limits.getMaxContainerElements();
+			for (long values = 0; peek() != CHR_TERM; ++values) {
+				if (values == maxValues) {
+					limits.checkElements(isDict ? values / 2 + 1 : values + 1, getPosition());
+				}
+				skip(read(), nested + 1);
+			}
+			++pos; // consume CHR_TERM
+			break;
+		}
+		case INT:
+		case FLOAT:
+			skipBytes(Tokens.size(token));
+			break;
+		case DECIMAL:
+			for (int length = 0; read() != CHR_TERM; ++length) {
+				Tokens.decimalDigit(length);
+			}
+			break;
+		case BIG_INTEGER:
+			skipBytes(read());
+			break;
+		case BIG_DECIMAL:
+			fetchNumber(read());
+			skipBytes(read());
+			break;
+		case FIXED_INT:
+		case TRUE:
+		case FALSE:
+		case NONE:
+			// the value is embedded in the token
+			break;
+		default:
+			throw new IOException("Unexpected token " + token);
+		}
+	}
+
+	public Event getEvent() {
+		return event;
+	}
+
+	/**
+	 * @return <code>true</code> if the current event is a dict key
+	 */
+	public boolean isKey() {
+		return key;
+	}
+
+	/**
+	 * @return number of containers currently open
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getLong() {
+		check(Event.INT);
+		return longValue;
+	}
+
+	public int getInt() {
+		return (int) getLong();
+	}
+
+	public double getDouble() {
+		check(Event.FLOAT);
+		return doubleValue;
+	}
+
+	public float getFloat() {
+		return (float) getDouble();
+	}
+
+	/**
+	 * @return the {@link BigInteger} or {@link BigDecimal} of a
+	 *         {@link Event#BIG_NUMBER}
+	 */
+	public Number getBigNumber() {
+		check(Event.BIG_NUMBER);
+		return bigNumber;
+	}
+
+	public boolean getBoolean() {
+		check(Event.BOOLEAN);
+		return longValue != 0;
+	}
+
+	/**
+	 * @return length in bytes of the current string
+	 */
+	public int getLength() {
+		checkString();
+		return length;
+	}
+
+	public String getString() throws IOException {
+		loadString();
+		return new String(scratch, 0, length, UTF_8);
+	}
+
+	public byte[] getBytes() throws IOException {
+		loadString();
+		return Arrays.copyOf(scratch, length);
+	}
+
+	/**
+	 * Reads the contents of the current string. Long strings are read into a
+	 * buffer that grows as the bytes actually arrive, like in
+	 * {@link RencodeInputStream}.
+	 */
+	private void loadString() throws IOException {
+		checkString();
+		if (pending) {
+			int total = 0;
+			while (total < length) {
+				if (total == scratch.length) {
+					scratch = Arrays.copyOf(scratch, (int) Math.min(Math.max(2L * total, CHUNK_SIZE), length));
+				}
+				final int n = Math.min(length, scratch.length) - total;
+				readFully(scratch, total, n);
+				total += n;
+			}
+			pending = false;
+		}
+	}
+
+	private void check(Event expected) {
+		if (event != expected) {
+			throw new IllegalStateException("Current event is " + event + ", not " + expected);
+		}
+	}
+
+	private void checkString() {
+		if (event != Event.STRING && event != Event.BYTES) {
+			throw new IllegalStateException("Current event is " + event + ", not a string");
+		}
+	}
+
+	private void skipPending() throws IOException {
+		if (pending) {
+			pending = false;
+			skipBytes(length);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private int fill() throws IOException {
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, lim - pos);
+			base += pos;
+			lim -= pos;
+			pos = 0;
+		}
+		final int n = in.read(buf, lim, buf.length - lim);
+		if (n > 0) {
+			lim += n;
+		}
+		return n;
+	}
+
+	private void require(int n) throws IOException {
+		while (lim - pos < n) {
+			if (fill() < 0) {
+				throw new EOFException("end of stream");
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		require(1);
+		return buf[pos++] & 0xFF;
+	}
+
+	private int peek() throws IOException {
+		require(1);
+		return buf[pos] & 0xFF;
+	}
+
+	private int fetchInt() throws IOException {
+		require(4);
+		final int value = (buf[pos] & 0xFF) << 24 | (buf[pos + 1] & 0xFF) << 16 | (buf[pos + 2] & 0xFF) << 8
+				| (buf[pos + 3] & 0xFF);
+		pos += 4;
+		return value;
+	}
+
+	private long fetchLong() throws IOException {
+		final long high = fetchInt();
+		return high << 32 | (fetchInt() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Reads the value of an integer token, e.g. an element or the scale of
+	 * CHR_EXT_BIGDEC.
+	 */
+	private long fetchNumber(int token) throws IOException {
+		if (Tokens.kind(token) == Tokens.Kind.FIXED_INT) {
+			return Tokens.fixedInt(token);
+		}
+		switch (token) {
+		case CHR_INT1:
+			return (byte) read();
+		case CHR_INT2:
+			require(2);
+			final short value = (short) ((buf[pos] & 0xFF) << 8 | (buf[pos + 1] & 0xFF));
+			pos += 2;
+			return value;
+		case CHR_INT4:
+			return fetchInt();
+		case CHR_INT8:
+			return fetchLong();
+		default:
+			throw new IOException("Unable to decode the number.");
+		}
+	}
+
+	/**
+	 * Reads the ASCII digits of CHR_INT up to CHR_TERM.
+	 */
+	private Number fetchDecimal() throws IOException {
+		final byte[] digits = new byte[MAX_INT_LENGTH];
+		int length = 0;
+		int c;
+		while ((c = read()) != CHR_TERM) {
+			Tokens.decimalDigit(length);
+			digits[length++] = (byte) c;
+		}
+		return BigNumbers.parseDecimal(digits, length);
+	}
+
+	private BigInteger fetchTwosComplement() throws IOException {
+		final byte[] bytes = new byte[read()];
+		readFully(bytes, 0, bytes.length);
+		return BigNumbers.fromTwosComplement(bytes);
+	}
+
+	/**
+	 * @param token a {@link Tokens.Kind#STRING} token, already consumed
+	 * @return length of the string, leaving the stream at its first byte
+	 * @throws RencodeLimitException if the length, embedded in the token or
+	 *           prefixed, exceeds the limit
+	 */
+	private int fetchLength(int token) throws IOException {
+		int size = Tokens.fixedCount(token);
+		if (size < 0) {
+			size = token - '0';
+			while ((token = read()) != LENGTH_DELIMITER) {
+				size = Tokens.lengthDigit(size, token);
+			}
+		}
+		limits.checkStringLength(size, getPosition());
+		return size;
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		final int end = off + len;
+		while (off < end) {
+			if (pos == lim && fill() < 0) {
+				throw new EOFException("end of stream");
+			}
+			final int n = Math.min(end - off, lim - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			off += n;
+		}
+	}
+
+	private void skipBytes(int n) throws IOException {
+		while (n > 0) {
+			if (pos == lim && fill() < 0) {
+				throw new EOFException("end of stream");
+			}
+			final int step = Math.min(n, lim - pos);
+			pos += step;
+			n -= step;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.github.jksiezni.rencode.Rencode.*;
+
+/**
+ * Token classification shared by the decoders, so that they agree on what a
+ * token starts and on the lengths and counts embedded in it.
+ */
+final class Tokens {
+
+	/**
+	 * The kind of value a token starts.
+	 */
+	enum Kind {
+		/** an integer embedded in the token, see {@link Tokens#fixedInt(int)} */
+		FIXED_INT,
+		/** a big-endian integer of {@link Tokens#size(int)} bytes */
+		INT,
+		/** a big-endian float of {@link Tokens#size(int)} bytes */
+		FLOAT,
+		/** the ASCII digits of CHR_INT up to CHR_TERM */
+		DECIMAL,
+		BIG_INTEGER,
+		BIG_DECIMAL,
+		/**
+		 * a string, with the length embedded in the token, see
+		 * {@link Tokens#fixedCount(int)}, or the token is the first digit of a
+		 * length prefix
+		 */
+		STRING,
+		/** a list of {@link Tokens#fixedCount(int)} elements */
+		LIST,
+		/** a dict of {@link Tokens#fixedCount(int)} entries */
+		DICT,
+		TRUE,
+		FALSE,
+		NONE,
+		TERM,
+		INVALID
+	}
+
+	private static final Kind[] KINDS = new Kind[256];
+
+	static {
+		Arrays.fill(KINDS, Kind.INVALID);
+		Arrays.fill(KINDS, INT_POS_FIXED_START, INT_POS_FIXED_START + INT_POS_FIXED_COUNT, Kind.FIXED_INT);
+		Arrays.fill(KINDS, INT_NEG_FIXED_START, INT_NEG_FIXED_START + INT_NEG_FIXED_COUNT, Kind.FIXED_INT);
+		Arrays.fill(KINDS, STR_FIXED_START, STR_FIXED_START + STR_FIXED_COUNT, Kind.STRING);
+		Arrays.fill(KINDS, '0', '9' + 1, Kind.STRING);
+		Arrays.fill(KINDS, LIST_FIXED_START, LIST_FIXED_START + LIST_FIXED_COUNT, Kind.LIST);
+		Arrays.fill(KINDS, DICT_FIXED_START, DICT_FIXED_START + DICT_FIXED_COUNT, Kind.DICT);
+		Arrays.fill(KINDS, CHR_INT1, CHR_INT8 + 1, Kind.INT);
+		KINDS[CHR_FLOAT32] = Kind.FLOAT;
+		KINDS[CHR_FLOAT64] = Kind.FLOAT;
+		KINDS[CHR_INT] = Kind.DECIMAL;
+		KINDS[CHR_EXT_BIGINT] = Kind.BIG_INTEGER;
+		KINDS[CHR_EXT_BIGDEC] = Kind.BIG_DECIMAL;
+		KINDS[CHR_LIST] = Kind.LIST;
+		KINDS[CHR_DICT] = Kind.DICT;
+		KINDS[CHR_TRUE] = Kind.TRUE;
+		KINDS[CHR_FALSE] = Kind.FALSE;
+		KINDS[CHR_NONE] = Kind.NONE;
+		KINDS[CHR_TERM] = Kind.TERM;
+	}
+
+	private Tokens() {
+	}
+
+	/**
+	 * @param token a token, 0 to 255
+	 */
+	static Kind kind(int token) {
+		return KINDS[token];
+	}
+
+	/**
+	 * @return <code>true</code> if the token starts an integer that fits in a
+	 *         <code>long</code>, i.e. {@link Kind#FIXED_INT} or {@link Kind#INT}
+	 */
+	static boolean isInteger(int token) {
+		final Kind kind = KINDS[token];
+		return kind == Kind.FIXED_INT || kind == Kind.INT;
+	}
+
+	/**
+	 * @return the value of a {@link Kind#FIXED_INT} token
+	 */
+	static int fixedInt(int token) {
+		if (token < INT_POS_FIXED_START + INT_POS_FIXED_COUNT) {
+			return token - INT_POS_FIXED_START;
+		}
+		return INT_NEG_FIXED_START - 1 - token;
+	}
+
+	/**
+	 * @return number of bytes following an {@link Kind#INT} or
+	 *         {@link Kind#FLOAT} token
+	 */
+	static int size(int token) {
+		if (token == CHR_FLOAT32) {
+			return 4;
+		} else if (token == CHR_FLOAT64) {
+			return 8;
+		}
+		return 1 << (token - CHR_INT1);
+	}
+
+	/**
+	 * @return the length of a string, number of elements of a list or number
+	 *         of entries of a dict embedded in the token, or -1 if the length
+	 *         is prefixed or the container is terminated by CHR_TERM
+	 */
+	static int fixedCount(int token) {
+		if (STR_FIXED_START <= token && token < STR_FIXED_START + STR_FIXED_COUNT) {
+			return token - STR_FIXED_START;
+		} else if (LIST_FIXED_START <= token && token < LIST_FIXED_START + LIST_FIXED_COUNT) {
+			return token - LIST_FIXED_START;
+		} else if (DICT_FIXED_START <= token && token < DICT_FIXED_START + DICT_FIXED_COUNT) {
+			return token - DICT_FIXED_START;
+		}
+		return -1;
+	}
+
+	/**
+	 * Appends a character of a string length prefix to the length read so
+	 * far. The first digit is the token itself.
+	 *
+	 * @throws IOException if the character is not a digit, or the length
+	 *           does not fit in an <code>int</code>
+	 */
+	static int lengthDigit(int length, int c) throws IOException {
+		if (c < '0' || c > '9') {
+			throw new IOException("Invalid character in string length: " + c);
+		}
+		final long next = 10L * length + (c - '0');
+		if (next > Integer.MAX_VALUE) {
+			throw new IOException("String length out of range: " + next);
+		}
+		return (int) next;
+	}
+
+	/**
+	 * Counts a digit of CHR_INT.
+	 *
+	 * @param length number of digits before this one
+	 * @throws IOException if the number is too long
+	 */
+	static void decimalDigit(int length) throws IOException {
+		if (length == MAX_INT_LENGTH) {
+			throw new IOException("A number should not exceed length of " + MAX_INT_LENGTH);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.github.jksiezni.rencode.RencodeCodec;
+import com.github.jksiezni.rencode.RencodeInputStream;
+
+/**
+ * One connection carrying rencoded lists of the form
+ * <code>[id, method, args]</code> for requests and
+ * <code>[id, ok, result-or-error]</code> for responses.
+ * <p>
+ * Messages are encoded before taking the write lock, and written with a
+ * single write. The lock is a {@link ReentrantLock} rather than a
+ * <code>synchronized</code> block, so a virtual thread blocked in a socket
+ * write does not pin its carrier thread.
+ */
+final class RpcChannel implements Closeable {
+
+	private final Socket socket;
+	private final RencodeInputStream in;
+	private final OutputStream out;
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	RpcChannel(Socket socket) throws IOException {
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		this.in = new RencodeInputStream(new BufferedInputStream(socket.getInputStream()), true);
+		this.out = socket.getOutputStream();
+	}
+
+	/**
+	 * Blocks until the next message arrives.
+	 */
+	List<?> receive() throws IOException {
+		final Object message = in.readObject();
+		if (!(message instanceof List) || ((List<?>) message).size() != 3) {
+			throw new IOException("Malformed message: " + message);
+		}
+		return (List<?>) message;
+	}
+
+	void send(List<?> message) throws IOException {
+		final byte[] bytes = RencodeCodec.BYTES.encode(message);
+		writeLock.lock();
+		try {
+			out.write(bytes);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+}
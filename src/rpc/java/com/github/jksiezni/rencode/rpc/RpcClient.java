@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client multiplexing concurrent requests over one connection.
+ * <p>
+ * Every request gets a unique id; a background reader completes the matching
+ * future when its response arrives, in whatever order the server answers.
+ * Instances are thread-safe and meant to be shared by many callers.
+ */
+public class RpcClient implements Closeable {
+
+	private final RpcChannel channel;
+	private final AtomicLong ids = new AtomicLong();
+	private final Map<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+	private volatile IOException failure;
+
+	/**
+	 * Connects to a server on the loopback interface.
+	 */
+	public RpcClient(int port) throws IOException {
+		this(new Socket(InetAddress.getLoopbackAddress(), port), true);
+	}
+
+	/**
+	 * @param virtualThreads run the reader on a virtual thread if the JVM
+	 *          supports them
+	 */
+	public RpcClient(Socket socket, boolean virtualThreads) throws IOException {
+		this.channel = new RpcChannel(socket);
+		RpcThreads.factory(virtualThreads, "rpc-client-").newThread(new Runnable() {
+			@Override
+			public void run() {
+				receive();
+			}
+		}).start();
+	}
+
+	/**
+	 * Sends a request without waiting for the response.
+	 */
+	public CompletableFuture<Object> callAsync(String method, Object... args) {
+		final CompletableFuture<Object> future = new CompletableFuture<>();
+		final long id = ids.incrementAndGet();
+		pending.put(id, future);
+		// the reader may have failed, and drained the pending requests, before the put
+		final IOException failed = failure;
+		if (failed != null) {
+			if (pending.remove(id) != null) {
+				future.completeExceptionally(failed);
+			}
+			return future;
+		}
+		try {
+			channel.send(Arrays.asList(id, method, Arrays.asList(args)));
+		} catch (IOException | RuntimeException e) {
+			// the connection failed, or an argument cannot be encoded
+			if (pending.remove(id) != null) {
+				future.completeExceptionally(e);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * Sends a request and waits for the response.
+	 *
+	 * @throws RpcException if the remote handler failed
+	 * @throws IOException if the connection failed
+	 */
+	public Object call(String method, Object... args) throws IOException {
+		try {
+			return callAsync(method, args).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for " + method, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return number of requests waiting for a response
+	 */
+	public int pendingRequests() {
+		return pending.size();
+	}
+
+	private void receive() {
+		try {
+			while (true) {
+				final List<?> response = channel.receive();
+				final CompletableFuture<Object> future = pending.remove(((Number) response.get(0)).longValue());
+				if (future == null) {
+					continue; // not ours, e.g. a duplicate
+				}
+				if (Boolean.TRUE.equals(response.get(1))) {
+					future.complete(response.get(2));
+				} else {
+					future.completeExceptionally(new RpcException(String.valueOf(response.get(2))));
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		} catch (RuntimeException e) {
+			failure = new IOException("Malformed response", e);
+		}
+		for (Long id : pending.keySet()) {
+			final CompletableFuture<Object> future = pending.remove(id);
+			if (future != null) {
+				future.completeExceptionally(failure);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link RpcClient} when the remote handler failed.
+ */
+public class RpcException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RpcException(String message) {
+		super(message);
+	}
+}
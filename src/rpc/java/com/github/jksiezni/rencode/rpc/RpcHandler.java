@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.util.List;
+
+/**
+ * Handles requests received by an {@link RpcServer}. Calls are made
+ * concurrently, one thread per request, so implementations must be
+ * thread-safe.
+ */
+public interface RpcHandler {
+
+	/**
+	 * @param method the method name sent by the client
+	 * @param args the decoded arguments, with strings as {@link String}
+	 * @return the result; anything
+	 *         {@link com.github.jksiezni.rencode.RencodeOutputStream#writeObject(Object)}
+	 *         can write
+	 * @throws Exception sent back to the client as an {@link RpcException}
+	 */
+	Object handle(String method, List<Object> args) throws Exception;
+}
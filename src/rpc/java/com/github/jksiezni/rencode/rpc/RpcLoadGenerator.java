@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an echo {@link RpcServer} and a set of {@link RpcClient}s over
+ * loopback, and reports requests per second and latency percentiles.
+ * <p>
+ * Options: <code>-c</code> connections (default 4), <code>-t</code>
+ * concurrent callers (default 256), <code>-n</code> requests per caller
+ * (default 1000), <code>-s</code> payload string length (default 64) and
+ * <code>-platform</code> to use platform threads even where virtual threads
+ * are available.
+ */
+public class RpcLoadGenerator {
+
+	public static void main(String[] args) throws Exception {
+		int connections = 4;
+		int callers = 256;
+		int requests = 1000;
+		int payloadLength = 64;
+		boolean virtual = true;
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-c":
+				connections = Integer.parseInt(args[++i]);
+				break;
+			case "-t":
+				callers = Integer.parseInt(args[++i]);
+				break;
+			case "-n":
+				requests = Integer.parseInt(args[++i]);
+				break;
+			case "-s":
+				payloadLength = Integer.parseInt(args[++i]);
+				break;
+			case "-platform":
+				virtual = false;
+				break;
+			default:
+				System.err.println("usage: RpcLoadGenerator [-c connections] [-t callers] [-n requests] [-s length] [-platform]");
+				System.exit(2);
+			}
+		}
+		run(connections, callers, requests, payloadLength, virtual);
+	}
+
+	static void run(int connections, int callers, final int requests, int payloadLength, boolean virtual) throws Exception {
+		final String payload = new String(new char[payloadLength]).replace('\0', 'x');
+		final RpcServer server = new RpcServer(new ServerSocket(0, 128, InetAddress.getLoopbackAddress()),
+				new RpcHandler() {
+					@Override
+					public Object handle(String method, List<Object> args) {
+						return args;
+					}
+				}, virtual).start();
+		final List<RpcClient> clients = new ArrayList<>(connections);
+		for (int i = 0; i < connections; ++i) {
+			clients.add(new RpcClient(new Socket(InetAddress.getLoopbackAddress(), server.getPort()), virtual));
+		}
+		final ExecutorService executor = RpcThreads.executor(server.isVirtualThreads(), "rpc-caller-");
+		final long[] latencies = new long[callers * requests];
+		final List<Future<?>> results = new ArrayList<>(callers);
+		final long start = System.nanoTime();
+		for (int c = 0; c < callers; ++c) {
+			final RpcClient client = clients.get(c % connections);
+			final int offset = c * requests;
+			results.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (int i = 0; i < requests; ++i) {
+						final long t0 = System.nanoTime();
+						client.call("echo", i, payload);
+						latencies[offset + i] = System.nanoTime() - t0;
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		final long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+		for (RpcClient client : clients) {
+			client.close();
+		}
+		server.close();
+
+		Arrays.sort(latencies);
+		System.out.printf(Locale.ROOT, "threads=%s connections=%d callers=%d requests=%d%n",
+				server.isVirtualThreads() ? "virtual" : "platform", connections, callers, latencies.length);
+		System.out.printf(Locale.ROOT, "throughput: %.0f req/s%n", latencies.length / (elapsed / 1e9));
+		System.out.printf(Locale.ROOT, "latency us: p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+				micros(latencies, 0.5), micros(latencies, 0.9), micros(latencies, 0.99), micros(latencies, 0.999),
+				micros(latencies, 1));
+	}
+
+	private static double micros(long[] sorted, double percentile) {
+		final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / (double) TimeUnit.MICROSECONDS.toNanos(1);
+	}
+}
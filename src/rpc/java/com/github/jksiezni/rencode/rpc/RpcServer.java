@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A request/response server on top of the rencode streams.
+ * <p>
+ * Every connection has a reader thread, and every request is handled on its
+ * own thread, so requests on one connection are processed concurrently and
+ * answered in completion order; clients match responses by id. Virtual
+ * threads are used when the JVM supports them, unless disabled.
+ */
+public class RpcServer implements Closeable {
+
+	private final ServerSocket serverSocket;
+	private final RpcHandler handler;
+	private final boolean virtualThreads;
+	private final ThreadFactory threads;
+	private final ExecutorService executor;
+	private final Set<RpcChannel> channels = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed;
+
+	/**
+	 * Listens on an ephemeral port of the loopback interface.
+	 */
+	public RpcServer(RpcHandler handler) throws IOException {
+		this(new ServerSocket(0, 128, InetAddress.getLoopbackAddress()), handler, true);
+	}
+
+	/**
+	 * @param virtualThreads use virtual threads if the JVM supports them,
+	 *          otherwise platform threads
+	 */
+	public RpcServer(ServerSocket serverSocket, RpcHandler handler, boolean virtualThreads) {
+		this.serverSocket = serverSocket;
+		this.handler = handler;
+		this.virtualThreads = virtualThreads && RpcThreads.virtualThreadsAvailable();
+		this.threads = RpcThreads.factory(this.virtualThreads, "rpc-server-");
+		this.executor = RpcThreads.executor(this.virtualThreads, "rpc-handler-");
+	}
+
+	/**
+	 * Starts accepting connections in the background.
+	 */
+	public RpcServer start() {
+		threads.newThread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}).start();
+		return this;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	private void accept() {
+		int failures = 0;
+		while (!closed && !serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				// unless the socket was closed, e.g. out of file descriptors:
+				// back off rather than spin while the error persists
+				if (closed || serverSocket.isClosed() || !backOff(++failures)) {
+					break;
+				}
+				continue;
+			}
+			failures = 0;
+			final RpcChannel channel;
+			try {
+				channel = new RpcChannel(socket);
+			} catch (IOException e) {
+				closeQuietly(socket); // the connection failed during setup
+				continue;
+			}
+			channels.add(channel);
+			threads.newThread(new Runnable() {
+				@Override
+				public void run() {
+					serve(channel);
+				}
+			}).start();
+		}
+	}
+
+	/**
+	 * Sleeps for up to a second, longer after each consecutive failure.
+	 *
+	 * @return <code>false</code> if interrupted
+	 */
+	private static boolean backOff(int failures) {
+		try {
+			Thread.sleep(Math.min(1000L, 10L << Math.min(failures, 7)));
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void serve(final RpcChannel channel) {
+		try {
+			while (true) {
+				final List<?> request = channel.receive();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						respond(channel, request);
+					}
+				});
+			}
+		} catch (EOFException | SocketException | RejectedExecutionException e) {
+			// client disconnected, or server closed
+		} catch (IOException e) {
+			// malformed request; drop the connection
+		} finally {
+			channels.remove(channel);
+			closeQuietly(channel);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void respond(RpcChannel channel, List<?> request) {
+		final Object id = request.get(0);
+		List<?> response;
+		try {
+			final Object result = handler.handle((String) request.get(1), (List<Object>) request.get(2));
+			response = Arrays.asList(id, true, result);
+		} catch (Exception e) {
+			response = Arrays.asList(id, false, String.valueOf(e));
+		}
+		try {
+			try {
+				channel.send(response);
+			} catch (RuntimeException e) {
+				// the result cannot be encoded
+				channel.send(Arrays.asList(id, false, String.valueOf(e)));
+			}
+		} catch (IOException e) {
+			closeQuietly(channel);
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+		for (RpcChannel channel : channels) {
+			closeQuietly(channel);
+		}
+		executor.shutdown();
+	}
+}
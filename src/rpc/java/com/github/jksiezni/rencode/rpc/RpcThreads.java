@@ -0,0 +1,87 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates virtual threads when the running JVM supports them (Java 21+), and
+ * daemon platform threads otherwise.
+ * <p>
+ * Virtual threads are looked up reflectively, so this artifact runs on Java 8
+ * and picks them up without recompiling.
+ */
+final class RpcThreads {
+
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	private static final Method NEW_VIRTUAL_EXECUTOR;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null, executor = null;
+		try {
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (ReflectiveOperationException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+		NEW_VIRTUAL_EXECUTOR = executor;
+	}
+
+	private RpcThreads() {
+	}
+
+	static boolean virtualThreadsAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @param virtual use virtual threads if available
+	 * @param prefix name prefix of the created threads
+	 */
+	static ThreadFactory factory(boolean virtual, final String prefix) {
+		if (virtual && OF_VIRTUAL != null) {
+			try {
+				final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+				return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Unable to create virtual threads", e);
+			}
+		}
+		final AtomicInteger counter = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread thread = new Thread(r, prefix + counter.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * @return an executor starting one thread per task
+	 */
+	static ExecutorService executor(boolean virtual, String prefix) {
+		if (virtual && NEW_VIRTUAL_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Unable to create virtual threads", e);
+			}
+		}
+		return Executors.newCachedThreadPool(factory(false, prefix));
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Loopback tests for {@link RpcServer} and {@link RpcClient}.
+ */
+public class RpcTest {
+
+	// released by "release", awaited by "wait"
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final CountDownLatch blocked = new CountDownLatch(1);
+
+	private final RpcHandler handler = new RpcHandler() {
+		@Override
+		public Object handle(String method, List<Object> args) throws Exception {
+			switch (method) {
+			case "echo":
+				return args.get(0);
+			case "wait":
+				blocked.countDown();
+				latch.await();
+				return "waited";
+			case "release":
+				latch.countDown();
+				return "released";
+			case "unencodable":
+				return new Object();
+			default:
+				throw new IllegalArgumentException(method);
+			}
+		}
+	};
+
+	private RpcServer server;
+
+	@After
+	public void tearDown() throws IOException {
+		latch.countDown();
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testOutOfOrderResponses() throws Exception {
+		server = new RpcServer(handler).start();
+		try (RpcClient client = new RpcClient(server.getPort())) {
+			final CompletableFuture<Object> waiting = client.callAsync("wait");
+			assertTrue(blocked.await(10, TimeUnit.SECONDS));
+			// answered while the first request is still being handled
+			assertEquals("released", client.call("release"));
+			assertEquals("waited", waiting.get(10, TimeUnit.SECONDS));
+			try {
+				client.call("unknown");
+				fail();
+			} catch (RpcException expected) {
+			}
+			assertEquals(0, client.pendingRequests());
+		}
+	}
+
+	@Test
+	public void testConcurrentCallers() throws Exception {
+		server = new RpcServer(handler).start();
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		try (final RpcClient client = new RpcClient(server.getPort())) {
+			final List<Future<Integer>> results = new ArrayList<>();
+			for (int t = 0; t < 8; ++t) {
+				final int caller = t;
+				results.add(callers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws IOException {
+						final List<CompletableFuture<Object>> futures = new ArrayList<>();
+						for (int i = 0; i < 200; ++i) {
+							futures.add(client.callAsync("echo", "caller" + caller + "-" + i));
+						}
+						int matched = 0;
+						for (int i = 0; i < futures.size(); ++i) {
+							if (("caller" + caller + "-" + i).equals(futures.get(i).join())) {
+								++matched;
+							}
+						}
+						return matched;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(200, result.get(30, TimeUnit.SECONDS).intValue());
+			}
+			assertEquals(0, client.pendingRequests());
+		} finally {
+			callers.shutdown();
+		}
+	}
+
+	@Test
+	public void testPendingFailOnClose() throws Exception {
+		server = new RpcServer(handler).start();
+		try (RpcClient client = new RpcClient(server.getPort())) {
+			final CompletableFuture<Object> waiting = client.callAsync("wait");
+			assertTrue(blocked.await(10, TimeUnit.SECONDS));
+			server.close();
+			try {
+				waiting.get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException expected) {
+				assertTrue(expected.getCause() instanceof IOException);
+			}
+			assertEquals(0, client.pendingRequests());
+			// later calls fail fast
+			try {
+				client.callAsync("echo", 1).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException expected) {
+				assertTrue(expected.getCause() instanceof IOException);
+			}
+		}
+	}
+
+	@Test
+	public void testUnencodableValues() throws Exception {
+		server = new RpcServer(handler).start();
+		try (RpcClient client = new RpcClient(server.getPort())) {
+			try {
+				client.callAsync("unencodable").get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException expected) {
+				assertTrue(expected.getCause() instanceof RpcException);
+			}
+			try {
+				client.callAsync("echo", new Object()).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException expected) {
+				assertTrue(expected.getCause() instanceof IllegalArgumentException);
+			}
+			assertEquals(0, client.pendingRequests());
+			// the connection is still usable
+			assertEquals("ok", client.call("echo", "ok"));
+		}
+	}
+
+	@Test
+	public void testAcceptBacksOff() throws Exception {
+		final AtomicInteger accepts = new AtomicInteger();
+		final ServerSocket failing = new ServerSocket() {
+			@Override
+			public Socket accept() throws IOException {
+				accepts.incrementAndGet();
+				throw new IOException("Too many open files");
+			}
+		};
+		server = new RpcServer(failing, handler, false).start();
+		Thread.sleep(500);
+		assertTrue("accepts: " + accepts.get(), accepts.get() < 20);
+
+		// stops once the socket is closed, even by someone else
+		failing.close();
+		Thread.sleep(1500);
+		final int stopped = accepts.get();
+		Thread.sleep(500);
+		assertEquals(stopped, accepts.get());
+		assertFalse(server.isVirtualThreads());
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link KeyCache} and its use in {@link RencodeInputStream}.
+ */
+public class KeyCacheTest {
+
+	private static byte[] utf8(String s) {
+		return s.getBytes(Rencode.UTF_8);
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		final KeyCache cache = new KeyCache(16);
+		final byte[] bytes = utf8("xxkeyxx");
+		final String first = cache.get(bytes, 2, 3);
+		assertEquals("key", first);
+		assertSame(first, cache.get(utf8("key"), 0, 3));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testCollisions() {
+		// with a single slot every key collides
+		final KeyCache evicting = new KeyCache(1, 64, true);
+		evicting.get(utf8("a"), 0, 1);
+		evicting.get(utf8("b"), 0, 1);
+		assertEquals("b", evicting.get(utf8("b"), 0, 1));
+		assertEquals(1, evicting.getHits());
+		assertEquals(1, evicting.getEvictions());
+
+		final KeyCache keeping = new KeyCache(1, 64, false);
+		keeping.get(utf8("a"), 0, 1);
+		assertEquals("b", keeping.get(utf8("b"), 0, 1));
+		keeping.get(utf8("a"), 0, 1);
+		assertEquals(1, keeping.getHits());
+		assertEquals(0, keeping.getEvictions());
+	}
+
+	@Test
+	public void testLongKeysNotCached() {
+		final KeyCache cache = new KeyCache(16, 4, true);
+		cache.get(utf8("longkey"), 0, 7);
+		cache.get(utf8("longkey"), 0, 7);
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testDecoderUsesCache() throws Exception {
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("alpha", 1);
+		map.put("beta", "beta");
+		map.put(new String(new char[100]).replace('\0', 'k'), 3);
+		map.put(4, 4);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.writeMap(map);
+		out.writeMap(map);
+
+		final KeyCache cache = new KeyCache();
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.setKeyCache(cache);
+		final Map<Object, Object> first = in.readMap();
+		final Map<Object, Object> second = in.readMap();
+		assertEquals(first.keySet(), map.keySet());
+		assertEquals(first.keySet(), second.keySet());
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		for (Object key : first.keySet()) {
+			if ("alpha".equals(key)) {
+				for (Object other : second.keySet()) {
+					if ("alpha".equals(other)) {
+						assertSame(key, other);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnboundedKeyLength() throws Exception {
+		final Map<Object, Object> map = new HashMap<>();
+		map.put(new String(new char[100]).replace('\0', 'k'), true);
+		map.put(new String(new char[1000]).replace('\0', 'l'), false);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.writeMap(map);
+		out.writeMap(map);
+
+		// the key buffer grows with the keys, not to Integer.MAX_VALUE bytes
+		final KeyCache cache = new KeyCache(16, Integer.MAX_VALUE, true);
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.setKeyCache(cache);
+		assertEquals(map, in.readMap());
+		assertEquals(map, in.readMap());
+		assertEquals(2, cache.getHits());
+	}
+}
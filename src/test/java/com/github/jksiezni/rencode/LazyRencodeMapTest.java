@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link LazyRencodeMap} and {@link LazyRencodeList}.
+ */
+public class LazyRencodeMapTest {
+
+	private static byte[] encode(Object value) throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new RencodeOutputStream(bytes).writeObject(value);
+		return bytes.toByteArray();
+	}
+
+	private static Map<Object, Object> payload(int size) {
+		final Map<Object, Object> map = new HashMap<>();
+		for (int i = 0; i < size; ++i) {
+			map.put("key" + i, i * 1000);
+		}
+		final List<Object> list = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			list.add(Arrays.asList("item" + i, (long) i << 40, 0.5d * i));
+		}
+		map.put("list", list);
+		map.put("nested", new HashMap<>(map));
+		map.put("text", new String(new char[300]).replace('\0', 't'));
+		map.put(7, null);
+		return map;
+	}
+
+	@Test
+	public void testSameAsEager() throws Exception {
+		for (int size : new int[] { 2, 40 }) {
+			final byte[] bytes = encode(payload(size));
+			final Object eager = new RencodeInputStream(new ByteArrayInputStream(bytes), true).readObject();
+			final LazyRencodeMap lazy = new LazyRencodeMap(ByteBuffer.wrap(bytes), true);
+			assertEquals(eager, lazy);
+			assertEquals(lazy, eager);
+		}
+	}
+
+	@Test
+	public void testRandomAccess() throws Exception {
+		final byte[] bytes = encode(payload(40));
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+		buffer.put(new byte[] { 1, 2, 3 });
+		buffer.put(bytes).flip();
+		buffer.position(3);
+		final LazyRencodeMap lazy = new LazyRencodeMap(buffer, true);
+		assertEquals(44, lazy.size());
+		assertEquals(39000, ((Number) lazy.get("key39")).intValue());
+		assertTrue(lazy.containsKey(7));
+		assertNull(lazy.get(7));
+		assertFalse(lazy.containsKey("missing"));
+
+		final LazyRencodeList list = (LazyRencodeList) lazy.get("list");
+		assertEquals(100, list.size());
+		final List<?> item = (List<?>) list.get(42);
+		assertEquals("item42", item.get(0));
+		assertEquals(42L << 40, item.get(1));
+
+		final LazyRencodeMap nested = (LazyRencodeMap) lazy.get("nested");
+		assertEquals(300, ((String) lazy.get("text")).length());
+		assertEquals(1000, ((Number) nested.get("key1")).intValue());
+	}
+
+	@Test
+	public void testNullAndDuplicateKeys() throws Exception {
+		for (int size : new int[] { 3, 20 }) {
+			// a terminated dict: None -> 0, k0 -> 0 .. k<size> -> size, k1 -> -1, None -> -2
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			bytes.write(Rencode.CHR_DICT);
+			bytes.write(encode(null));
+			bytes.write(encode(0));
+			for (int i = 0; i < size; ++i) {
+				bytes.write(encode("k" + i));
+				bytes.write(encode(i));
+			}
+			bytes.write(encode("k1"));
+			bytes.write(encode(-1));
+			bytes.write(encode(null));
+			bytes.write(encode(-2));
+			bytes.write(Rencode.CHR_TERM);
+
+			final Object eager = new RencodeInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+			final LazyRencodeMap lazy = new LazyRencodeMap(ByteBuffer.wrap(bytes.toByteArray()), false);
+			assertEquals(size + 1, lazy.size());
+			assertEquals(-2, ((Number) lazy.get(null)).intValue());
+			assertEquals(-1, ((Number) lazy.get("k1")).intValue());
+			assertTrue(lazy.containsKey(null));
+			assertNull(lazy.get("missing"));
+			assertEquals(eager, lazy);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotADict() throws Exception {
+		new LazyRencodeMap(encode(Arrays.asList(1, 2)));
+	}
+
+	@Test
+	public void testSkipValue() throws Exception {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.writeObject(payload(30));
+		out.writeUTF("after");
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(ByteBuffer.wrap(bytes.toByteArray()), true);
+		decoder.skipValue();
+		assertEquals("after", decoder.readObject());
+		assertFalse(decoder.hasRemaining());
+	}
+}
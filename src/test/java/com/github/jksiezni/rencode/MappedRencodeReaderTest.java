@@ -0,0 +1,103 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link MappedRencodeReader}.
+ */
+public class MappedRencodeReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Object> values() {
+		final List<Object> values = new ArrayList<>();
+		for (int i = 0; i < 50; ++i) {
+			final Map<Object, Object> map = new HashMap<>();
+			map.put("id", i);
+			map.put("name", "event-" + i);
+			map.put("tags", Arrays.asList("a", "b", "c"));
+			values.add(map);
+			values.add(Long.MAX_VALUE - i);
+			values.add(new String(new char[70 + i]).replace('\0', 'x'));
+		}
+		return values;
+	}
+
+	private List<Object> streamDecode(File file, int count) throws Exception {
+		final List<Object> values = new ArrayList<>();
+		try (RencodeInputStream in = new RencodeInputStream(new FileInputStream(file), true)) {
+			while (count-- > 0) {
+				values.add(in.readObject());
+			}
+		}
+		return values;
+	}
+
+	private File write(List<Object> values) throws Exception {
+		final File file = folder.newFile();
+		try (RencodeOutputStream out = new RencodeOutputStream(new FileOutputStream(file), true)) {
+			for (Object value : values) {
+				out.writeObject(value);
+			}
+		}
+		return file;
+	}
+
+	@Test
+	public void testReadAcrossRegions() throws Exception {
+		final File file = write(values());
+		final List<Object> values = streamDecode(file, values().size());
+		// a tiny region size forces most values to span two or more regions
+		try (MappedRencodeReader reader = new MappedRencodeReader(file, true, 7)) {
+			for (Object expected : values) {
+				assertTrue(reader.hasNext());
+				assertEquals(expected, reader.next());
+			}
+			assertFalse(reader.hasNext());
+			assertEquals(file.length(), reader.position());
+		}
+	}
+
+	@Test
+	public void testDefaultRegion() throws Exception {
+		final File file = write(values());
+		final List<Object> values = streamDecode(file, values().size());
+		final List<Object> actual = new ArrayList<>();
+		try (MappedRencodeReader reader = new MappedRencodeReader(file, true)) {
+			while (reader.hasNext()) {
+				actual.add(reader.next());
+			}
+		}
+		assertEquals(values, actual);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTruncatedFile() throws Exception {
+		final File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[] { (byte) Rencode.CHR_INT8, 1, 2 });
+		}
+		try (MappedRencodeReader reader = new MappedRencodeReader(file)) {
+			reader.next();
+		}
+	}
+}
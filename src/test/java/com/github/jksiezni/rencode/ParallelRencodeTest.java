@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ParallelRencode}.
+ */
+public class ParallelRencodeTest {
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@AfterClass
+	public static void shutdown() {
+		POOL.shutdown();
+	}
+
+	private static List<Object> elements(int count) {
+		final List<Object> list = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			switch (i % 4) {
+			case 0:
+				list.add(i * 1000L);
+				break;
+			case 1:
+				list.add("element" + i);
+				break;
+			case 2:
+				list.add(Arrays.asList(i, i / 7.0, null));
+				break;
+			default:
+				list.add(i % 3 == 0);
+			}
+		}
+		return list;
+	}
+
+	@Test
+	public void testWriteCollectionIsByteIdentical() throws IOException {
+		final List<Object> list = elements(10000);
+		final ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		new RencodeOutputStream(sequential).writeCollection(list);
+
+		final ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(parallel);
+		new ParallelRencode(POOL, 100).writeCollection(out, list);
+		out.flush();
+		assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+	}
+
+	@Test
+	public void testWriteMapIsByteIdentical() throws IOException {
+		final Map<Object, Object> map = new LinkedHashMap<>();
+		final List<Object> values = elements(5000);
+		for (int i = 0; i < values.size(); ++i) {
+			map.put("key" + i, values.get(i));
+		}
+		final ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		new RencodeOutputStream(sequential).writeMap(map);
+
+		final ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(parallel, true);
+		new ParallelRencode(POOL, 64).writeMap(out, map);
+		out.flush();
+		assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+	}
+
+	@Test
+	public void testReadAll() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		for (Object value : elements(3001)) {
+			out.writeObject(value);
+		}
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(bytes.toByteArray()), true);
+		final List<Object> expected = new ArrayList<>();
+		while (in.available() > 0) {
+			expected.add(in.readObject());
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		assertEquals(expected, new ParallelRencode(POOL, 50).readAll(buffer, true));
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void testReadAllTruncated() {
+		final ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 1, 2, (byte) Rencode.CHR_INT4, 0 });
+		try {
+			new ParallelRencode(POOL, 1).readAll(buffer, false);
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+}
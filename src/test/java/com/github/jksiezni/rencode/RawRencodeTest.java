@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RawRencode} and {@link RawRencodeCache}.
+ */
+public class RawRencodeTest {
+
+	private static byte[] encode(Object value, boolean buffered) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes, buffered);
+		out.writeObject(value);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static Map<Object, Object> header() {
+		final Map<Object, Object> header = new LinkedHashMap<>();
+		header.put("version", 3);
+		header.put("schema", Arrays.asList("id", "name", "price", 1.5, null, true));
+		header.put("description", new String(new char[100]).replace('\0', 'x'));
+		return header;
+	}
+
+	@Test
+	public void testSplicedBytesMatchEncodedValue() throws IOException {
+		final Map<Object, Object> header = header();
+		final RawRencode raw = RawRencode.of(header);
+		for (boolean buffered : new boolean[] { false, true }) {
+			assertArrayEquals(encode(header, buffered), encode(raw, buffered));
+			final Map<Object, Object> message = new LinkedHashMap<>();
+			message.put("header", header);
+			message.put("body", Arrays.asList(1, 2, 3));
+			final Map<Object, Object> spliced = new LinkedHashMap<>(message);
+			spliced.put("header", raw);
+			assertArrayEquals(encode(message, buffered), encode(spliced, buffered));
+			assertArrayEquals(encode(Arrays.asList(header, header), buffered), encode(Arrays.asList(raw, raw), buffered));
+		}
+		assertEquals(RencodeCodec.STRINGS.decode(encode(header, false)), raw.decode(true));
+	}
+
+	@Test
+	public void testValidation() throws IOException {
+		final byte[] encoded = encode(header(), false);
+		assertEquals(RawRencode.of(header()), RawRencode.copyOf(encoded));
+		assertEquals(encoded.length, RawRencode.wrap(encoded, true).length());
+		// a big decimal whose scale is an empty list instead of an integer
+		final byte[] listScale = { Rencode.CHR_EXT_BIGDEC, (byte) Rencode.LIST_FIXED_START, 1, 1 };
+		for (byte[] invalid : new byte[][] { new byte[0], Arrays.copyOf(encoded, encoded.length - 1),
+				Arrays.copyOf(encoded, encoded.length + 1), listScale }) {
+			try {
+				RawRencode.copyOf(invalid);
+				fail();
+			} catch (IOException expected) {
+			}
+		}
+		// trusted bytes are not checked
+		RawRencode.wrap(Arrays.copyOf(encoded, encoded.length - 1), false);
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		final RawRencodeCache cache = new RawRencodeCache(2);
+		final Map<Object, Object> a = header();
+		final Map<Object, Object> b = header();
+		final RawRencode raw = cache.get(a);
+		assertSame(raw, cache.get(a));
+		// equal, but not the same object
+		assertNotSame(raw, cache.get(b));
+		assertEquals(raw, cache.get(b));
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.getHits());
+
+		cache.get(a); // a is now more recently used than b
+		cache.get(Arrays.asList(1, 2));
+		assertEquals(1, cache.getEvictions());
+		assertSame(raw, cache.get(a));
+		assertEquals(2, cache.size());
+
+		a.put("version", 4);
+		cache.invalidate(a);
+		assertArrayEquals(encode(a, false), cache.get(a).toByteArray());
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeBinder}.
+ */
+public class RencodeBinderTest {
+
+	enum State {
+		SEEDING, PAUSED
+	}
+
+	static class Base {
+		long id;
+	}
+
+	static class Peer {
+		String address;
+		int port;
+	}
+
+	static class Torrent extends Base {
+		String name;
+		boolean active;
+		short priority;
+		int peers;
+		float ratio;
+		double progress;
+		Integer optional;
+		State state;
+		Peer peer;
+		List<Object> files;
+		@RencodeField("total_size")
+		long totalSize;
+		@RencodeField(ignore = true)
+		String cached = "default";
+		transient int ignored;
+	}
+
+	static class Node {
+		String label;
+		Node next;
+	}
+
+	private static Node chain(int length) {
+		Node head = null;
+		for (int i = length; i > 0; --i) {
+			final Node node = new Node();
+			node.label = "node" + i;
+			node.next = head;
+			head = node;
+		}
+		return head;
+	}
+
+	private final RencodeBinder binder = new RencodeBinder();
+	private ByteArrayOutputStream byteStream;
+	private RencodeOutputStream rEncode;
+
+	@Before
+	public void setUp() throws Exception {
+		byteStream = new ByteArrayOutputStream();
+		rEncode = new RencodeOutputStream(byteStream);
+	}
+
+	private RencodeInputStream decoder() {
+		return new RencodeInputStream(new ByteArrayInputStream(byteStream.toByteArray()), true);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final Torrent torrent = new Torrent();
+		torrent.id = Long.MAX_VALUE;
+		torrent.name = "ubuntu.iso";
+		torrent.active = true;
+		torrent.priority = -2;
+		torrent.peers = 1000;
+		torrent.ratio = 1.5f;
+		torrent.progress = 0.25;
+		torrent.optional = 7;
+		torrent.state = State.PAUSED;
+		torrent.peer = new Peer();
+		torrent.peer.address = "127.0.0.1";
+		torrent.peer.port = 6881;
+		torrent.files = new ArrayList<Object>(Arrays.asList("a", "b"));
+		torrent.totalSize = 1L << 40;
+		torrent.cached = "not written";
+		torrent.ignored = 5;
+		binder.write(rEncode, torrent);
+
+		final Map<Object, Object> map = decoder().readMap();
+		assertEquals(12, map.size());
+		assertEquals("ubuntu.iso", map.get("name"));
+		assertEquals(1L << 40, map.get("total_size"));
+
+		final Torrent decoded = binder.read(decoder(), Torrent.class);
+		assertEquals(torrent.id, decoded.id);
+		assertEquals(torrent.name, decoded.name);
+		assertEquals(torrent.active, decoded.active);
+		assertEquals(torrent.priority, decoded.priority);
+		assertEquals(torrent.peers, decoded.peers);
+		assertEquals(torrent.ratio, decoded.ratio, 0);
+		assertEquals(torrent.progress, decoded.progress, 0);
+		assertEquals(torrent.optional, decoded.optional);
+		assertEquals(torrent.state, decoded.state);
+		assertEquals(torrent.peer.address, decoded.peer.address);
+		assertEquals(torrent.peer.port, decoded.peer.port);
+		assertEquals(torrent.files, decoded.files);
+		assertEquals(torrent.totalSize, decoded.totalSize);
+		assertEquals("default", decoded.cached);
+		assertEquals(0, decoded.ignored);
+	}
+
+	@Test
+	public void testUnknownKeysAndNulls() throws Exception {
+		final Map<Object, Object> peer = new HashMap<>();
+		peer.put("address", null);
+		peer.put("port", 80);
+		peer.put("unknown", Arrays.asList(1, Arrays.asList("nested", 2.5d), new HashMap<>()));
+		peer.put(5, "integer key");
+		final Map<Object, Object> big = new HashMap<>();
+		for (int i = 0; i < 100; ++i) {
+			big.put("key" + i, new String(new char[i]).replace('\0', 'x'));
+		}
+		peer.put("big", big);
+		rEncode.writeMap(peer);
+		rEncode.writeObject(null);
+
+		final RencodeInputStream decoder = decoder();
+		final Peer decoded = binder.read(decoder, Peer.class);
+		assertNull(decoded.address);
+		assertEquals(80, decoded.port);
+		assertNull(binder.read(decoder, Peer.class));
+	}
+
+	@Test
+	public void testNestingLimit() throws Exception {
+		binder.write(rEncode, chain(5));
+		assertEquals("node5", binder.read(decoder(), Node.class).next.next.next.next.label);
+
+		final RencodeInputStream limited = decoder();
+		limited.setLimits(RencodeLimits.DEFAULT.withMaxDepth(4));
+		try {
+			binder.read(limited, Node.class);
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+	}
+
+	@Test
+	public void testListener() throws Exception {
+		final RencodeMetrics encoded = new RencodeMetrics();
+		rEncode.setListener(encoded);
+		final Torrent torrent = new Torrent();
+		torrent.peer = new Peer();
+		binder.write(rEncode, torrent);
+		binder.write(rEncode, null);
+
+		final RencodeMetrics decoded = new RencodeMetrics();
+		final RencodeInputStream in = decoder();
+		in.setListener(decoded);
+		in.readObject();
+		in.readObject();
+		assertArrayEquals(decoded.getValueCounts(), encoded.getValueCounts());
+		assertArrayEquals(decoded.getStringLengthHistogram(), encoded.getStringLengthHistogram());
+		assertArrayEquals(decoded.getDictSizeHistogram(), encoded.getDictSizeHistogram());
+		assertEquals(2, encoded.getTopLevelValues());
+	}
+}
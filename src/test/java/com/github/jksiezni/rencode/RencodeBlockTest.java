@@ -0,0 +1,236 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link RencodeBlockWriter}, {@link RencodeBlockReader} and
+ * {@link RencodeBlockFile}.
+ */
+public class RencodeBlockTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Map<Object, Object> message(int i) {
+		final Map<Object, Object> message = new LinkedHashMap<>();
+		message.put("timestamp", 1700000000000L + i);
+		message.put("severity", i % 4);
+		message.put("service", "checkout-service");
+		message.put("message", "request completed " + i);
+		message.put("tags", Arrays.asList("production", "eu-west", i % 7));
+		return message;
+	}
+
+	private static List<Object> messages(int count) {
+		final List<Object> values = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			values.add(message(i));
+		}
+		return values;
+	}
+
+	private static byte[] write(List<Object> values, int maxValues, byte[] dictionary) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (RencodeBlockWriter writer = new RencodeBlockWriter(bytes, maxValues, RencodeBlockWriter.DEFAULT_MAX_BLOCK_LENGTH,
+				dictionary, Deflater.DEFAULT_COMPRESSION)) {
+			for (Object value : values) {
+				writer.writeObject(value);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return the values as decoded from a plain stream
+	 */
+	private static List<Object> decoded(List<Object> values) throws IOException {
+		final List<Object> decoded = new ArrayList<>(values.size());
+		for (Object value : values) {
+			decoded.add(RencodeCodec.STRINGS.decode(RencodeCodec.BYTES.encode(value)));
+		}
+		return decoded;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final List<Object> values = messages(1000);
+		final byte[] container = write(values, 64, null);
+		long plain = 0;
+		for (Object value : values) {
+			plain += RencodeCodec.BYTES.encodedSize(value);
+		}
+		assertTrue(container.length < plain / 4);
+
+		final RencodeBlockReader reader = new RencodeBlockReader(new ByteArrayInputStream(container), true, null);
+		final List<Object> decoded = new ArrayList<>();
+		while (reader.hasNext()) {
+			decoded.add(reader.next());
+		}
+		assertEquals(15, reader.blockIndex());
+		assertEquals(decoded(values), decoded);
+		reader.close();
+	}
+
+	@Test
+	public void testEmptyContainer() throws IOException {
+		final byte[] container = write(new ArrayList<>(), 64, null);
+		assertEquals(RencodeBlockWriter.FILE_HEADER_LENGTH, container.length);
+		assertFalse(new RencodeBlockReader(new ByteArrayInputStream(container)).hasNext());
+	}
+
+	@Test
+	public void testPresetDictionary() throws IOException {
+		final byte[] dictionary = RencodeBlockWriter.trainDictionary(messages(100), 4096);
+		assertTrue(dictionary.length > 0);
+		// small blocks benefit most from a dictionary
+		final List<Object> values = messages(500);
+		final byte[] plain = write(values, 4, null);
+		final byte[] trained = write(values, 4, dictionary);
+		assertTrue(trained.length < plain.length);
+
+		final RencodeBlockReader reader = new RencodeBlockReader(new ByteArrayInputStream(trained), true, dictionary);
+		final List<Object> decoded = new ArrayList<>();
+		while (reader.hasNext()) {
+			decoded.add(reader.next());
+		}
+		assertEquals(decoded(values), decoded);
+
+		for (byte[] wrong : new byte[][] { null, Arrays.copyOf(dictionary, dictionary.length - 1) }) {
+			try {
+				new RencodeBlockReader(new ByteArrayInputStream(trained), true, wrong);
+				fail();
+			} catch (IOException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testSkipBlocks() throws IOException {
+		final List<Object> values = messages(100);
+		final RencodeBlockReader reader = new RencodeBlockReader(new ByteArrayInputStream(write(values, 30, null)), true, null);
+		assertEquals(30, reader.skipBlock());
+		assertEquals(30, reader.skipBlock());
+		reader.readObject();
+		assertEquals(29, reader.skipBlock());
+		final List<Object> last = reader.readBlock();
+		assertEquals(10, last.size());
+		assertEquals(3, reader.blockIndex());
+		assertEquals(decoded(values.subList(90, 100)), last);
+		assertEquals(-1, reader.skipBlock());
+		assertTrue(reader.readBlock().isEmpty());
+	}
+
+	@Test
+	public void testCorruptBlock() throws IOException {
+		final byte[] container = write(messages(10), 64, null);
+		container[container.length - 5] ^= 0x55;
+		try {
+			new RencodeBlockReader(new ByteArrayInputStream(container)).readObject();
+			fail();
+		} catch (IOException expected) {
+		}
+		try {
+			new RencodeBlockReader(new ByteArrayInputStream(Arrays.copyOf(container, container.length - 1))).readObject();
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testBlockBounds() throws IOException {
+		// incompressible blocks stay within the deflate bound
+		final byte[] noise = new byte[300000];
+		new Random(1).nextBytes(noise);
+		final byte[] container = write(Arrays.<Object> asList(noise, "end"), 64, null);
+		final RencodeBlockReader reader = new RencodeBlockReader(new ByteArrayInputStream(container));
+		assertArrayEquals(noise, (byte[]) reader.readObject());
+		assertArrayEquals(new byte[] { 'e', 'n', 'd' }, (byte[]) reader.readObject());
+
+		// a compressed length far beyond the bound fails before allocating
+		final byte[] corrupt = write(messages(10), 64, null);
+		RencodeBlockWriter.putInt(corrupt, RencodeBlockWriter.FILE_HEADER_LENGTH + 8, Integer.MAX_VALUE - 8);
+		try {
+			new RencodeBlockReader(new ByteArrayInputStream(corrupt)).readObject();
+			fail();
+		} catch (IOException expected) {
+			assertTrue(expected.getMessage().startsWith("Corrupt header"));
+		}
+	}
+
+	@Test
+	public void testFileLimits() throws IOException {
+		final File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(write(messages(100), 100, null));
+		}
+		try (RencodeBlockFile blocks = new RencodeBlockFile(file, true)) {
+			blocks.setMaxBlockLength(100);
+			try {
+				blocks.readBlock(0);
+				fail();
+			} catch (RencodeLimitException expected) {
+			}
+			blocks.setMaxBlockLength(RencodeBlockReader.DEFAULT_MAX_BLOCK_LENGTH);
+			blocks.setLimits(RencodeLimits.DEFAULT.withMaxContainerElements(3));
+			try {
+				blocks.readBlock(0);
+				fail();
+			} catch (RencodeLimitException expected) {
+			}
+			blocks.setLimits(RencodeLimits.DEFAULT);
+			assertEquals(100, blocks.readBlock(0).size());
+		}
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		final List<Object> values = messages(1000);
+		final File file = folder.newFile();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(write(values, 100, null));
+		}
+		try (RencodeBlockFile blocks = new RencodeBlockFile(file, true)) {
+			assertEquals(10, blocks.blockCount());
+			assertEquals(1000, blocks.valueCount());
+			assertEquals(0, blocks.blockOf(0));
+			assertEquals(0, blocks.blockOf(99));
+			assertEquals(1, blocks.blockOf(100));
+			assertEquals(9, blocks.blockOf(999));
+			assertEquals(decoded(values.subList(500, 600)), blocks.readBlock(5));
+			assertEquals(decoded(values).get(777), blocks.get(777));
+
+			final ForkJoinPool pool = new ForkJoinPool(4);
+			try {
+				assertEquals(decoded(values), blocks.readAll(pool));
+				assertEquals(decoded(values.subList(200, 500)), blocks.readBlocks(2, 5, pool));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+}
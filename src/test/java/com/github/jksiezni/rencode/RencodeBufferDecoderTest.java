@@ -0,0 +1,124 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link RencodeBufferDecoder} decodes exactly like
+ * {@link RencodeInputStream}.
+ */
+public class RencodeBufferDecoderTest {
+
+	private ByteArrayOutputStream byteStream;
+	private RencodeOutputStream rEncode;
+
+	@Before
+	public void setUp() throws Exception {
+		byteStream = new ByteArrayOutputStream();
+		rEncode = new RencodeOutputStream(byteStream);
+	}
+
+	private ByteBuffer heap() {
+		return ByteBuffer.wrap(byteStream.toByteArray());
+	}
+
+	private ByteBuffer direct() {
+		final byte[] bytes = byteStream.toByteArray();
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		return buffer;
+	}
+
+	private Object streamDecode() throws Exception {
+		return new RencodeInputStream(new ByteArrayInputStream(byteStream.toByteArray()), true).readObject();
+	}
+
+	private Map<Object, Object> payload() {
+		final List<Object> longList = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			longList.add(i * 1000);
+		}
+		final Map<Object, Object> map = new HashMap<>();
+		for (int i = 0; i < 30; ++i) {
+			map.put("key" + i, i);
+		}
+		map.put("list", longList);
+		map.put("string", "abc");
+		map.put("long string", new String(new char[100]).replace('\0', 'x'));
+		map.put("flags", Arrays.asList(true, false, null));
+		map.put(7, "seven");
+		return map;
+	}
+
+	@Test
+	public void testSameAsStream() throws Exception {
+		final Map<Object, Object> map = payload();
+		rEncode.writeObject(map);
+		final Object expected = streamDecode();
+		assertEquals(expected, new RencodeBufferDecoder(heap(), true).readObject());
+		assertEquals(expected, new RencodeBufferDecoder(direct(), true).readObject());
+	}
+
+	@Test
+	public void testNumbers() throws Exception {
+		rEncode.writeByte(-3);
+		rEncode.writeShort(-300);
+		rEncode.writeInt(Integer.MIN_VALUE);
+		rEncode.writeLong(Long.MIN_VALUE);
+		rEncode.writeFloat(1.5f);
+		rEncode.writeDouble(2.5d);
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(direct());
+		assertEquals(-3, decoder.readByte());
+		assertEquals(-300, decoder.readInt());
+		assertEquals(Integer.MIN_VALUE, decoder.readLong());
+		assertEquals(Long.MIN_VALUE, decoder.readLong());
+		assertEquals(1.5f, decoder.readFloat(), 0);
+		assertEquals(2.5d, decoder.readDouble(), 0);
+		assertFalse(decoder.hasRemaining());
+	}
+
+	@Test
+	public void testBytes() throws Exception {
+		rEncode.writeUTF("test0");
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(heap());
+		assertArrayEquals("test0".getBytes(Rencode.UTF_8), (byte[]) decoder.readObject());
+	}
+
+	@Test
+	public void testBufferPositionUntouched() throws Exception {
+		rEncode.writeUTF("skipped");
+		rEncode.writeUTF("test0");
+		final ByteBuffer buffer = heap();
+		buffer.position(8);
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(buffer);
+		assertEquals("test0", decoder.readUTF());
+		assertEquals(8, buffer.position());
+		assertTrue(decoder.position() == buffer.limit());
+	}
+
+	@Test(expected = EOFException.class)
+	public void testTruncated() throws Exception {
+		rEncode.writeLong(Long.MAX_VALUE);
+		final ByteBuffer buffer = heap();
+		buffer.limit(buffer.limit() - 1);
+		new RencodeBufferDecoder(buffer).readObject();
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeCodec}.
+ */
+public class RencodeCodecTest {
+
+	private static Map<Object, Object> message(int id) {
+		final Map<Object, Object> message = new HashMap<>();
+		message.put("id", id);
+		message.put("name", "message" + id);
+		message.put("tags", Arrays.asList("a", "b", id * 1000000L));
+		return message;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final byte[] bytes = RencodeCodec.STRINGS.encode(message(7));
+		final Object expected = new RencodeInputStream(new ByteArrayInputStream(bytes), true).readObject();
+		assertEquals(expected, RencodeCodec.STRINGS.decode(bytes));
+		assertArrayEquals("message7".getBytes(Rencode.UTF_8),
+				(byte[]) ((Map<?, ?>) RencodeCodec.BYTES.decode(bytes)).get("name"));
+	}
+
+	@Test
+	public void testTrailingBytes() throws IOException {
+		final byte[] bytes = { 1, 2 };
+		assertEquals((byte) 2, RencodeCodec.BYTES.decode(bytes, 1, 1));
+		try {
+			RencodeCodec.BYTES.decode(bytes);
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void testEncodedSize() throws IOException {
+		final List<Object> values = new ArrayList<>();
+		for (long v : new long[] { 0, 43, 44, -32, -33, 127, 128, -128, -129, 32767, 32768, -32769, Integer.MAX_VALUE,
+				Integer.MIN_VALUE - 1L, Long.MIN_VALUE }) {
+			values.add(v);
+		}
+		values.addAll(Arrays.asList(null, true, 'x', '\u20ac', 1.5f, 2.5, new BigInteger("123456789012345678901234567890"),
+				new BigDecimal("-1.25"), BigDecimal.TEN, ByteBuffer.wrap(new byte[100]), new StringBuilder("builder")));
+		for (int length : new int[] { 0, 63, 64, 9999, 10000 }) {
+			values.add(new String(new char[length]).replace('\0', 'a'));
+			values.add(new byte[length]);
+		}
+		values.add("\u00e9\u20ac\ud83d\ude00\ud800");
+		values.add(RawRencode.of(message(1)));
+		values.add(new ArrayList<>(values));
+		values.add(message(2));
+		final Map<Object, Object> large = new HashMap<>();
+		for (int i = 0; i < 100; ++i) {
+			large.put("key" + i, i);
+		}
+		values.add(large);
+		values.add(Collections.nCopies(70, "v"));
+
+		for (Object value : values) {
+			final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			final RencodeOutputStream out = new RencodeOutputStream(expected);
+			out.writeObject(value);
+			out.close();
+			assertEquals(String.valueOf(value), expected.size(), RencodeCodec.BYTES.encodedSize(value));
+			assertArrayEquals(expected.toByteArray(), RencodeCodec.BYTES.encode(value));
+		}
+	}
+
+	@Test
+	public void testEncodedSizeOfChars() throws IOException {
+		final char[] chars = { 0, 43, 44, 0x7F, 0x80, 0x7FFF, 0x8000, 0xFFFF };
+		final int[] sizes = { 1, 1, 2, 2, 3, 3, 3, 3 };
+		for (int i = 0; i < chars.length; ++i) {
+			final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			final RencodeOutputStream out = new RencodeOutputStream(expected);
+			out.writeObject(chars[i]);
+			out.close();
+			assertEquals(sizes[i], expected.size());
+			assertEquals(Integer.toHexString(chars[i]), sizes[i], RencodeCodec.BYTES.encodedSize(chars[i]));
+			assertArrayEquals(expected.toByteArray(), RencodeCodec.BYTES.encode(chars[i]));
+		}
+		assertEquals(2 + 3 * 64, RencodeCodec.BYTES.encodedSize(new String(new char[64]).replace('\0', '\uffff').toCharArray()));
+	}
+
+	@Test
+	public void testSharedAcrossThreads() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < 8; ++t) {
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws IOException {
+						for (int i = 0; i < 500; ++i) {
+							final byte[] bytes = RencodeCodec.STRINGS.encode(message(i));
+							final Map<?, ?> decoded = (Map<?, ?>) RencodeCodec.STRINGS.decode(bytes);
+							if (((Number) decoded.get("id")).intValue() != i || !decoded.get("name").equals("message" + i)) {
+								return false;
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertEquals(Boolean.TRUE, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
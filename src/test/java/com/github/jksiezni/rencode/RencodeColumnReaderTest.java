@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeColumnReader} and {@link RencodeColumn}.
+ */
+public class RencodeColumnReaderTest {
+
+	private static ByteBuffer encode(Object... records) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		for (Object record : records) {
+			out.writeObject(record);
+		}
+		out.close();
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	private static Map<Object, Object> record(Object... keysAndValues) {
+		final Map<Object, Object> record = new LinkedHashMap<>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			record.put(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		return record;
+	}
+
+	@Test
+	public void testColumns() throws IOException {
+		final Object[] records = new Object[10];
+		for (int i = 0; i < records.length; ++i) {
+			records[i] = record("id", 1000L * i, "price", i * 0.5, "region", i % 3 == 0 ? "eu" : "us", "ok", i % 2 == 0);
+		}
+		final RencodeColumnReader reader = new RencodeColumnReader(encode(records));
+		assertEquals(10, reader.readBatch());
+		assertEquals(4, reader.columns().size());
+
+		final RencodeColumn id = reader.column("id");
+		assertEquals(RencodeColumn.Type.LONG, id.type());
+		assertEquals(9000, id.longs()[9]);
+		assertEquals(RencodeColumn.Type.DOUBLE, reader.column("price").type());
+		assertEquals(4.5, reader.column("price").doubles()[9], 0);
+		assertEquals(1, reader.column("ok").longs()[0]);
+		assertEquals(0, reader.column("ok").longs()[1]);
+
+		final RencodeColumn region = reader.column("region");
+		assertEquals(RencodeColumn.Type.STRING, region.type());
+		assertArrayEquals(new String[] { "eu", "us" }, region.dictionary());
+		assertArrayEquals(new int[] { 0, 1, 1, 0 }, Arrays.copyOf(region.codes(), 4));
+		assertEquals("us", region.getString(5));
+		for (int i = 0; i < 10; ++i) {
+			assertFalse(id.isNull(i));
+		}
+
+		assertEquals(0, reader.readBatch());
+		assertFalse(reader.hasRemaining());
+	}
+
+	@Test
+	public void testNulls() throws IOException {
+		final RencodeColumnReader reader = new RencodeColumnReader(encode(
+				record("a", 1, "b", "x"),
+				record("a", null),
+				record("b", "y", "a", 3, "c", 2.5f),
+				record()));
+		assertEquals(4, reader.readBatch());
+		final RencodeColumn a = reader.column("a");
+		assertArrayEquals(new long[] { 1, 0, 3, 0 }, Arrays.copyOf(a.longs(), 4));
+		assertEquals(0b1010L, a.nulls()[0]);
+		assertEquals(0b1010L, reader.column("b").nulls()[0]);
+		assertNull(reader.column("b").getString(1));
+		// met first in the third record
+		final RencodeColumn c = reader.column("c");
+		assertEquals(0b1011L, c.nulls()[0]);
+		assertEquals(2.5, c.doubles()[2], 0);
+		assertNull(reader.column("d"));
+	}
+
+	@Test
+	public void testWidening() throws IOException {
+		final RencodeColumnReader reader = new RencodeColumnReader(encode(
+				record("v", 1), record("v", 300), record("v", 0.25), record("v", Long.MAX_VALUE)));
+		reader.readBatch();
+		final RencodeColumn v = reader.column("v");
+		assertEquals(RencodeColumn.Type.DOUBLE, v.type());
+		assertNull(v.longs());
+		assertEquals(1, v.doubles()[0], 0);
+		assertEquals(300, v.doubles()[1], 0);
+		assertEquals(0.25, v.doubles()[2], 0);
+		assertEquals(Long.MAX_VALUE, v.doubles()[3], 0);
+	}
+
+	@Test
+	public void testBatches() throws IOException {
+		final Object[] records = new Object[1000];
+		for (int i = 0; i < records.length; ++i) {
+			// more than DICT_FIXED_COUNT keys, terminated dicts
+			final Map<Object, Object> record = new LinkedHashMap<>();
+			for (int k = 0; k < 30; ++k) {
+				record.put("k" + k, k == 7 ? "s" + (i % 5) : (Object) (i * k));
+			}
+			records[i] = record;
+		}
+		final RencodeColumnReader reader = new RencodeColumnReader(encode(records), 300);
+		int total = 0;
+		for (int n; (n = reader.readBatch()) > 0;) {
+			final RencodeColumn k3 = reader.column("k3");
+			for (int row = 0; row < n; ++row) {
+				assertEquals(3L * (total + row), k3.longs()[row]);
+				assertEquals("s" + ((total + row) % 5), reader.column("k7").getString(row));
+			}
+			assertEquals(5, reader.column("k7").dictionary().length);
+			total += n;
+		}
+		assertEquals(1000, total);
+		assertEquals(0, reader.rowCount());
+		assertEquals(30, reader.columns().size());
+	}
+
+	@Test
+	public void testLargeDictionary() throws IOException {
+		final Object[] records = new Object[500];
+		for (int i = 0; i < records.length; ++i) {
+			records[i] = record("s", "value-" + (i % 200));
+		}
+		final RencodeColumnReader reader = new RencodeColumnReader(encode(records));
+		assertEquals(500, reader.readBatch());
+		final RencodeColumn s = reader.column("s");
+		assertEquals(200, s.dictionary().length);
+		for (int i = 0; i < records.length; ++i) {
+			assertEquals("value-" + (i % 200), s.getString(i));
+		}
+	}
+
+	@Test
+	public void testMalformed() throws IOException {
+		final Object[][] batches = {
+				{ Arrays.asList(1, 2) },
+				{ record("a", Arrays.asList(1)) },
+				{ record("a", 1), record("a", "x") },
+				{ record(1, 1) },
+		};
+		for (Object[] records : batches) {
+			try {
+				new RencodeColumnReader(encode(records)).readBatch();
+				fail();
+			} catch (IOException expected) {
+			}
+		}
+		final byte[] duplicate = { (byte) (Rencode.DICT_FIXED_START + 2), (byte) (Rencode.STR_FIXED_START + 1), 'a', 1,
+				(byte) (Rencode.STR_FIXED_START + 1), 'a', 2 };
+		try {
+			new RencodeColumnReader(ByteBuffer.wrap(duplicate)).readBatch();
+			fail();
+		} catch (IOException expected) {
+			assertTrue(expected.getMessage().contains("Duplicate"));
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.RetentionPolicy;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeEncoders}.
+ */
+public class RencodeEncodersTest {
+
+	private static final RencodeEncoder<UUID> UUID_ENCODER = new RencodeEncoder<UUID>() {
+		@Override
+		public void encode(RencodeOutputStream out, UUID value) throws IOException {
+			out.writeUTF(value.toString());
+		}
+	};
+
+	private static byte[] encode(Object value, RencodeEncoders encoders) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.setEncoders(encoders);
+		out.writeObject(value);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testCustomEncoder() throws IOException {
+		final UUID id = UUID.randomUUID();
+		final RencodeEncoders encoders = RencodeEncoders.DEFAULT.with(UUID.class, UUID_ENCODER);
+		final List<Object> value = Arrays.<Object> asList(1, id, Collections.singletonMap("id", id));
+		final List<Object> expected = Arrays.<Object> asList(1, id.toString(), Collections.singletonMap("id", id.toString()));
+		assertArrayEquals(RencodeCodec.BYTES.encode(expected), encode(value, encoders));
+
+		final RencodeCodec codec = RencodeCodec.BYTES.withEncoders(encoders);
+		final byte[] bytes = codec.encode(value);
+		assertArrayEquals(encode(value, encoders), bytes);
+		assertEquals(bytes.length, codec.encodedSize(value));
+		assertEquals(RencodeCodec.STRINGS.decode(RencodeCodec.BYTES.encode(expected)), RencodeCodec.STRINGS.decode(bytes));
+	}
+
+	@Test
+	public void testPrecedence() throws IOException {
+		final RencodeEncoder<Map<?, ?>> keys = new RencodeEncoder<Map<?, ?>>() {
+			@Override
+			public void encode(RencodeOutputStream out, Map<?, ?> value) throws IOException {
+				out.writeCollection(value.keySet());
+			}
+		};
+		final RencodeEncoder<TreeMap<?, ?>> size = new RencodeEncoder<TreeMap<?, ?>>() {
+			@Override
+			public void encode(RencodeOutputStream out, TreeMap<?, ?> value) throws IOException {
+				out.writeInt(value.size());
+			}
+		};
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final RencodeEncoders encoders = RencodeEncoders.DEFAULT.with(Map.class, (RencodeEncoder) keys)
+				.with(TreeMap.class, (RencodeEncoder) size);
+		final Map<Object, Object> map = new LinkedHashMap<>();
+		map.put("a", 1);
+		map.put("b", 2);
+		assertArrayEquals(RencodeCodec.BYTES.encode(Arrays.asList("a", "b")), encode(map, encoders));
+		assertArrayEquals(RencodeCodec.BYTES.encode(2), encode(new TreeMap<>(map), encoders));
+		// built-ins still apply to other types
+		assertArrayEquals(RencodeCodec.BYTES.encode("a"), encode("a", encoders));
+		assertSame(encoders.encoderFor(String.class), RencodeEncoders.DEFAULT.encoderFor(String.class));
+	}
+
+	@Test
+	public void testEnumsAndArrays() throws IOException {
+		final Object[] values = {
+				RetentionPolicy.RUNTIME,
+				new int[] { 1, -1000, 100000 },
+				new long[] { Long.MIN_VALUE, 0 },
+				new double[] { 1.5, -2.25 },
+				new boolean[] { true, false },
+				new short[] { 7, 300 },
+				new String[] { "x", null },
+				new Object[] { new int[70], RetentionPolicy.CLASS },
+		};
+		final Object[] expected = {
+				"RUNTIME",
+				Arrays.asList(1, -1000, 100000),
+				Arrays.asList(Long.MIN_VALUE, 0),
+				Arrays.asList(1.5, -2.25),
+				Arrays.asList(true, false),
+				Arrays.asList(7, 300),
+				Arrays.asList("x", null),
+				Arrays.asList(Collections.nCopies(70, 0), "CLASS"),
+		};
+		for (int i = 0; i < values.length; ++i) {
+			final byte[] bytes = RencodeCodec.BYTES.encode(values[i]);
+			assertArrayEquals(RencodeCodec.BYTES.encode(expected[i]), bytes);
+			assertArrayEquals(bytes, encode(values[i], RencodeEncoders.DEFAULT));
+			assertEquals(bytes.length, RencodeCodec.BYTES.encodedSize(values[i]));
+		}
+	}
+
+	@Test
+	public void testUnknownType() throws IOException {
+		final Object unknown = new Object();
+		for (Object value : new Object[] { unknown, Arrays.asList(1, unknown) }) {
+			try {
+				encode(value, RencodeEncoders.DEFAULT);
+				fail();
+			} catch (IllegalArgumentException expected) {
+			}
+			try {
+				RencodeCodec.BYTES.encodedSize(value);
+				fail();
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		final RencodeEncoders encoders = RencodeEncoders.DEFAULT.with(Object.class, new RencodeEncoder<Object>() {
+			@Override
+			public void encode(RencodeOutputStream out, Object value) throws IOException {
+				out.writeObject(null);
+			}
+		});
+		assertArrayEquals(new byte[] { Rencode.CHR_NONE }, encode(unknown, encoders));
+	}
+
+	@Test
+	public void testEntrySetSubclass() throws IOException {
+		// an anonymous AbstractMap resolves to the built-in map encoder
+		final Map<Object, Object> map = new AbstractMap<Object, Object>() {
+			@Override
+			public Set<Entry<Object, Object>> entrySet() {
+				return Collections.<Object, Object> singletonMap("k", "v").entrySet();
+			}
+		};
+		assertArrayEquals(RencodeCodec.BYTES.encode(Collections.singletonMap("k", "v")), encode(map, RencodeEncoders.DEFAULT));
+	}
+}
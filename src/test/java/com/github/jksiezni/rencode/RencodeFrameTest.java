@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeFrameWriter} and {@link RencodeFrameDecoder}.
+ */
+public class RencodeFrameTest {
+
+	private static class CountingStream extends ByteArrayOutputStream {
+		int writes;
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			++writes;
+			super.write(b, off, len);
+		}
+	}
+
+	private static List<Object> messages() {
+		final List<Object> messages = new ArrayList<>();
+		for (int i = 0; i < 200; ++i) {
+			final Map<Object, Object> request = new HashMap<>();
+			request.put("id", i);
+			request.put("method", "call" + i % 7);
+			request.put("args", Arrays.asList("x", i));
+			messages.add(request);
+		}
+		messages.add(null);
+		messages.add(new String(new char[5000]).replace('\0', 'p'));
+		return messages;
+	}
+
+	private static byte[] write(List<Object> messages, CountingStream out) throws IOException {
+		final RencodeFrameWriter writer = new RencodeFrameWriter(out);
+		for (Object message : messages) {
+			writer.writeFrame(message);
+		}
+		assertEquals(messages.size(), writer.pendingFrames());
+		assertEquals(0, out.size());
+		writer.flush();
+		assertEquals(0, writer.pendingFrames());
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testPipelinedChunks() throws Exception {
+		final List<Object> messages = messages();
+		final CountingStream out = new CountingStream();
+		final byte[] bytes = write(messages, out);
+		assertEquals(1, out.writes);
+
+		final Random random = new Random(1);
+		final RencodeFrameDecoder decoder = new RencodeFrameDecoder(true, 1 << 16);
+		final List<Object> decoded = new ArrayList<>();
+		for (int off = 0; off < bytes.length;) {
+			final int len = Math.min(bytes.length - off, 1 + random.nextInt(50));
+			decoder.feed(bytes, off, len);
+			off += len;
+			while (decoder.hasMessage()) {
+				decoded.add(decoder.nextMessage());
+			}
+		}
+		assertEquals(0, decoder.buffered());
+		assertEquals(messages.size(), decoded.size());
+		for (int i = 0; i < 200; ++i) {
+			assertEquals(i, ((Number) ((Map<?, ?>) decoded.get(i)).get("id")).intValue());
+		}
+		assertEquals(messages.get(201), decoded.get(201));
+	}
+
+	@Test
+	public void testPartialFrame() throws Exception {
+		final byte[] bytes = write(Arrays.<Object> asList("hello"), new CountingStream());
+		final RencodeFrameDecoder decoder = new RencodeFrameDecoder(true, 1 << 16);
+		decoder.feed(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+		assertFalse(decoder.hasMessage());
+		decoder.feed(bytes, bytes.length - 1, 1);
+		assertTrue(decoder.hasMessage());
+		assertEquals("hello", decoder.nextMessage());
+	}
+
+	@Test(expected = IOException.class)
+	public void testFrameTooLong() throws Exception {
+		final byte[] bytes = write(Arrays.<Object> asList(new String(new char[100])), new CountingStream());
+		final RencodeFrameDecoder decoder = new RencodeFrameDecoder(true, 10);
+		decoder.feed(bytes, 0, 4);
+	}
+
+	@Test
+	public void testFrameTooLongNotBuffered() throws Exception {
+		final byte[] bytes = write(Arrays.<Object> asList("ok", new String(new char[100])), new CountingStream());
+		final RencodeFrameDecoder decoder = new RencodeFrameDecoder(true, 10);
+		try {
+			decoder.feed(bytes, 0, bytes.length);
+			fail();
+		} catch (IOException expected) {
+		}
+		// the first frame and the header of the second one
+		assertEquals(2 * RencodeFrameWriter.HEADER_LENGTH + 3, decoder.buffered());
+		assertEquals("ok", decoder.nextMessage());
+	}
+}
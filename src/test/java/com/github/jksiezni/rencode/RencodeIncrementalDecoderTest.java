@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeIncrementalDecoder}.
+ */
+public class RencodeIncrementalDecoderTest {
+
+	private static byte[] encode() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		final Map<Object, Object> dict = new HashMap<>();
+		for (int i = 0; i < 30; ++i) {
+			dict.put("key" + i, Arrays.asList(i, -i * 1000, i * 100000L, i * 10000000000L, i / 3.0, "v" + i));
+		}
+		dict.put(7, new String(new char[300]).replace('\0', 'x'));
+		out.writeObject(dict);
+		out.writeObject(null);
+		out.writeObject(new ArrayList<>());
+		out.writeObject(new HashMap<>());
+		out.writeObject(Arrays.asList(1.5f, true, false, "", Arrays.asList(Arrays.asList())));
+		out.beginList();
+		for (int i = 0; i < 100; ++i) {
+			out.writeInt(i - 50);
+		}
+		out.beginDict();
+		out.writeUTF("nested");
+		out.writeObject(Arrays.asList(-1, Byte.MIN_VALUE, Short.MIN_VALUE));
+		out.end();
+		out.end();
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static List<Object> expected(byte[] data) throws IOException {
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(data), true);
+		final List<Object> values = new ArrayList<>();
+		while (in.available() > 0) {
+			values.add(in.readObject());
+		}
+		return values;
+	}
+
+	private static List<Object> drain(RencodeIncrementalDecoder decoder) {
+		final List<Object> values = new ArrayList<>();
+		while (decoder.hasValue()) {
+			values.add(decoder.nextValue());
+		}
+		return values;
+	}
+
+	@Test
+	public void testByteByByte() throws IOException {
+		final byte[] data = encode();
+		final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder(true);
+		final List<Object> values = new ArrayList<>();
+		for (int i = 0; i < data.length; ++i) {
+			decoder.feed(data, i, 1);
+			values.addAll(drain(decoder));
+		}
+		assertTrue(decoder.isIdle());
+		assertEquals(expected(data), values);
+	}
+
+	@Test
+	public void testRandomChunks() throws IOException {
+		final byte[] data = encode();
+		final List<Object> expected = expected(data);
+		final Random random = new Random(13);
+		for (int round = 0; round < 20; ++round) {
+			final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder(true);
+			int off = 0;
+			while (off < data.length) {
+				final int len = Math.min(data.length - off, 1 + random.nextInt(64));
+				final ByteBuffer chunk = ByteBuffer.allocateDirect(len);
+				chunk.put(data, off, len).flip();
+				decoder.feed(chunk);
+				assertFalse(chunk.hasRemaining());
+				off += len;
+			}
+			assertEquals(expected, drain(decoder));
+		}
+	}
+
+	@Test
+	public void testPartialValue() throws IOException {
+		final byte[] data = { (byte) (Rencode.LIST_FIXED_START + 2), (byte) Rencode.CHR_INT4, 0, 0, 1 };
+		final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+		decoder.feed(data, 0, data.length);
+		assertFalse(decoder.hasValue());
+		assertFalse(decoder.isIdle());
+		decoder.feed(new byte[] { 0, '3', ':', 'a', 'b' }, 0, 5);
+		assertFalse(decoder.hasValue());
+		decoder.feed(new byte[] { 'c', (byte) Rencode.CHR_NONE }, 0, 2);
+		final List<?> list = (List<?>) decoder.nextValue();
+		assertEquals(256, list.get(0));
+		assertArrayEquals("abc".getBytes(Rencode.UTF_8), (byte[]) list.get(1));
+		assertNull(decoder.nextValue());
+		assertTrue(decoder.isIdle());
+	}
+
+	@Test
+	public void testInvalidInput() throws IOException {
+		final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+		try {
+			decoder.feed(new byte[] { (byte) Rencode.CHR_TERM }, 0, 1);
+			fail();
+		} catch (IOException expected) {
+		}
+		try {
+			decoder.feed(new byte[] { (byte) Rencode.CHR_TRUE }, 0, 1);
+			fail();
+		} catch (IOException expected) {
+		}
+		decoder.reset();
+		decoder.feed(new byte[] { (byte) Rencode.CHR_TRUE }, 0, 1);
+		assertEquals(Boolean.TRUE, decoder.nextValue());
+	}
+
+	@Test
+	public void testBigNumbers() throws IOException {
+		final Object[] numbers = { new BigInteger("123456789012345678901234567890"), new BigInteger("-98765432109876543210"),
+				new BigDecimal("-1.25"), new BigDecimal("1E+50"), new BigDecimal("3.14159265358979323846264338327950288419716939937510") };
+		for (boolean raw : new boolean[] { false, true }) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final RencodeOutputStream out = new RencodeOutputStream(bytes);
+			out.setRawBigNumbers(raw);
+			for (Object number : numbers) {
+				out.writeObject(number);
+			}
+			out.writeObject(Arrays.asList(numbers));
+			out.close();
+			final byte[] data = bytes.toByteArray();
+			final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder(true);
+			final List<Object> values = new ArrayList<>();
+			for (int i = 0; i < data.length; ++i) {
+				decoder.feed(data, i, 1);
+				values.addAll(drain(decoder));
+			}
+			assertEquals(expected(data), values);
+			assertEquals(numbers.length + 1, values.size());
+			assertEquals(0, ((BigDecimal) numbers[4]).compareTo((BigDecimal) values.get(4)));
+		}
+	}
+}
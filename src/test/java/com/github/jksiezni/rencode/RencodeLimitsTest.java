@@ -0,0 +1,451 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeLimits}, enforced by {@link RencodeInputStream},
+ * {@link RencodeIncrementalDecoder}, {@link RencodePullParser} and
+ * {@link RencodeBufferDecoder}.
+ */
+public class RencodeLimitsTest {
+
+	private static byte[] encode(Object value) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static RencodeInputStream stream(byte[] data, RencodeLimits limits) {
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(data), true);
+		in.setLimits(limits);
+		return in;
+	}
+
+	/**
+	 * Pulls all events, reading every string, or skipping every container.
+	 */
+	private static void pull(byte[] data, RencodeLimits limits, boolean skip) throws IOException {
+		final RencodePullParser parser = new RencodePullParser(new ByteArrayInputStream(data));
+		parser.setLimits(limits);
+		while (parser.hasNext()) {
+			final RencodePullParser.Event event = parser.next();
+			if (event == RencodePullParser.Event.BYTES) {
+				parser.getBytes();
+			} else if (skip && (event == RencodePullParser.Event.START_LIST || event == RencodePullParser.Event.START_DICT)) {
+				parser.skipValue();
+			}
+		}
+	}
+
+	private static RencodeBufferDecoder buffer(byte[] data, RencodeLimits limits) {
+		final RencodeBufferDecoder decoder = new RencodeBufferDecoder(ByteBuffer.wrap(data), true);
+		decoder.setLimits(limits);
+		return decoder;
+	}
+
+	/**
+	 * Decodes or skips the value with every decoder, expecting each to fail
+	 * on a limit.
+	 */
+	private static void assertExceedsEverywhere(byte[] data, RencodeLimits limits) throws IOException {
+		for (int i = 0; i < 8; ++i) {
+			try {
+				switch (i) {
+				case 0:
+					stream(data, limits).readObject();
+					break;
+				case 1:
+					stream(data, limits).skipValue();
+					break;
+				case 2:
+					pull(data, limits, false);
+					break;
+				case 3:
+					pull(data, limits, true);
+					break;
+				case 4:
+					final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+					decoder.setLimits(limits);
+					decoder.feed(data, 0, data.length);
+					break;
+				case 5:
+					buffer(data, limits).readObject();
+					break;
+				case 6:
+					buffer(data, limits).skipValue();
+					break;
+				default:
+					RencodeCodec.BYTES.withLimits(limits).decode(data);
+					break;
+				}
+				fail("decoder " + i);
+			} catch (RencodeLimitException expected) {
+			}
+		}
+	}
+
+	private static Object nested(int depth) {
+		Object value = 1;
+		for (int i = 0; i < depth; ++i) {
+			value = Collections.singletonList(value);
+		}
+		return value;
+	}
+
+	private static List<Integer> range(int size) {
+		final List<Integer> list = new ArrayList<>(size);
+		for (int i = 0; i < size; ++i) {
+			list.add(i);
+		}
+		return list;
+	}
+
+	@Test
+	public void testForgedStringLengthFailsBeforeAllocation() throws IOException {
+		final byte[] data = "2000000000:abc".getBytes("US-ASCII");
+		try {
+			stream(data, RencodeLimits.DEFAULT).readObject();
+			fail();
+		} catch (RencodeLimitException e) {
+			// checked once the whole prefix is read, before the string
+			assertEquals(11, e.getPosition());
+		}
+		try {
+			final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+			decoder.feed(data, 0, data.length);
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+	}
+
+	@Test
+	public void testShortStrings() throws IOException {
+		final RencodeLimits limits = RencodeLimits.DEFAULT.withMaxStringLength(5);
+		final byte[] fixed = encode("abcdefghijklmnopqrst");
+		assertEquals(Rencode.STR_FIXED_START + 20, fixed[0] & 0xFF);
+		final byte[] prefixed = "9:abcdefghi".getBytes("US-ASCII");
+		for (byte[] data : Arrays.asList(fixed, prefixed, encode(Collections.singletonList("abcdef")),
+				encode(Collections.singletonMap("abcdef", 1)))) {
+			assertExceedsEverywhere(data, limits);
+		}
+		final byte[] keyed = encode(Collections.singletonMap("abcdef", 1));
+		try {
+			final RencodeInputStream in = stream(keyed, limits);
+			in.setKeyCache(new KeyCache());
+			in.readObject();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+		try {
+			stream(prefixed, limits).readUTF();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+
+		// a string of exactly the limit is accepted
+		final byte[] data = encode("abcde");
+		assertEquals("abcde", stream(data, limits).readObject());
+		assertEquals("abcde", buffer(data, limits).readObject());
+		pull(data, limits, false);
+	}
+
+	@Test
+	public void testBufferDecoder() throws IOException {
+		final RencodeLimits depth = RencodeLimits.DEFAULT.withMaxDepth(10);
+		assertArrayEquals(encode(nested(10)), encode(buffer(encode(nested(10)), depth).readObject()));
+		assertExceedsEverywhere(encode(nested(11)), depth);
+		// the default depth still protects the call stack
+		try {
+			buffer(encode(nested(200)), RencodeLimits.UNLIMITED).readObject();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+
+		final RencodeLimits elements = RencodeLimits.DEFAULT.withMaxContainerElements(100);
+		assertEquals(100, buffer(encode(range(100)), elements).readList().size());
+		final Map<Object, Object> dict = new HashMap<>();
+		for (int i = 0; i < 101; ++i) {
+			dict.put(i, i);
+		}
+		assertExceedsEverywhere(encode(range(101)), elements);
+		assertExceedsEverywhere(encode(dict), elements);
+
+		final RencodeLimits total = RencodeLimits.DEFAULT.withMaxTotalBytes(300);
+		final byte[] large = encode(range(200));
+		try {
+			buffer(large, total).readObject();
+			fail();
+		} catch (RencodeLimitException e) {
+			assertTrue(e.getPosition() > 300);
+		}
+		assertExceedsEverywhere(large, total);
+		// each top-level value has its own budget
+		final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+		final byte[] small = encode(range(50));
+		for (int i = 0; i < 3; ++i) {
+			concatenated.write(small);
+		}
+		final RencodeBufferDecoder decoder = buffer(concatenated.toByteArray(), total);
+		assertEquals(50, decoder.readList().size());
+		decoder.skipValue();
+		assertArrayEquals(small, encode(decoder.readObject()));
+		assertFalse(decoder.hasRemaining());
+
+		// framed messages are decoded with the limits of the frame decoder
+		final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		final RencodeFrameWriter writer = new RencodeFrameWriter(frames);
+		writer.writeFrame(range(101));
+		writer.flush();
+		final RencodeFrameDecoder frameDecoder = new RencodeFrameDecoder();
+		frameDecoder.setLimits(elements);
+		frameDecoder.feed(frames.toByteArray(), 0, frames.size());
+		try {
+			frameDecoder.nextMessage();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+	}
+
+	@Test
+	public void testLongStringIsReadInChunks() throws IOException {
+		final byte[] bytes = new byte[200000];
+		Arrays.fill(bytes, (byte) 'x');
+		final byte[] data = encode(bytes);
+		assertEquals(bytes.length, ((byte[]) new RencodeInputStream(new ByteArrayInputStream(data)).readObject()).length);
+		assertEquals(bytes.length, ((String) stream(data, RencodeLimits.DEFAULT).readObject()).length());
+
+		// a declared length within limits, but not backed by input
+		final byte[] truncated = Arrays.copyOf(data, 1000);
+		try {
+			stream(truncated, RencodeLimits.UNLIMITED).readObject();
+			fail();
+		} catch (IOException expected) {
+		}
+
+		final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+		for (int off = 0; off < data.length; off += 777) {
+			decoder.feed(data, off, Math.min(777, data.length - off));
+		}
+		assertEquals(bytes.length, ((byte[]) decoder.nextValue()).length);
+	}
+
+	@Test
+	public void testDepth() throws IOException {
+		final RencodeLimits limits = RencodeLimits.DEFAULT.withMaxDepth(10);
+		assertArrayEquals(encode(nested(10)), encode(stream(encode(nested(10)), limits).readObject()));
+		for (byte[] data : Arrays.asList(encode(nested(11)), encode(nested(200)))) {
+			try {
+				stream(data, limits).readObject();
+				fail();
+			} catch (RencodeLimitException expected) {
+			}
+			try {
+				stream(data, limits).skipValue();
+				fail();
+			} catch (RencodeLimitException expected) {
+			}
+			try {
+				final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+				decoder.setLimits(limits);
+				decoder.feed(data, 0, data.length);
+				fail();
+			} catch (RencodeLimitException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testNestedErrorInFixedDictPropagates() throws IOException {
+		final byte[] data = encode(Collections.singletonMap("key", nested(200)));
+		try {
+			stream(data, RencodeLimits.DEFAULT).readMap();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+	}
+
+	@Test
+	public void testContainerElements() throws IOException {
+		final RencodeLimits limits = RencodeLimits.DEFAULT.withMaxContainerElements(100);
+		assertArrayEquals(encode(range(100)), encode(stream(encode(range(100)), limits).readList()));
+		final byte[] data = encode(range(101));
+		try {
+			stream(data, limits).readObject();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+		try {
+			stream(data, limits).skipValue();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+		try {
+			stream(data, limits).readIntArray();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+		try {
+			final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+			decoder.setLimits(limits);
+			decoder.feed(data, 0, data.length);
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+
+		final Map<Object, Object> dict = new HashMap<>();
+		for (int i = 0; i < 101; ++i) {
+			dict.put(i, i);
+		}
+		try {
+			stream(encode(dict), limits).readObject();
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+	}
+
+	@Test
+	public void testTotalBytesPerTopLevelValue() throws IOException {
+		final RencodeLimits limits = RencodeLimits.DEFAULT.withMaxTotalBytes(300);
+		final byte[] small = encode(range(50));
+		final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+		for (int i = 0; i < 10; ++i) {
+			concatenated.write(small);
+		}
+		// the limit applies to each value, not to the whole stream
+		final RencodeInputStream in = stream(concatenated.toByteArray(), limits);
+		for (int i = 0; i < 10; ++i) {
+			assertArrayEquals(small, encode(in.readObject()));
+		}
+		assertEquals(10 * small.length, in.getPosition());
+
+		final byte[] large = encode(range(200));
+		assertTrue(large.length > 300);
+		try {
+			stream(large, limits).readObject();
+			fail();
+		} catch (RencodeLimitException e) {
+			assertEquals(301, e.getPosition());
+		}
+		try {
+			final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+			decoder.setLimits(limits);
+			decoder.feed(large, 0, large.length);
+			fail();
+		} catch (RencodeLimitException expected) {
+		}
+	}
+
+	@Test
+	public void testTotalBytesForEveryRead() throws IOException {
+		final RencodeLimits limits = RencodeLimits.DEFAULT.withMaxTotalBytes(300);
+		final Map<Object, Object> map = new HashMap<>();
+		for (int i = 0; i < 100; ++i) {
+			map.put("key" + i, i);
+		}
+		final byte[] largeMap = encode(map);
+		final byte[] largeList = encode(range(200));
+		final byte[][] inputs = { largeMap, largeList, largeList, largeList, largeMap };
+		for (int i = 0; i < inputs.length; ++i) {
+			final RencodeInputStream in = stream(inputs[i], limits);
+			try {
+				switch (i) {
+				case 0:
+					in.readMap();
+					break;
+				case 1:
+					in.readList();
+					break;
+				case 2:
+					in.readLongArray();
+					break;
+				case 3:
+					in.skipValue();
+					break;
+				default:
+					new RencodeBinder().read(in, Object.class);
+					break;
+				}
+				fail("read " + i);
+			} catch (RencodeLimitException e) {
+				assertEquals(301, e.getPosition());
+			}
+		}
+		// each read is a top-level value of its own
+		final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+		final byte[] small = encode(range(50));
+		for (int i = 0; i < 3; ++i) {
+			concatenated.write(small);
+		}
+		final RencodeInputStream in = stream(concatenated.toByteArray(), limits);
+		assertEquals(50, in.readList().size());
+		assertEquals(50, in.readIntArray().length);
+		in.skipValue();
+		assertEquals(3 * small.length, in.getPosition());
+	}
+
+	@Test
+	public void testPullParser() throws IOException {
+		final Map<Object, Object> dict = new HashMap<>();
+		for (int i = 0; i < 101; ++i) {
+			dict.put(i, i);
+		}
+		final Object[] values = { nested(11), range(101), dict, range(200), "2000000000:abc" };
+		final RencodeLimits[] limits = { RencodeLimits.DEFAULT.withMaxDepth(10),
+				RencodeLimits.DEFAULT.withMaxContainerElements(100), RencodeLimits.DEFAULT.withMaxContainerElements(100),
+				RencodeLimits.DEFAULT.withMaxTotalBytes(300), RencodeLimits.DEFAULT };
+		for (int i = 0; i < values.length; ++i) {
+			final byte[] data = i == values.length - 1 ? ((String) values[i]).getBytes("US-ASCII") : encode(values[i]);
+			for (boolean skip : new boolean[] { false, true }) {
+				try {
+					pull(data, limits[i], skip);
+					fail("value " + i + (skip ? ", skipped" : ""));
+				} catch (RencodeLimitException expected) {
+				}
+			}
+			if (i < values.length - 1) {
+				pull(data, RencodeLimits.UNLIMITED, false);
+			}
+		}
+		// each top-level value has its own total bytes budget
+		final ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+		for (int i = 0; i < 10; ++i) {
+			concatenated.write(encode(range(50)));
+		}
+		pull(concatenated.toByteArray(), RencodeLimits.DEFAULT.withMaxTotalBytes(300), false);
+
+		// long strings are read as their bytes arrive
+		final byte[] bytes = new byte[200000];
+		Arrays.fill(bytes, (byte) 'x');
+		final byte[] data = encode(bytes);
+		final RencodePullParser parser = new RencodePullParser(new ByteArrayInputStream(data));
+		parser.next();
+		assertArrayEquals(bytes, parser.getBytes());
+		try {
+			pull(Arrays.copyOf(data, 1000), RencodeLimits.UNLIMITED, false);
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link RencodeMetrics} and the stream instrumentation.
+ */
+public class RencodeMetricsTest {
+
+	private static Map<Object, Object> payload() {
+		final List<Object> longList = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			longList.add(i);
+		}
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("short", "abc");
+		map.put("long", new String(new char[200]).replace('\0', 'x'));
+		map.put("list", longList);
+		map.put("nested", Arrays.asList(Arrays.asList(1.5, true)));
+		return map;
+	}
+
+	private static void check(RencodeMetrics metrics, int bytes) {
+		assertEquals(bytes, metrics.getBytes());
+		assertEquals(2, metrics.getTopLevelValues());
+		assertTrue(metrics.getTotalNanos() > 0);
+		assertEquals(3, metrics.getMaxDepth());
+		final long[] values = metrics.getValueCounts();
+		assertEquals(2, values[Rencode.DICT_FIXED_START + 4]);
+		assertEquals(2, values[Rencode.CHR_LIST]);
+		assertEquals(2, values['2']); // "200:" prefix
+		assertEquals(2, values[Rencode.CHR_FLOAT64]);
+		assertEquals(2, values[Rencode.INT_POS_FIXED_START + 7]);
+		assertEquals(2 * 56, values[Rencode.CHR_INT1]); // 44..99
+		assertEquals(2, metrics.getStringFixedMisses());
+		assertEquals(2, metrics.getListFixedMisses());
+		assertEquals(0, metrics.getDictFixedMisses());
+		// "short", "long", "list" and "nested" have 4 to 7 bytes, "abc" 2 to 3
+		assertEquals(2 * 4, metrics.getStringLengthHistogram()[3]);
+		assertEquals(2, metrics.getStringLengthHistogram()[2]);
+		assertEquals(2, metrics.getListSizeHistogram()[7]);
+	}
+
+	@Test
+	public void testEncodeAndDecode() throws IOException {
+		final RencodeMetrics encoded = new RencodeMetrics();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes, true);
+		out.setListener(encoded);
+		out.writeObject(payload());
+		out.writeObject(payload());
+		out.flush();
+		check(encoded, bytes.size());
+
+		final RencodeMetrics decoded = new RencodeMetrics();
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.setListener(decoded);
+		in.readObject();
+		in.readObject();
+		check(decoded, bytes.size());
+		assertArrayEquals(encoded.getValueCounts(), decoded.getValueCounts());
+
+		in.setListener(null);
+		decoded.reset();
+		assertEquals(0, decoded.getBytes());
+		assertEquals(0, decoded.getValueCounts()[Rencode.CHR_LIST]);
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		final RencodeMetrics metrics = new RencodeMetrics();
+		metrics.onBytes(42);
+		final ObjectName name = metrics.register("test");
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertEquals(42L, server.getAttribute(name, "Bytes"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void testRawBigDecimal() throws IOException {
+		final RencodeMetrics encoded = new RencodeMetrics();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final RencodeOutputStream out = new RencodeOutputStream(bytes);
+		out.setRawBigNumbers(true);
+		out.setListener(encoded);
+		out.writeObject(Arrays.asList(new BigDecimal("1.5"), new BigDecimal("1E-300")));
+		out.flush();
+
+		final RencodeMetrics decoded = new RencodeMetrics();
+		final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.setListener(decoded);
+		in.readObject();
+		for (RencodeMetrics metrics : Arrays.asList(encoded, decoded)) {
+			final long[] values = metrics.getValueCounts();
+			assertEquals(2, values[Rencode.CHR_EXT_BIGDEC]);
+			long total = 0;
+			for (long count : values) {
+				total += count;
+			}
+			// the list and the two big decimals, not their scales
+			assertEquals(3, total);
+		}
+	}
+}
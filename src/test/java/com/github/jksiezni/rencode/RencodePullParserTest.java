@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jksiezni.rencode.RencodePullParser.Event;
+
+/**
+ * Tests for {@link RencodePullParser}.
+ */
+public class RencodePullParserTest {
+
+	private ByteArrayOutputStream byteStream;
+	private RencodeOutputStream rEncode;
+
+	@Before
+	public void setUp() throws Exception {
+		byteStream = new ByteArrayOutputStream();
+		rEncode = new RencodeOutputStream(byteStream);
+	}
+
+	private RencodePullParser parser() {
+		return new RencodePullParser(new ByteArrayInputStream(byteStream.toByteArray()), true);
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		final Map<Object, Object> map = new LinkedHashMap<>();
+		map.put("a", Arrays.asList(1, -1, 1000, Long.MIN_VALUE));
+		map.put("b", 2.5d);
+		map.put(3, true);
+		map.put("c", null);
+		rEncode.writeObject(map);
+
+		final RencodePullParser parser = parser();
+		assertEquals(Event.START_DICT, parser.next());
+		assertEquals(Event.STRING, parser.next());
+		assertTrue(parser.isKey());
+		assertEquals("a", parser.getString());
+		assertEquals(Event.START_LIST, parser.next());
+		assertFalse(parser.isKey());
+		assertEquals(Event.INT, parser.next());
+		assertEquals(1, parser.getInt());
+		assertEquals(Event.INT, parser.next());
+		assertEquals(-1, parser.getInt());
+		assertEquals(Event.INT, parser.next());
+		assertEquals(1000, parser.getInt());
+		assertEquals(Event.INT, parser.next());
+		assertEquals(Long.MIN_VALUE, parser.getLong());
+		assertEquals(Event.END, parser.next());
+		assertEquals(Event.STRING, parser.next());
+		assertEquals(Event.FLOAT, parser.next());
+		assertEquals(2.5d, parser.getDouble(), 0);
+		assertEquals(Event.INT, parser.next());
+		assertTrue(parser.isKey());
+		assertEquals(Event.BOOLEAN, parser.next());
+		assertTrue(parser.getBoolean());
+		assertEquals(Event.STRING, parser.next());
+		assertEquals(Event.NONE, parser.next());
+		assertEquals(Event.END, parser.next());
+		assertFalse(parser.hasNext());
+	}
+
+	@Test
+	public void testTerminatedContainers() throws Exception {
+		final List<Object> list = new ArrayList<>();
+		final Map<Object, Object> map = new LinkedHashMap<>();
+		for (int i = 0; i < 100; ++i) {
+			list.add(i);
+			map.put("key" + i, i);
+		}
+		rEncode.writeCollection(list);
+		rEncode.writeMap(map);
+
+		final RencodePullParser parser = parser();
+		assertEquals(Event.START_LIST, parser.next());
+		for (int i = 0; i < 100; ++i) {
+			assertEquals(Event.INT, parser.next());
+			assertEquals(i, parser.getInt());
+		}
+		assertEquals(Event.END, parser.next());
+		assertEquals(Event.START_DICT, parser.next());
+		int entries = 0;
+		while (parser.next() != Event.END) {
+			assertEquals("key" + entries, parser.getString());
+			parser.next();
+			assertEquals(entries++, parser.getInt());
+		}
+		assertEquals(100, entries);
+		assertFalse(parser.hasNext());
+	}
+
+	@Test
+	public void testSkipValue() throws Exception {
+		final List<Object> nested = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			nested.add(Arrays.asList("x", new String(new char[100]).replace('\0', 'y'), 2.5f, Long.MAX_VALUE));
+		}
+		final Map<Object, Object> map = new LinkedHashMap<>();
+		map.put("skipped", nested);
+		map.put("long", new String(new char[200]).replace('\0', 'z'));
+		map.put("wanted", 42);
+		rEncode.writeObject(map);
+
+		final RencodePullParser parser = parser();
+		assertEquals(Event.START_DICT, parser.next());
+		assertEquals(Event.STRING, parser.next());
+		assertEquals(Event.START_LIST, parser.next());
+		parser.skipValue();
+		assertEquals(1, parser.getDepth());
+		assertEquals(Event.STRING, parser.next());
+		assertEquals("long", parser.getString());
+		assertEquals(Event.STRING, parser.next());
+		assertEquals(200, parser.getLength());
+		// contents are skipped by the next call
+		assertEquals(Event.STRING, parser.next());
+		assertEquals("wanted", parser.getString());
+		assertEquals(Event.INT, parser.next());
+		assertEquals(42, parser.getInt());
+		assertEquals(Event.END, parser.next());
+	}
+
+	@Test
+	public void testBigNumbers() throws Exception {
+		final Object[] numbers = { new BigInteger("123456789012345678901234567890"), new BigInteger("-98765432109876543210"),
+				new BigDecimal("-1.25"), new BigDecimal("1E+50"), new BigDecimal("3.14159265358979323846264338327950288419716939937510") };
+		for (boolean raw : new boolean[] { false, true }) {
+			setUp();
+			rEncode.setRawBigNumbers(raw);
+			for (Object number : numbers) {
+				rEncode.writeObject(number);
+			}
+			rEncode.writeObject(Arrays.asList(Arrays.asList(numbers), "after"));
+			final byte[] data = byteStream.toByteArray();
+			final RencodeInputStream in = new RencodeInputStream(new ByteArrayInputStream(data));
+
+			final RencodePullParser parser = parser();
+			for (int i = 0; i < numbers.length; ++i) {
+				assertEquals(Event.BIG_NUMBER, parser.next());
+				assertEquals(in.readObject(), parser.getBigNumber());
+			}
+			assertEquals(Event.START_LIST, parser.next());
+			assertEquals(Event.START_LIST, parser.next());
+			parser.skipValue();
+			assertEquals(Event.STRING, parser.next());
+			assertEquals("after", parser.getString());
+			assertEquals(Event.END, parser.next());
+			assertFalse(parser.hasNext());
+		}
+	}
+}
@@ -3,14 +3,23 @@
  */
 package com.github.jksiezni.rencode;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -146,4 +155,268 @@ public class RencodeTest {
 		assertEquals(null, decoder().readObject());
 	}
 
+	@Test
+	public void testBufferedOutput() throws Exception {
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("testA", Long.MIN_VALUE);
+		map.put("testB", Arrays.asList(1, -1, 300, Short.MIN_VALUE, Integer.MIN_VALUE, 1.5f, 2.5d));
+		map.put(1, new String(new char[100]).replace('\0', 'x'));
+		rEncode.writeObject(map);
+
+		final ByteArrayOutputStream bufferedBytes = new ByteArrayOutputStream();
+		final RencodeOutputStream buffered = new RencodeOutputStream(bufferedBytes, true);
+		buffered.writeObject(map);
+		assertEquals(0, bufferedBytes.size());
+		buffered.flush();
+		assertArrayEquals(byteStream.toByteArray(), bufferedBytes.toByteArray());
+	}
+
+	@Test
+	public void testStreamingList() throws Exception {
+		final ArrayList<Object> list = new ArrayList<>();
+		rEncode.beginList();
+		for (int i = 0; i < 3; ++i) {
+			rEncode.writeUTF("row" + i);
+			list.add("row" + i);
+		}
+		rEncode.beginList();
+		rEncode.end();
+		list.add(new ArrayList<>());
+		rEncode.end();
+		assertEquals(0, rEncode.getDepth());
+		assertEquals(list, decoder().readList());
+		assertEquals(list, decoder().readObject());
+	}
+
+	@Test
+	public void testStreamingDict() throws Exception {
+		final Map<Object, Object> map = new HashMap<>();
+		rEncode.beginDict();
+		for (int i = 0; i < 3; ++i) {
+			rEncode.writeUTF("key" + i);
+			rEncode.writeUTF("value" + i);
+			map.put("key" + i, "value" + i);
+		}
+		rEncode.end();
+		assertEquals(map, decoder().readMap());
+		assertEquals(map, decoder().readObject());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnbalancedEnd() throws Exception {
+		rEncode.beginList();
+		rEncode.end();
+		rEncode.end();
+	}
+
+	@Test
+	public void testDictWithoutValue() throws Exception {
+		rEncode.beginDict();
+		rEncode.writeUTF("key");
+		// nested values count as a single item of the dict
+		rEncode.writeCollection(Arrays.asList("a", "b", "c"));
+		rEncode.writeUTF("array");
+		rEncode.writeObject(new boolean[] { true, false, true });
+		rEncode.writeUTF("dangling");
+		try {
+			rEncode.end();
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+		rEncode.beginList();
+		rEncode.writeUTF("x");
+		rEncode.end();
+		rEncode.end();
+		assertEquals(0, rEncode.getDepth());
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("key", Arrays.asList("a", "b", "c"));
+		map.put("array", Arrays.asList(true, false, true));
+		map.put("dangling", Arrays.asList("x"));
+		assertEquals(map, decoder().readObject());
+	}
+
+	@Test
+	public void testDictWithRawBigDecimal() throws Exception {
+		rEncode.setRawBigNumbers(true);
+		rEncode.beginDict();
+		rEncode.writeUTF("small");
+		rEncode.writeObject(new BigDecimal("1.5"));
+		rEncode.writeUTF("scaled");
+		rEncode.writeObject(new BigDecimal("1E-300"));
+		rEncode.end();
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("small", new BigDecimal("1.5"));
+		map.put("scaled", new BigDecimal("1E-300"));
+		assertEquals(map, decoder().readObject());
+	}
+
+	@Test
+	public void testPrimitiveArrays() throws Exception {
+		final int[] ints = { 0, 1, -1, 100, -100, 1000, -1000, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		final long[] longs = new long[100];
+		for (int i = 0; i < longs.length; ++i) {
+			longs[i] = (i % 2 == 0 ? 1L : -1L) << i % 64;
+		}
+		final double[] doubles = { 0, -1.5, Double.MAX_VALUE, Double.MIN_VALUE };
+		rEncode.writeIntArray(ints);
+		rEncode.writeLongArray(longs);
+		rEncode.writeDoubleArray(doubles);
+		final RencodeInputStream decoder = decoder();
+		assertArrayEquals(ints, decoder.readIntArray());
+		assertArrayEquals(longs, decoder.readLongArray());
+		assertArrayEquals(doubles, decoder.readDoubleArray(), 0);
+	}
+
+	@Test
+	public void testIntArrayOutOfRange() throws Exception {
+		rEncode.writeLongArray(new long[] { 1, Integer.MAX_VALUE + 1L });
+		try {
+			decoder().readIntArray();
+			fail();
+		} catch (IOException expected) {
+		}
+		assertArrayEquals(new long[] { 1, Integer.MAX_VALUE + 1L }, decoder().readLongArray());
+	}
+
+	@Test
+	public void testPrimitiveArrayWireFormat() throws Exception {
+		final List<Object> boxed = new ArrayList<>();
+		final int[] ints = new int[100];
+		for (int i = 0; i < ints.length; ++i) {
+			ints[i] = i * i * i - 5000;
+			boxed.add(ints[i]);
+		}
+		rEncode.writeIntArray(ints);
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new RencodeOutputStream(expected).writeCollection(boxed);
+		assertArrayEquals(expected.toByteArray(), byteStream.toByteArray());
+		assertArrayEquals(new double[] { -5000, -4999, -4992 }, Arrays.copyOf(decoder().readDoubleArray(), 3), 0);
+	}
+
+	@Test
+	public void testPooling() throws Exception {
+		final Map<Object, Object> map = new HashMap<>();
+		map.put("list", Arrays.asList("testA", new String(new char[100]).replace('\0', 'x')));
+		map.put("long string", new String(new char[200]).replace('\0', 'y'));
+		rEncode.writeMap(map);
+		rEncode.writeMap(map);
+		final RencodeInputStream decoder = decoder();
+		decoder.setPooling(true);
+		final Map<Object, Object> first = decoder.readMap();
+		final Object firstList = first.get("list");
+		assertEquals(map, first);
+		decoder.release(first);
+		final Map<Object, Object> second = decoder.readMap();
+		assertEquals(map, second);
+		assertSame(first, second);
+		assertSame(firstList, second.get("list"));
+	}
+
+	private static final Object[] BIG_NUMBERS = {
+		new BigInteger("123456789012345678901234567890"), BigInteger.ZERO, BigInteger.valueOf(-1),
+		new BigDecimal("-1234567.8900"), new BigDecimal("1E+30"), new BigDecimal("0.000001"), BigDecimal.ZERO };
+
+	@Test
+	public void testBigNumbers() throws Exception {
+		rEncode.writeObject(new BigInteger("-123"));
+		assertArrayEquals(new byte[] { Rencode.CHR_INT, '-', '1', '2', '3', Rencode.CHR_TERM }, byteStream.toByteArray());
+		byteStream.reset();
+		for (Object number : BIG_NUMBERS) {
+			rEncode.writeObject(number);
+		}
+		rEncode.writeObject(Arrays.asList(BIG_NUMBERS));
+		rEncode.writeBoolean(true);
+		final RencodeInputStream decoder = decoder();
+		for (Object number : BIG_NUMBERS) {
+			assertEquals(number, decoder.readObject());
+		}
+		decoder.skipValue();
+		assertEquals(true, decoder.readBoolean());
+		final RencodeBufferDecoder buffer = new RencodeBufferDecoder(ByteBuffer.wrap(byteStream.toByteArray()));
+		for (Object number : BIG_NUMBERS) {
+			assertEquals(number, buffer.readObject());
+		}
+		assertEquals(Arrays.asList(BIG_NUMBERS), buffer.readObject());
+	}
+
+	@Test
+	public void testRawBigNumbers() throws Exception {
+		rEncode.setRawBigNumbers(true);
+		rEncode.writeObject(BigInteger.valueOf(-2));
+		assertArrayEquals(new byte[] { Rencode.CHR_EXT_BIGINT, 1, -2 }, byteStream.toByteArray());
+		byteStream.reset();
+		rEncode.writeObject(Arrays.asList(BIG_NUMBERS));
+		rEncode.writeObject(new BigDecimal(new BigInteger(1000, new Random(1)), 40));
+		rEncode.writeBoolean(false);
+		final RencodeInputStream decoder = decoder();
+		assertEquals(Arrays.asList(BIG_NUMBERS), decoder.readObject());
+		decoder.skipValue();
+		assertEquals(false, decoder.readBoolean());
+		final RencodeBufferDecoder buffer = new RencodeBufferDecoder(ByteBuffer.wrap(byteStream.toByteArray()));
+		buffer.skipValue();
+		assertEquals(new BigDecimal(new BigInteger(1000, new Random(1)), 40), buffer.readObject());
+	}
+
+	@Test
+	public void testLongStringLength() throws Exception {
+		final String value = new String(new char[12345]).replace('\0', 'z');
+		rEncode.writeUTF(value);
+		final byte[] bytes = byteStream.toByteArray();
+		assertArrayEquals("12345:zz".getBytes(Rencode.UTF_8), Arrays.copyOf(bytes, 8));
+		assertEquals(value, new RencodeInputStream(new ByteArrayInputStream(bytes), true).readUTF());
+	}
+
+	@Test
+	public void testUTF8MatchesGetBytes() throws Exception {
+		final Random random = new Random(18);
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 3000; ++i) {
+			switch (random.nextInt(5)) {
+			case 0:
+				text.append((char) random.nextInt(0x80));
+				break;
+			case 1:
+				text.append((char) (0x80 + random.nextInt(0x780)));
+				break;
+			case 2:
+				text.append((char) (0x800 + random.nextInt(0xD000)));
+				break;
+			case 3:
+				text.appendCodePoint(0x10000 + random.nextInt(0x100000));
+				break;
+			default:
+				text.append((char) (0xD800 + random.nextInt(0x800))); // unpaired surrogate
+			}
+			if (i > 100 && i % 100 != 0) {
+				continue;
+			}
+			for (boolean buffered : new boolean[] { false, true }) {
+				final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+				new RencodeOutputStream(expected).writeBinary(text.toString().getBytes(Rencode.UTF_8));
+				final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+				final RencodeOutputStream out = new RencodeOutputStream(actual, buffered);
+				out.writeObject(text);
+				out.flush();
+				assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		final byte[] blob = new byte[300];
+		new Random(7).nextBytes(blob);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(blob.length);
+		direct.put(blob).flip();
+		rEncode.writeObject(blob);
+		rEncode.writeObject(Arrays.asList(direct, ByteBuffer.wrap(blob, 10, 5).slice()));
+		rEncode.writeBinary(blob, 1, 2);
+		final RencodeInputStream decoder = new RencodeInputStream(new ByteArrayInputStream(byteStream.toByteArray()));
+		assertArrayEquals(blob, (byte[]) decoder.readObject());
+		final List<?> list = (List<?>) decoder.readObject();
+		assertArrayEquals(blob, (byte[]) list.get(0));
+		assertArrayEquals(Arrays.copyOfRange(blob, 10, 15), (byte[]) list.get(1));
+		assertArrayEquals(Arrays.copyOfRange(blob, 1, 3), (byte[]) decoder.readObject());
+		assertEquals(0, direct.position());
+	}
 }
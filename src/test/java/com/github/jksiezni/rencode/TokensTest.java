@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package com.github.jksiezni.rencode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Checks that all decoders classify tokens through {@link Tokens} alike.
+ */
+public class TokensTest {
+
+	private static void decodeAll(byte[] data) throws IOException {
+		new RencodeInputStream(new ByteArrayInputStream(data)).readObject();
+		new RencodeInputStream(new ByteArrayInputStream(data)).skipValue();
+		new RencodeBufferDecoder(ByteBuffer.wrap(data)).readObject();
+		new RencodeBufferDecoder(ByteBuffer.wrap(data)).skipValue();
+		final RencodePullParser parser = new RencodePullParser(new ByteArrayInputStream(data));
+		while (parser.hasNext()) {
+			parser.next();
+		}
+		final RencodeIncrementalDecoder decoder = new RencodeIncrementalDecoder();
+		decoder.feed(data, 0, data.length);
+		assertEquals(1, decoder.hasValue() ? 1 : 0);
+	}
+
+	@Test
+	public void testSingleByteValues() throws IOException {
+		for (int token = 0; token < 256; ++token) {
+			final Tokens.Kind kind = Tokens.kind(token);
+			if (kind == Tokens.Kind.FIXED_INT || kind == Tokens.Kind.TRUE || kind == Tokens.Kind.FALSE
+					|| kind == Tokens.Kind.NONE || Tokens.fixedCount(token) == 0) {
+				decodeAll(new byte[] { (byte) token });
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidTokens() throws IOException {
+		int invalid = 0;
+		for (int token = 0; token < 256; ++token) {
+			if (Tokens.kind(token) == Tokens.Kind.INVALID || Tokens.kind(token) == Tokens.Kind.TERM) {
+				++invalid;
+				try {
+					// padded, so that no decoder fails only for lack of input
+					decodeAll(new byte[] { (byte) token, 0, 0, 0, 0, 0, 0, 0, 0 });
+					fail("token " + token);
+				} catch (IOException expected) {
+				}
+			}
+		}
+		// CHR_TERM, ':' and '/' are not values
+		assertEquals(3, invalid);
+	}
+
+	@Test
+	public void testFixedValues() throws IOException {
+		assertEquals(43, Tokens.fixedInt(Rencode.INT_POS_FIXED_START + 43));
+		assertEquals(-32, Tokens.fixedInt(Rencode.INT_NEG_FIXED_START + 31));
+		assertEquals(63, Tokens.fixedCount(Rencode.STR_FIXED_START + 63));
+		assertEquals(24, Tokens.fixedCount(Rencode.DICT_FIXED_START + 24));
+		assertEquals(-1, Tokens.fixedCount(Rencode.CHR_LIST));
+		assertEquals(-1, Tokens.fixedCount('7'));
+		assertEquals(8, Tokens.size(Rencode.CHR_INT8));
+		assertEquals(4, Tokens.size(Rencode.CHR_FLOAT32));
+		assertEquals(Integer.MAX_VALUE, Tokens.lengthDigit(214748364, '7'));
+		try {
+			Tokens.lengthDigit(214748364, '8');
+			fail();
+		} catch (IOException expected) {
+		}
+		try {
+			Tokens.lengthDigit(1, 'x');
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+}